@@ -0,0 +1,56 @@
+package com.kylontech.experiment.events.benchmark;
+
+import com.kylontech.experiment.events.Event;
+import com.kylontech.experiment.events.EventRouter;
+import com.kylontech.experiment.events.Scope;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Overhead of {@link EventRouter#awaitEmptyTimedOut} on an idle router and right after a publish.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class AwaitEmptyBenchmark {
+
+    static final String EVENT_TYPE = "EVENT";
+
+    EventRouter router;
+    BenchSubscriber sub;
+    final Event event = new Event();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        router = new EventRouter(Scope.SCOPE_PRIVATE);
+        sub = new BenchSubscriber();
+        router.registerEventType(EVENT_TYPE, Scope.SCOPE_PUBLIC, sub);
+        router.subscribe(EVENT_TYPE, sub);
+        event.setType(EVENT_TYPE);
+        event.setFrom("producer");
+        event.setPayload(new byte[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws TimeoutException, InterruptedException {
+        router.close();
+        BenchSubscriber.closeAll(List.of(sub));
+    }
+
+    @Benchmark
+    public boolean awaitIdle() {
+        return router.awaitEmptyTimedOut(1, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public boolean awaitAfterPublish() {
+        router.publish(event);
+        return router.awaitEmptyTimedOut(1, TimeUnit.SECONDS);
+    }
+}
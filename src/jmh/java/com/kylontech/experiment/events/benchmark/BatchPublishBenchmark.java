@@ -0,0 +1,102 @@
+package com.kylontech.experiment.events.benchmark;
+
+import com.kylontech.experiment.events.Event;
+import com.kylontech.experiment.events.EventRouter;
+import com.kylontech.experiment.events.EventType;
+import com.kylontech.experiment.events.Scope;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Per event cost of publishing bursts of events one by one or as a batch, from several producers.
+ * The {@code events} counter is the per event throughput, whatever the batch size.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@Threads(4)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class BatchPublishBenchmark {
+
+    static final String EVENT_TYPE = "EVENT";
+
+    @Param({"1", "16", "256"})
+    int batchSize;
+
+    EventRouter router;
+    EventType eventType;
+    BenchSubscriber sub;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        router = new EventRouter(Scope.SCOPE_PRIVATE);
+        sub = new BenchSubscriber();
+        eventType = router.registerEventType(EVENT_TYPE, Scope.SCOPE_PUBLIC, sub);
+        router.subscribe(eventType, sub);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws TimeoutException, InterruptedException {
+        if (router.awaitEmptyTimedOut(1, TimeUnit.MINUTES))
+            throw new TimeoutException("wait for event router to be empty timed out");
+        router.close();
+        BenchSubscriber.closeAll(List.of(sub));
+    }
+
+    /**
+     * Per producer thread burst of events.
+     */
+    @State(org.openjdk.jmh.annotations.Scope.Thread)
+    public static class Burst {
+        Event[] events;
+        String[] senders;
+
+        @Setup(Level.Trial)
+        public void setUp(BatchPublishBenchmark b) {
+            events = new Event[b.batchSize];
+            senders = new String[b.batchSize];
+            for (int i = 0; i < b.batchSize; i++) {
+                events[i] = new Event();
+                events[i].setType(b.eventType);
+                events[i].setFrom("producer");
+                senders[i] = "producer";
+            }
+        }
+    }
+
+    /**
+     * Number of published events, reported by JMH as a throughput.
+     */
+    @State(org.openjdk.jmh.annotations.Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long events;
+    }
+
+    @Benchmark
+    public void publishOneByOne(Burst burst, Counters counters) {
+        for (Event e : burst.events) router.publish(e);
+        counters.events += burst.events.length;
+    }
+
+    @Benchmark
+    public void publishBatch(Burst burst, Counters counters) {
+        router.publishBatch(burst.events);
+        counters.events += burst.events.length;
+    }
+
+    @Benchmark
+    public void publishBatchWithTranslator(Burst burst, Counters counters) {
+        router.publishBatch(eventType, BatchPublishBenchmark::fill, burst.senders);
+        counters.events += burst.senders.length;
+    }
+
+    private static void fill(Event slot, long sequence, String from) {
+        slot.setFrom(from);
+    }
+}
@@ -0,0 +1,54 @@
+package com.kylontech.experiment.events.benchmark;
+
+import com.kylontech.experiment.events.Event;
+import com.kylontech.experiment.events.Scope;
+import com.kylontech.experiment.events.Subscriber;
+import com.kylontech.experiment.events.SubscriberOptions;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Subscriber that only counts received events.
+ */
+class BenchSubscriber extends Subscriber {
+
+    final AtomicLong received = new AtomicLong(0L);
+
+    BenchSubscriber() {}
+
+    BenchSubscriber(@NotNull SubscriberOptions options) {
+        super(options);
+    }
+
+    @Override
+    public @NotNull Scope scope() {
+        return Scope.SCOPE_PUBLIC;
+    }
+
+    @Override
+    protected void processEvent(@NotNull Event e) {
+        received.getAndIncrement();
+    }
+
+    /**
+     * Spin until this subscriber has received at least a given number of events.
+     */
+    void awaitReceived(long expected) {
+        while (received.get() < expected) Thread.yield();
+    }
+
+    /**
+     * Close subscribers, rethrowing checked exceptions as unchecked for use in teardown methods.
+     */
+    static void closeAll(@NotNull Iterable<? extends Subscriber> subs) {
+        for (Subscriber s : subs) {
+            try {
+                s.close();
+            } catch (TimeoutException | InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
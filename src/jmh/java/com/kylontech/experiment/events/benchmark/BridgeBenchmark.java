@@ -0,0 +1,121 @@
+package com.kylontech.experiment.events.benchmark;
+
+import com.kylontech.experiment.events.Bridge;
+import com.kylontech.experiment.events.Event;
+import com.kylontech.experiment.events.EventRouter;
+import com.kylontech.experiment.events.Scope;
+import com.kylontech.experiment.events.SharedMemoryBridge;
+import com.kylontech.experiment.events.SocketBridge;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Latency and throughput of events published in a router and delivered to a subscriber of another
+ * router through a bridge, against a subscriber of the same router. Both routers are in the same
+ * JVM but only share the bridge, a loopback connection for SOCKET.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class BridgeBenchmark {
+
+    static final int BATCH = 256;
+    static final String EVENT_TYPE = "EVENT";
+
+    /**
+     * Bridge between the routers, or LOCAL for a subscriber of the publishing router.
+     */
+    @Param({"LOCAL", "SHARED_MEMORY", "SOCKET"})
+    String bridge;
+
+    Path directory;
+    EventRouter publisher;
+    EventRouter receiver;
+    Bridge publisherBridge;
+    Bridge receiverBridge;
+    BenchSubscriber sub;
+    final Event event = new Event();
+    long published;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException, ExecutionException {
+        publisher = new EventRouter(Scope.SCOPE_PRIVATE);
+        receiver = bridge.equals("LOCAL") ? publisher : new EventRouter(Scope.SCOPE_PRIVATE);
+        sub = new BenchSubscriber();
+        publisher.registerEventType(EVENT_TYPE, Scope.SCOPE_PUBLIC, sub);
+        if (receiver != publisher) receiver.registerEventType(EVENT_TYPE, Scope.SCOPE_PUBLIC, sub);
+        receiver.subscribe(EVENT_TYPE, sub);
+        if (bridge.equals("SHARED_MEMORY")) {
+            directory = Files.createTempDirectory("bridge-benchmark");
+            Path file = directory.resolve("events.ring");
+            publisherBridge = SharedMemoryBridge.open(publisher, file);
+            receiverBridge = SharedMemoryBridge.open(receiver, file);
+        } else if (bridge.equals("SOCKET")) {
+            try (ServerSocketChannel server = ServerSocketChannel.open()) {
+                server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                CompletableFuture<Void> connected = CompletableFuture.runAsync(() -> {
+                    try {
+                        publisherBridge = SocketBridge.connect(
+                                publisher, server.getLocalAddress(), Scope.SCOPE_FEDERATED);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+                receiverBridge = SocketBridge.accept(receiver, server, Scope.SCOPE_FEDERATED);
+                connected.get();
+            }
+        }
+        event.setType(EVENT_TYPE);
+        event.setFrom("producer");
+        event.setPayload(new byte[64]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws TimeoutException, InterruptedException, IOException {
+        if (publisherBridge != null) publisherBridge.close();
+        if (receiverBridge != null) receiverBridge.close();
+        publisher.close();
+        if (receiver != publisher) receiver.close();
+        BenchSubscriber.closeAll(List.of(sub));
+        if (directory == null) return;
+        Files.delete(directory.resolve("events.ring"));
+        Files.delete(directory);
+    }
+
+    /**
+     * Publish one event and wait until the subscriber has processed it.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void roundTrip() {
+        publisher.publish(event);
+        sub.awaitReceived(++published);
+    }
+
+    /**
+     * Publish a batch of events and wait until the subscriber has processed all of them.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public void throughput() {
+        for (int i = 0; i < BATCH; i++) publisher.publish(event);
+        published += BATCH;
+        sub.awaitReceived(published);
+    }
+}
@@ -0,0 +1,59 @@
+package com.kylontech.experiment.events.benchmark;
+
+import com.kylontech.experiment.events.Event;
+import com.kylontech.experiment.events.EventCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to encode and decode an event with {@link EventCodec}, in a stream where its type and sender
+ * are already interned, with 0 and 64 byte payloads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class CodecBenchmark {
+
+    @Param({"0", "64"})
+    int size;
+
+    final EventCodec.Encoder encoder = EventCodec.encoder();
+    final EventCodec.Decoder decoder = EventCodec.decoder();
+    final MemorySegment segment = Arena.ofAuto().allocate(4096);
+    final Event event = new Event();
+    final Event decoded = new Event();
+
+    /**
+     * Offset of the second encoded event, which only refers to interned strings.
+     */
+    long offset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        event.setType("EVENT");
+        event.setFrom("producer");
+        event.setTimestamp(System.currentTimeMillis());
+        event.setPartitionKey(42L);
+        event.setPayload(new byte[size]);
+        offset = encoder.encode(event, segment, 0);
+        encoder.encode(event, segment, offset);
+        decoder.decode(segment, 0, decoded);
+    }
+
+    @Benchmark
+    public long encode() {
+        return encoder.encode(event, segment, offset);
+    }
+
+    @Benchmark
+    public Event decode() {
+        decoder.decode(segment, offset, decoded);
+        return decoded;
+    }
+}
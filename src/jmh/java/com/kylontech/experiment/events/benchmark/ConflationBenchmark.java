@@ -0,0 +1,89 @@
+package com.kylontech.experiment.events.benchmark;
+
+import com.kylontech.experiment.events.Event;
+import com.kylontech.experiment.events.EventRouter;
+import com.kylontech.experiment.events.Scope;
+import com.kylontech.experiment.events.Subscriber;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Throughput of a stream of events over a few keys to a subscriber spending about a microsecond on
+ * each event, with and without conflation. An event counts as handled once processed or replaced.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class ConflationBenchmark {
+
+    static final int BATCH = 1024;
+    static final int KEYS = 16;
+    static final String EVENT_TYPE = "QUOTE";
+
+    @Param({"false", "true"})
+    boolean conflate;
+
+    EventRouter router;
+    SlowSubscriber sub;
+    final Event event = new Event();
+    long published;
+
+    /**
+     * Subscriber burning CPU on each event.
+     */
+    static class SlowSubscriber extends BenchSubscriber {
+
+        SlowSubscriber(boolean conflate) {
+            super(Subscriber.options().conflate(conflate));
+        }
+
+        @Override
+        protected void processEvent(@NotNull Event e) {
+            Blackhole.consumeCPU(256);
+            super.processEvent(e);
+        }
+
+        long handled() {
+            return received.get() + getConflatedEvents();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        router = new EventRouter(Scope.SCOPE_PRIVATE);
+        sub = new SlowSubscriber(conflate);
+        router.registerEventType(EVENT_TYPE, Scope.SCOPE_PUBLIC, sub);
+        router.subscribe(EVENT_TYPE, sub);
+        event.setType(EVENT_TYPE);
+        event.setFrom("producer");
+        event.setPayload(new byte[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws TimeoutException, InterruptedException {
+        router.close();
+        BenchSubscriber.closeAll(List.of(sub));
+    }
+
+    /**
+     * Publish a batch of events and wait until the subscriber has handled all of them.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void stream() {
+        for (int i = 0; i < BATCH; i++) {
+            event.setPartitionKey(i % KEYS);
+            router.publish(event);
+        }
+        published += BATCH;
+        while (sub.handled() < published) Thread.yield();
+    }
+}
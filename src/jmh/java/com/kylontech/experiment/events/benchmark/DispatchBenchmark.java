@@ -0,0 +1,77 @@
+package com.kylontech.experiment.events.benchmark;
+
+import com.kylontech.experiment.events.Event;
+import com.kylontech.experiment.events.EventRouter;
+import com.kylontech.experiment.events.Scope;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * End-to-end dispatch throughput from a single producer to one subscriber or a fan-out of several
+ * subscribers of the same event type. One operation is one event delivered to every subscriber,
+ * the {@code dispatches} counter is the number of deliveries to a single subscriber.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class DispatchBenchmark {
+
+    static final int BATCH = 1024;
+    static final String EVENT_TYPE = "EVENT";
+
+    @Param({"1", "4", "16"})
+    int subscribers;
+
+    EventRouter router;
+    final List<BenchSubscriber> subs = new ArrayList<>();
+    final Event event = new Event();
+    long published;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        router = new EventRouter(Scope.SCOPE_PRIVATE);
+        for (int i = 0; i < subscribers; i++) {
+            BenchSubscriber s = new BenchSubscriber();
+            if (i == 0) router.registerEventType(EVENT_TYPE, Scope.SCOPE_PUBLIC, s);
+            router.subscribe(EVENT_TYPE, s);
+            subs.add(s);
+        }
+        event.setType(EVENT_TYPE);
+        event.setFrom("producer");
+        event.setPayload(new byte[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws TimeoutException, InterruptedException {
+        router.close();
+        BenchSubscriber.closeAll(subs);
+    }
+
+    /**
+     * Number of events delivered to a subscriber, reported by JMH as a throughput.
+     */
+    @State(org.openjdk.jmh.annotations.Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long dispatches;
+    }
+
+    /**
+     * Publish a batch of events and wait until every subscriber has processed all of them.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void dispatch(Counters counters) {
+        for (int i = 0; i < BATCH; i++) router.publish(event);
+        published += BATCH;
+        for (BenchSubscriber s : subs) s.awaitReceived(published);
+        counters.dispatches += (long) BATCH * subscribers;
+    }
+}
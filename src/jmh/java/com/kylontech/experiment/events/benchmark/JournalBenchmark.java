@@ -0,0 +1,83 @@
+package com.kylontech.experiment.events.benchmark;
+
+import com.kylontech.experiment.events.Event;
+import com.kylontech.experiment.events.EventJournal;
+import com.kylontech.experiment.events.EventRouter;
+import com.kylontech.experiment.events.EventRouterBuilder;
+import com.kylontech.experiment.events.JournalOptions;
+import com.kylontech.experiment.events.Scope;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+/**
+ * Cost of journaling on end-to-end dispatch throughput, from a single producer to 1 subscriber, with
+ * 64 byte payloads. Compare the scores without journal and with each sync policy.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class JournalBenchmark {
+
+    static final int BATCH = 1024;
+    static final String EVENT_TYPE = "EVENT";
+
+    /**
+     * Sync policy of the journal, or OFF for no journal.
+     */
+    @Param({"OFF", "NONE", "BATCH"})
+    String journal;
+
+    Path directory;
+    EventRouter router;
+    BenchSubscriber sub;
+    final Event event = new Event();
+    long published;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        EventRouterBuilder builder = EventRouter.builder(Scope.SCOPE_PRIVATE);
+        if (!journal.equals("OFF")) {
+            directory = Files.createTempDirectory("journal-benchmark");
+            builder.journal(EventJournal.options(directory).sync(JournalOptions.SyncPolicy.valueOf(journal)));
+        }
+        router = builder.build();
+        sub = new BenchSubscriber();
+        router.registerEventType(EVENT_TYPE, Scope.SCOPE_PUBLIC, sub);
+        router.subscribe(EVENT_TYPE, sub);
+        event.setType(EVENT_TYPE);
+        event.setFrom("producer");
+        event.setPayload(new byte[64]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws TimeoutException, InterruptedException, IOException {
+        router.close();
+        BenchSubscriber.closeAll(List.of(sub));
+        if (directory == null) return;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+        }
+    }
+
+    /**
+     * Publish a batch of events and wait until the subscriber has processed all of them.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void dispatch() {
+        for (int i = 0; i < BATCH; i++) router.publish(event);
+        published += BATCH;
+        sub.awaitReceived(published);
+    }
+}
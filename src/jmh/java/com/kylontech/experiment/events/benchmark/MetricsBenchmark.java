@@ -0,0 +1,67 @@
+package com.kylontech.experiment.events.benchmark;
+
+import com.kylontech.experiment.events.Event;
+import com.kylontech.experiment.events.EventRouter;
+import com.kylontech.experiment.events.Scope;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Overhead of per event type metrics on end-to-end dispatch throughput, from a single producer to
+ * 4 subscribers. Compare the scores with and without metrics.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class MetricsBenchmark {
+
+    static final int BATCH = 1024;
+    static final int SUBSCRIBERS = 4;
+    static final String EVENT_TYPE = "EVENT";
+
+    @Param({"false", "true"})
+    boolean metrics;
+
+    EventRouter router;
+    final List<BenchSubscriber> subs = new ArrayList<>();
+    final Event event = new Event();
+    long published;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        router = EventRouter.builder(Scope.SCOPE_PRIVATE).metrics(metrics).build();
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            BenchSubscriber s = new BenchSubscriber();
+            if (i == 0) router.registerEventType(EVENT_TYPE, Scope.SCOPE_PUBLIC, s);
+            router.subscribe(EVENT_TYPE, s);
+            subs.add(s);
+        }
+        event.setType(EVENT_TYPE);
+        event.setFrom("producer");
+        event.setPayload(new byte[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws TimeoutException, InterruptedException {
+        router.close();
+        BenchSubscriber.closeAll(subs);
+    }
+
+    /**
+     * Publish a batch of events and wait until every subscriber has processed all of them.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void dispatch() {
+        for (int i = 0; i < BATCH; i++) router.publish(event);
+        published += BATCH;
+        for (BenchSubscriber s : subs) s.awaitReceived(published);
+    }
+}
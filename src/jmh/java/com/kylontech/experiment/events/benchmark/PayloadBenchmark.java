@@ -0,0 +1,80 @@
+package com.kylontech.experiment.events.benchmark;
+
+import com.kylontech.experiment.events.Event;
+import com.kylontech.experiment.events.EventRouter;
+import com.kylontech.experiment.events.Scope;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * End-to-end dispatch throughput of large payloads, from a single producer writing each payload to
+ * 1 subscriber, with a new heap array per event or an off-heap payload recycled by the router.
+ * Compare the scores and the allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class PayloadBenchmark {
+
+    static final int BATCH = 64;
+    static final String EVENT_TYPE = "EVENT";
+
+    @Param({"32768"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean offHeap;
+
+    EventRouter router;
+    BenchSubscriber sub;
+    final Event event = new Event();
+    byte[] source;
+    long published;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        router = EventRouter.builder(Scope.SCOPE_PRIVATE).build();
+        sub = new BenchSubscriber();
+        router.registerEventType(EVENT_TYPE, Scope.SCOPE_PUBLIC, sub);
+        router.subscribe(EVENT_TYPE, sub);
+        event.setType(EVENT_TYPE);
+        event.setFrom("producer");
+        source = new byte[size];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws TimeoutException, InterruptedException {
+        router.close();
+        BenchSubscriber.closeAll(List.of(sub));
+    }
+
+    /**
+     * Publish a batch of events, writing the payload of each, and wait until the subscriber has
+     * processed all of them.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void dispatch() {
+        for (int i = 0; i < BATCH; i++) {
+            if (offHeap) {
+                MemorySegment payload = router.allocatePayload(event, size);
+                MemorySegment.copy(source, 0, payload, ValueLayout.JAVA_BYTE, 0, size);
+            } else {
+                byte[] payload = new byte[size];
+                System.arraycopy(source, 0, payload, 0, size);
+                event.setPayload(payload);
+            }
+            router.publish(event);
+        }
+        published += BATCH;
+        sub.awaitReceived(published);
+    }
+}
@@ -0,0 +1,99 @@
+package com.kylontech.experiment.events.benchmark;
+
+import com.kylontech.experiment.events.Event;
+import com.kylontech.experiment.events.EventRouter;
+import com.kylontech.experiment.events.EventRouterBuilder;
+import com.kylontech.experiment.events.EventType;
+import com.kylontech.experiment.events.Scope;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Compare router profiles: round-trip latency from publish to subscriber, dispatch throughput, and
+ * CPU time burnt by an idle router.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class ProfileBenchmark {
+
+    static final int BATCH = 1024;
+    static final String EVENT_TYPE = "EVENT";
+
+    @Param({"LOW_LATENCY", "BALANCED", "LOW_CPU"})
+    EventRouterBuilder.Profile profile;
+
+    EventRouter router;
+    EventType eventType;
+    BenchSubscriber sub;
+    long published;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        router = EventRouter.builder(Scope.SCOPE_PRIVATE).profile(profile).build();
+        sub = new BenchSubscriber();
+        eventType = router.registerEventType(EVENT_TYPE, Scope.SCOPE_PUBLIC, sub);
+        router.subscribe(eventType, sub);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws TimeoutException, InterruptedException {
+        router.close();
+        BenchSubscriber.closeAll(List.of(sub));
+    }
+
+    /**
+     * CPU time used by the whole JVM while the router is idle, reported per idle millisecond.
+     */
+    @State(org.openjdk.jmh.annotations.Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CpuCounters {
+        public long cpuMicros;
+    }
+
+    /**
+     * Publish one event and wait until the subscriber has processed it.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void roundTrip() {
+        router.publish(eventType, ProfileBenchmark::fill, "producer");
+        sub.awaitReceived(++published);
+    }
+
+    /**
+     * Publish a batch of events and wait until the subscriber has processed all of them.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public void throughput() {
+        for (int i = 0; i < BATCH; i++) router.publish(eventType, ProfileBenchmark::fill, "producer");
+        published += BATCH;
+        sub.awaitReceived(published);
+    }
+
+    /**
+     * Sleep for a millisecond with nothing published and count the CPU time used meanwhile.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void idle(CpuCounters counters) throws InterruptedException {
+        var os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long before = os.getProcessCpuTime();
+        Thread.sleep(1);
+        counters.cpuMicros += (os.getProcessCpuTime() - before) / 1000;
+    }
+
+    private static void fill(Event slot, long sequence, String from) {
+        slot.setFrom(from);
+    }
+}
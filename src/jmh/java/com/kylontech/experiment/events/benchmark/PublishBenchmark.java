@@ -0,0 +1,113 @@
+package com.kylontech.experiment.events.benchmark;
+
+import com.kylontech.experiment.events.Event;
+import com.kylontech.experiment.events.EventRouter;
+import com.kylontech.experiment.events.EventType;
+import com.kylontech.experiment.events.Scope;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publish throughput with one or several concurrent producers. Each event type has a single
+ * subscriber, so the measured rate is bounded by the ring buffer and the dispatcher.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class PublishBenchmark {
+
+    static final int NUM_EVENT_TYPES = 5;
+
+    /**
+     * How events are published: a reused event typed by name or by handle, or a translator filling
+     * the ring buffer slot in place.
+     */
+    @Param({"name", "handle", "translator"})
+    String mode;
+
+    EventRouter router;
+    final List<BenchSubscriber> subs = new ArrayList<>();
+    final String[] eventTypes = new String[NUM_EVENT_TYPES];
+    final EventType[] eventTypeHandles = new EventType[NUM_EVENT_TYPES];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        router = new EventRouter(Scope.SCOPE_PRIVATE);
+        for (int i = 0; i < NUM_EVENT_TYPES; i++) {
+            eventTypes[i] = "EVENT_" + i;
+            BenchSubscriber s = new BenchSubscriber();
+            eventTypeHandles[i] = router.registerEventType(eventTypes[i], Scope.SCOPE_PUBLIC, s);
+            router.subscribe(eventTypes[i], s);
+            subs.add(s);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws TimeoutException, InterruptedException {
+        if (router.awaitEmptyTimedOut(1, TimeUnit.MINUTES))
+            throw new TimeoutException("wait for event router to be empty timed out");
+        router.close();
+        BenchSubscriber.closeAll(subs);
+    }
+
+    /**
+     * Per producer thread state, the published event is reused because the router copies it. It is
+     * also the translator's source in translator mode.
+     */
+    @State(org.openjdk.jmh.annotations.Scope.Thread)
+    public static class Producer {
+        final Event event = new Event();
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            event.setFrom("producer");
+            event.setPayload(new byte[0]);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void publishOneProducer(Producer p) {
+        publish(p);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void publishFourProducers(Producer p) {
+        publish(p);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void publishMaxProducers(Producer p) {
+        publish(p);
+    }
+
+    private void publish(Producer p) {
+        int i = p.next++ % NUM_EVENT_TYPES;
+        switch (mode) {
+            case "name" -> {
+                p.event.setType(eventTypes[i]);
+                router.publish(p.event);
+            }
+            case "handle" -> {
+                p.event.setType(eventTypeHandles[i]);
+                router.publish(p.event);
+            }
+            default -> router.publish(eventTypeHandles[i], PublishBenchmark::fill, p.event);
+        }
+    }
+
+    private static void fill(Event slot, long sequence, Event source) {
+        slot.setFrom(source.getFrom());
+        slot.setPayload(source.getPayload());
+    }
+}
@@ -0,0 +1,71 @@
+package com.kylontech.experiment.events.benchmark;
+
+import com.kylontech.experiment.events.Event;
+import com.kylontech.experiment.events.Scope;
+import com.kylontech.experiment.events.ShardedEventRouter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * End-to-end dispatch throughput of a sharded router with 1, 2 and 4 shards. Event types are
+ * placed evenly over shards, each one with its own subscriber, and a single producer publishes to
+ * all of them in turn.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class ShardedDispatchBenchmark {
+
+    static final int BATCH = 1024;
+    static final int TYPES = 8;
+
+    @Param({"1", "2", "4"})
+    int shards;
+
+    ShardedEventRouter router;
+    final List<BenchSubscriber> subs = new ArrayList<>();
+    final Event[] events = new Event[TYPES];
+    long published;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        router = new ShardedEventRouter(Scope.SCOPE_PRIVATE, shards);
+        for (int i = 0; i < TYPES; i++) {
+            String type = "EVENT_" + i;
+            BenchSubscriber s = new BenchSubscriber();
+            router.place(type, i % shards);
+            router.registerEventType(type, Scope.SCOPE_PUBLIC, s);
+            router.subscribe(type, s);
+            subs.add(s);
+            events[i] = new Event();
+            events[i].setType(type);
+            events[i].setFrom("producer");
+            events[i].setPayload(new byte[0]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws TimeoutException, InterruptedException {
+        router.close();
+        BenchSubscriber.closeAll(subs);
+    }
+
+    /**
+     * Publish a batch of events spread over all event types and wait until every subscriber has
+     * processed its share.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void dispatch() {
+        for (int i = 0; i < BATCH; i++) router.publish(events[i % TYPES]);
+        published += BATCH / TYPES;
+        for (BenchSubscriber s : subs) s.awaitReceived(published);
+    }
+}
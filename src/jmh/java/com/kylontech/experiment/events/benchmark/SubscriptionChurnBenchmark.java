@@ -0,0 +1,56 @@
+package com.kylontech.experiment.events.benchmark;
+
+import com.kylontech.experiment.events.EventRouter;
+import com.kylontech.experiment.events.Scope;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Cost of a subscribe/unsubscribe pair on an event type that already has a number of subscribers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+public class SubscriptionChurnBenchmark {
+
+    static final String EVENT_TYPE = "EVENT";
+
+    @Param({"0", "16", "256"})
+    int existingSubscribers;
+
+    EventRouter router;
+    final List<BenchSubscriber> subs = new ArrayList<>();
+    BenchSubscriber churned;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        router = new EventRouter(Scope.SCOPE_PRIVATE);
+        churned = new BenchSubscriber();
+        subs.add(churned);
+        router.registerEventType(EVENT_TYPE, Scope.SCOPE_PUBLIC, churned);
+        for (int i = 0; i < existingSubscribers; i++) {
+            BenchSubscriber s = new BenchSubscriber();
+            router.subscribe(EVENT_TYPE, s);
+            subs.add(s);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws TimeoutException, InterruptedException {
+        router.close();
+        BenchSubscriber.closeAll(subs);
+    }
+
+    @Benchmark
+    public void subscribeUnsubscribe() {
+        router.subscribe(EVENT_TYPE, churned);
+        router.unsubscribe(EVENT_TYPE, churned);
+    }
+}
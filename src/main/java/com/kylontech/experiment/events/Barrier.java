@@ -0,0 +1,44 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Completion barrier published through the ring buffer by {@link EventRouter#flush()}. The
+ * dispatcher enqueues a marker behind the events already in each subscriber mailbox, and the
+ * barrier completes once every marker is reached.
+ */
+final class Barrier {
+
+    final @NotNull CompletableFuture<Void> future = new CompletableFuture<>();
+
+    /**
+     * Markers not reached yet, plus one held by the dispatcher while it enqueues them.
+     */
+    private final @NotNull AtomicInteger pending = new AtomicInteger(1);
+
+    /**
+     * Marker enqueued in mailboxes, an unpooled event carrying this barrier.
+     */
+    final @NotNull Event marker = new Event();
+
+    Barrier() {
+        this.marker.barrier = this;
+    }
+
+    /**
+     * Expect more markers to be reached.
+     */
+    void expect(int markers) {
+        this.pending.addAndGet(markers);
+    }
+
+    /**
+     * Reach a marker, the last one completes the barrier.
+     */
+    void arrive() {
+        if (this.pending.decrementAndGet() == 0) this.future.complete(null);
+    }
+}
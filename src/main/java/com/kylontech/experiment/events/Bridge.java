@@ -0,0 +1,113 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bridge links a router to other routers outside the process. The router's dispatcher hands the
+ * bridge every event whose type scope is at or below the bridge's scope, and the bridge publishes
+ * in the router the events it receives, which must be registered in the router with a scope at or
+ * below the bridge's scope too.
+ *
+ * <p>Received events are marked with the bridge they came from and are not forwarded back to it,
+ * which would echo them forever. Requests are local to a router: received replies are delivered as
+ * plain events and do not complete the router's requests.
+ */
+public abstract class Bridge implements AutoCloseable {
+
+    final @NotNull EventRouter router;
+    final @NotNull Scope scope;
+
+    final @NotNull LongAdder forwardedEvents = new LongAdder();
+    final @NotNull LongAdder receivedEvents = new LongAdder();
+    final @NotNull LongAdder rejectedEvents = new LongAdder();
+    final @NotNull LongAdder droppedEvents = new LongAdder();
+
+    Bridge(@NotNull EventRouter router, @NotNull Scope scope) {
+        this.router = router;
+        this.scope = scope;
+    }
+
+    /**
+     * Forward an event dispatched by the router, from its dispatcher thread. This must not throw nor
+     * keep the event, which is a ring buffer slot.
+     */
+    abstract void forward(@NotNull Event e);
+
+    /**
+     * Called by the router's dispatcher at the end of each batch of ring buffer slots.
+     */
+    void endOfBatch() {}
+
+    /**
+     * Publish a received event in the router, as coming from this bridge, if it is registered with
+     * a scope this bridge gives access to.
+     *
+     * @param wait whether to wait for room in the router's ring buffer if it is full
+     * @return false if the event was not published because the ring buffer is full and it should
+     *         be received again later, true if it was published or rejected
+     */
+    boolean receive(@NotNull Event e, boolean wait) {
+        try {
+            EventType type = this.router.getEventType(e.getType());
+            if (type.getScope().compareTo(this.scope) > 0) {
+                this.rejectedEvents.increment();
+                return true;
+            }
+            e.setType(type);
+            e.setReply(false);
+            e.origin = this;
+            if (wait) this.router.publish(e);
+            else if (!this.router.offer(e)) return false;
+        } catch (NoSuchElementException _) {
+            this.rejectedEvents.increment();
+            return true;
+        }
+        this.receivedEvents.increment();
+        return true;
+    }
+
+    /**
+     * Return the broadest scope of the events this bridge forwards and receives.
+     */
+    public @NotNull Scope getScope() {
+        return this.scope;
+    }
+
+    /**
+     * Return the number of events forwarded to other routers.
+     */
+    public long getForwardedEvents() {
+        return this.forwardedEvents.sum();
+    }
+
+    /**
+     * Return the number of events received from other routers and published in the router.
+     */
+    public long getReceivedEvents() {
+        return this.receivedEvents.sum();
+    }
+
+    /**
+     * Return the number of received events that were not published, because their type is not
+     * registered in the router or its scope is broader than this bridge's.
+     */
+    public long getRejectedEvents() {
+        return this.rejectedEvents.sum();
+    }
+
+    /**
+     * Return the number of events lost by this bridge, e.g. too large to be forwarded.
+     */
+    public long getDroppedEvents() {
+        return this.droppedEvents.sum();
+    }
+
+    /**
+     * Detach this bridge from the router and release its resources.
+     */
+    @Override
+    public abstract void close();
+}
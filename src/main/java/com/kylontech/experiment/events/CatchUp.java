@@ -0,0 +1,99 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Catch-up subscription. A catch-up thread replays the journaled events of the subscribed type to
+ * the subscriber, then publishes a handover slot. The dispatcher replays the events journaled
+ * before that slot which the catch-up thread did not reach, and subscribes the subscriber, so that
+ * it receives every event once and in order.
+ */
+final class CatchUp {
+
+    /**
+     * Number of replayed events the subscriber may have waiting before the catch-up thread pauses.
+     */
+    static final int WINDOW = 1024;
+
+    final @NotNull EventType type;
+    final @NotNull Subscriber sub;
+    final @NotNull CompletableFuture<Void> future = new CompletableFuture<>();
+    private final @NotNull EventJournal.Reader reader;
+    private final @NotNull EventRegistry registry;
+
+    /**
+     * Scope of the events replayed if the type is a wildcard channel, null otherwise.
+     */
+    private final @Nullable Scope wildcard;
+
+    /**
+     * Snapshots of replayed events, only acquired by the catch-up thread.
+     */
+    private final @NotNull EventPool pool = new EventPool();
+
+    CatchUp(
+            @NotNull EventType type,
+            @Nullable Scope wildcard,
+            @NotNull Subscriber sub,
+            @NotNull EventJournal.Reader reader,
+            @NotNull EventRegistry registry) {
+        this.type = type;
+        this.wildcard = wildcard;
+        this.sub = sub;
+        this.reader = reader;
+        this.registry = registry;
+    }
+
+    /**
+     * Replay the committed events, from the catch-up thread, keeping at most {@link #WINDOW} of them
+     * waiting in the subscriber.
+     */
+    void replay() {
+        while (true) {
+            while (this.sub.getBacklog() > WINDOW) LockSupport.parkNanos(100_000L);
+            if (!this.replayNext(this.pool, Long.MAX_VALUE)) return;
+        }
+    }
+
+    /**
+     * Replay the remaining events journaled before a sequence, from the dispatcher thread.
+     */
+    void replay(@NotNull EventPool snapshots, long end) {
+        while (this.replayNext(snapshots, end)) {}
+    }
+
+    /**
+     * Deliver the next committed event before a sequence if it matches the subscribed type.
+     *
+     * @return false if there is no such event
+     */
+    private boolean replayNext(@NotNull EventPool snapshots, long end) {
+        Event e = snapshots.acquire();
+        if (!this.reader.next(e) || e.getSequence() >= end) {
+            snapshots.release(e);
+            return false;
+        }
+        if (this.matches(e)) {
+            e.retain(1);
+            this.sub.onEvent(e);
+        } else {
+            snapshots.release(e);
+        }
+        return true;
+    }
+
+    /**
+     * Return whether a replayed event matches the subscribed type, and give it the handle of its type
+     * if it is still registered.
+     */
+    private boolean matches(@NotNull Event e) {
+        if (this.wildcard == null && !e.getType().equals(this.type.getName())) return false;
+        EventType handle = this.registry.find(e.getType());
+        if (handle != null) e.setType(handle);
+        return this.wildcard == null || handle != null && handle.getScope().compareTo(this.wildcard) <= 0;
+    }
+}
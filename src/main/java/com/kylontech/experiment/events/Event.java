@@ -1,22 +1,117 @@
 package com.kylontech.experiment.events;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * Events are the basic communication medium between actors. An event is scoped, meaning only actors
  * with a scope greater or equal can access it.
+ *
+ * <p>Events received by subscribers are pooled snapshots, only valid while they are processed. Use
+ * {@link #copy()} to keep one.
  */
 public class Event {
 
+    private static final byte[] EMPTY_PAYLOAD = {};
+    private static final AtomicIntegerFieldUpdater<Event> REFS =
+            AtomicIntegerFieldUpdater.newUpdater(Event.class, "refs");
+
     @NotNull
     private String type = "";
+    @Nullable
+    private EventType eventType;
     @NotNull
     private String from = "";
-    private byte[] payload = {};
-    @NotNull
-    private Long timestamp = 0L;
+    private byte[] payload = EMPTY_PAYLOAD;
+
+    /**
+     * Off-heap payload and the slab block holding it, which replace the heap payload when set. The
+     * block is owned by the event and recycled when the event is reset. A payload without a block is
+     * a view the event does not own, e.g. of a journal segment.
+     */
+    @Nullable
+    private MemorySegment payloadSegment;
+    @Nullable
+    private PayloadSlab.Block block;
+    private long timestamp = 0L;
+    private long partitionKey = 0L;
+
+    /**
+     * Correlation id of a request, or of the request a reply answers. 0 for other events.
+     */
+    private long correlationId = 0L;
+    private boolean reply = false;
+
+    /**
+     * Sequence number given by the router's journal, -1 if the event was not journaled.
+     */
+    private long sequence = -1L;
+
+    /**
+     * {@link System#nanoTime()} when the event was published and dispatched, 0 unless the router
+     * tracks latencies.
+     */
+    private long publishNanos = 0L;
+    private long dispatchNanos = 0L;
+
+    /**
+     * Histogram of the end-to-end latency of the event type, set on dispatched snapshots when the
+     * router tracks latencies.
+     */
+    @Nullable
+    LatencyHistogram endToEndLatency;
+
+    /**
+     * Barrier of a ring buffer slot or mailbox marker published by a flush, null for events.
+     */
+    @Nullable
+    Barrier barrier;
+
+    /**
+     * Catch-up subscription handed over to live dispatch by a ring buffer slot, null for events.
+     */
+    @Nullable
+    CatchUp catchUp;
+
+    /**
+     * Bridge an event was received from, not forwarded back to it, null for local events.
+     */
+    @Nullable
+    Bridge origin;
+
+    /**
+     * Completed once the event is processed by all its subscribers, set on ring buffer slots and
+     * snapshots of events published with an acknowledgement.
+     */
+    @Nullable
+    CompletableFuture<Void> ack;
+
+    /**
+     * Pool this event returns to once released by all its readers, null if not pooled.
+     */
+    @Nullable
+    private final EventPool pool;
+    private volatile int refs;
+
+    /**
+     * Next event in the pool, only used while pooled.
+     */
+    @Nullable
+    Event next;
+
+    public Event() {
+        this.pool = null;
+    }
+
+    Event(@NotNull EventPool pool) {
+        this.pool = pool;
+    }
 
     @NotNull
     public String getType() {
@@ -25,6 +120,23 @@ public class Event {
 
     public void setType(@NotNull String type) {
         this.type = type;
+        this.eventType = null;
+    }
+
+    /**
+     * Return the handle of the event type, if the type was set from a handle.
+     */
+    @Nullable
+    public EventType getEventType() {
+        return eventType;
+    }
+
+    /**
+     * Set the event type from a registered handle. Routers then skip the type name lookup.
+     */
+    public void setType(@NotNull EventType eventType) {
+        this.type = eventType.getName();
+        this.eventType = eventType;
     }
 
     @NotNull
@@ -36,30 +148,257 @@ public class Event {
         this.from = from;
     }
 
+    /**
+     * Return the payload. An off-heap payload is copied to the heap, prefer {@link
+     * #getPayloadSegment()} to read it.
+     */
     public byte[] getPayload() {
-        return payload;
+        return payloadSegment != null ? payloadSegment.toArray(ValueLayout.JAVA_BYTE) : payload;
     }
 
+    /**
+     * Set a heap payload, releasing the off-heap payload if any.
+     */
     public void setPayload(byte[] payload) {
+        this.releasePayload();
         this.payload = payload;
     }
 
+    /**
+     * Return a view of the payload, off-heap or not, without copying it. The view of the off-heap
+     * payload of a received event is only valid while the event is processed.
+     */
+    public @NotNull MemorySegment getPayloadSegment() {
+        if (payloadSegment != null) return payloadSegment;
+        return MemorySegment.ofArray(payload != null ? payload : EMPTY_PAYLOAD);
+    }
+
+    /**
+     * Return whether the payload is off-heap, see {@link EventRouter#allocatePayload(Event, long)}.
+     */
+    public boolean isPayloadOffHeap() {
+        return payloadSegment != null;
+    }
+
+    /**
+     * Set an off-heap payload of the given size, held in a slab block owned by this event.
+     */
     @NotNull
-    public Long getTimestamp() {
+    MemorySegment setPayload(@NotNull PayloadSlab.Block block, long size) {
+        this.releasePayload();
+        this.payload = EMPTY_PAYLOAD;
+        this.block = block;
+        this.payloadSegment = block.segment.asSlice(0, size);
+        return this.payloadSegment;
+    }
+
+    /**
+     * Set an off-heap payload viewed without copy, which the event does not own.
+     */
+    void setPayloadView(@NotNull MemorySegment view) {
+        this.releasePayload();
+        this.payload = EMPTY_PAYLOAD;
+        this.payloadSegment = view;
+    }
+
+    /**
+     * Take the off-heap payload of another event over, if any. The other event no longer has it.
+     */
+    void movePayload(@NotNull Event e) {
+        if (e.payloadSegment == null) return;
+        this.releasePayload();
+        this.block = e.block;
+        this.payloadSegment = e.payloadSegment;
+        e.block = null;
+        e.payloadSegment = null;
+    }
+
+    /**
+     * Take the payload of a published event: a heap payload or a view is shared, an off-heap payload
+     * is moved.
+     */
+    void takePayload(@NotNull Event e) {
+        if (e.block != null) this.movePayload(e);
+        else if (e.payloadSegment != null) this.setPayloadView(e.payloadSegment);
+        else this.setPayload(e.payload);
+    }
+
+    /**
+     * Recycle the off-heap payload, if any.
+     */
+    void releasePayload() {
+        PayloadSlab.Block block = this.block;
+        this.payloadSegment = null;
+        if (block == null) return;
+        this.block = null;
+        block.release();
+    }
+
+    public long getTimestamp() {
         return timestamp;
     }
 
-    public void setTimestamp(@NotNull Long timestamp) {
+    public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
     }
 
+    /**
+     * Return the partition key, e.g. an entity id. Subscribers with several lanes process events of
+     * a same key in order. Defaults to 0.
+     */
+    public long getPartitionKey() {
+        return partitionKey;
+    }
+
+    public void setPartitionKey(long partitionKey) {
+        this.partitionKey = partitionKey;
+    }
+
+    /**
+     * Return the correlation id of a request, set by {@link EventRouter#request}, or of the request
+     * this event replies to. 0 for other events.
+     */
+    public long getCorrelationId() {
+        return correlationId;
+    }
+
+    void setCorrelationId(long correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    /**
+     * Return whether this event is a reply to a request.
+     */
+    public boolean isReply() {
+        return reply;
+    }
+
+    /**
+     * Make this event a reply to a request. Once published, it completes the request.
+     */
+    public void setReplyTo(@NotNull Event request) {
+        this.correlationId = request.correlationId;
+        this.reply = true;
+    }
+
+    void setReply(boolean reply) {
+        this.reply = reply;
+    }
+
+    /**
+     * Return the sequence number given to the event by the router's journal, see {@link
+     * EventJournal}, or -1 if the event was not journaled.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Return the {@link System#nanoTime()} at which the event was published, 0 unless the router
+     * tracks latencies.
+     */
+    public long getPublishNanos() {
+        return publishNanos;
+    }
+
+    void setPublishNanos(long publishNanos) {
+        this.publishNanos = publishNanos;
+    }
+
+    /**
+     * Return the {@link System#nanoTime()} at which the event was dispatched, 0 unless the router
+     * tracks latencies.
+     */
+    public long getDispatchNanos() {
+        return dispatchNanos;
+    }
+
+    void setDispatchNanos(long dispatchNanos) {
+        this.dispatchNanos = dispatchNanos;
+    }
+
+    /**
+     * Return an unpooled copy of this event. A heap payload is shared, an off-heap payload is copied
+     * to the heap.
+     */
+    @NotNull
+    public Event copy() {
+        Event e = new Event();
+        e.copyFrom(this);
+        if (this.payloadSegment != null) e.payload = this.getPayload();
+        return e;
+    }
+
+    /**
+     * Copy all fields from another event but its off-heap payload, see {@link #movePayload(Event)}.
+     */
+    void copyFrom(@NotNull Event e) {
+        this.type = e.type;
+        this.eventType = e.eventType;
+        this.from = e.from;
+        this.payload = e.payload;
+        this.timestamp = e.timestamp;
+        this.partitionKey = e.partitionKey;
+        this.correlationId = e.correlationId;
+        this.reply = e.reply;
+        this.sequence = e.sequence;
+        this.publishNanos = e.publishNanos;
+        this.dispatchNanos = e.dispatchNanos;
+    }
+
+    /**
+     * Set the number of readers that must release this event before it returns to its pool.
+     */
+    void retain(int readers) {
+        REFS.set(this, readers);
+    }
+
+    /**
+     * Release this event after reading it. The last reader returns it to its pool. This is a no-op
+     * for unpooled events.
+     */
+    void release() {
+        if (this.pool == null || REFS.decrementAndGet(this) != 0) return;
+        CompletableFuture<Void> ack = this.ack;
+        this.pool.release(this);
+        if (ack != null) ack.complete(null);
+    }
+
+    /**
+     * Reset all fields to their defaults. Used by routers before handing a ring buffer slot to a
+     * producer, a reset slot has no event type and is not dispatched.
+     */
+    void reset() {
+        this.type = "";
+        this.eventType = null;
+        this.from = "";
+        this.payload = EMPTY_PAYLOAD;
+        this.releasePayload();
+        this.timestamp = 0L;
+        this.partitionKey = 0L;
+        this.correlationId = 0L;
+        this.reply = false;
+        this.sequence = -1L;
+        this.publishNanos = 0L;
+        this.dispatchNanos = 0L;
+        this.endToEndLatency = null;
+        this.barrier = null;
+        this.catchUp = null;
+        this.ack = null;
+        this.origin = null;
+    }
+
     public String toString() {
         return "Event {type='"
                 + this.type
                 + "', from='"
                 + this.from
                 + "', payload='"
-                + new String(this.payload, StandardCharsets.UTF_8)
+                + new String(this.getPayload(), StandardCharsets.UTF_8)
                 + "', timestamp='"
                 + this.timestamp
                 + "'}";
@@ -0,0 +1,447 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary form of events, for persistence, IPC and bridging. Events are encoded in a stream
+ * and decoded in the same order: type names and senders are interned, i.e. sent once with an id
+ * and then referred to by that id, and timestamps are sent as a difference with the previous one.
+ * An {@link Encoder} and its {@link Decoder} must therefore be reset at the same points of the
+ * stream, e.g. at the start of a file or connection. A {@link #selfContainedEncoder()} instead
+ * defines every string in every event and sends absolute timestamps, so each event decodes without
+ * the ones before it, e.g. to read a file from any event.
+ *
+ * <p>Each event starts with the format {@link #VERSION} and a byte of flags, followed by:
+ *
+ * <ul>
+ *   <li>the type and the sender, each as a varint {@code id << 1}, or {@code id << 1 | 1} followed
+ *       by a varint length and the UTF-8 bytes when the id is defined,
+ *   <li>the zigzag varint difference of the timestamp with the previous one, or the timestamp if the
+ *       event is self-contained,
+ *   <li>the zigzag varint partition key and the varint correlation id, only if they are not 0,
+ *   <li>the varint length of the payload and its bytes, unless the payload is null.
+ * </ul>
+ *
+ * <p>Events are encoded into and decoded from {@link MemorySegment}s or {@link ByteBuffer}s in
+ * place, without intermediate buffers. Only the request id, the reply flag, and the fields above
+ * are encoded: event type handles, sequences and latency stamps are local to a router.
+ */
+public final class EventCodec {
+
+    /**
+     * Version of the format, the first byte of each encoded event.
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * Number of ids of interned strings. Once they are all used, the encoder starts over from 0 and
+     * redefines ids as needed.
+     */
+    static final int MAX_SYMBOLS = 4096;
+
+    private static final int REPLY = 1;
+    private static final int PARTITION_KEY = 1 << 1;
+    private static final int CORRELATION_ID = 1 << 2;
+    private static final int NULL_PAYLOAD = 1 << 3;
+    private static final int SELF_CONTAINED = 1 << 4;
+    private static final int FLAGS = REPLY | PARTITION_KEY | CORRELATION_ID | NULL_PAYLOAD | SELF_CONTAINED;
+
+    private static final int MAX_VARINT = 5;
+    private static final int MAX_VARLONG = 10;
+
+    private EventCodec() {}
+
+    /**
+     * Return a new encoder.
+     */
+    public static @NotNull Encoder encoder() {
+        return new Encoder(false);
+    }
+
+    /**
+     * Return a new encoder of self-contained events, which decode without the events before them.
+     * Strings keep the same id while they are in use, so decoders reuse the string they decoded.
+     */
+    public static @NotNull Encoder selfContainedEncoder() {
+        return new Encoder(true);
+    }
+
+    /**
+     * Return a new decoder.
+     */
+    public static @NotNull Decoder decoder() {
+        return new Decoder();
+    }
+
+    /**
+     * Encoder of a stream of events. Not thread-safe.
+     */
+    public static final class Encoder {
+        private final @NotNull Map<String, Symbol> symbols = new HashMap<>();
+        private final boolean selfContained;
+        private long timestamp = 0L;
+
+        /**
+         * Cached view of the last buffer encoded into.
+         */
+        private @Nullable ByteBuffer buffer;
+        private @Nullable MemorySegment bufferView;
+
+        private Encoder(boolean selfContained) {
+            this.selfContained = selfContained;
+        }
+
+        /**
+         * Forget interned strings and the previous timestamp, at the start of a new stream.
+         */
+        public void reset() {
+            this.symbols.clear();
+            this.timestamp = 0L;
+        }
+
+        /**
+         * Return an upper bound of the size of an encoded event. Encoding needs that much room.
+         */
+        public long maxSize(@NotNull Event e) {
+            long size = 2 + 2 * (MAX_VARINT + MAX_VARINT) + 3 * MAX_VARLONG + MAX_VARINT;
+            size += 3L * (e.getType().length() + e.getFrom().length());
+            if (e.isPayloadOffHeap()) return size + e.getPayloadSegment().byteSize();
+            byte[] payload = e.getPayload();
+            return payload != null ? size + payload.length : size;
+        }
+
+        /**
+         * Encode an event at an offset of a segment.
+         *
+         * @return the offset following the encoded event
+         * @throws IndexOutOfBoundsException if the segment has less than {@link #maxSize(Event)}
+         *                                   bytes after the offset
+         */
+        public long encode(@NotNull Event e, @NotNull MemorySegment dst, long offset)
+                throws IndexOutOfBoundsException {
+            if (offset < 0 || dst.byteSize() - offset < this.maxSize(e))
+                throw new IndexOutOfBoundsException("Not enough room to encode the event");
+            MemorySegment offHeap = e.isPayloadOffHeap() ? e.getPayloadSegment() : null;
+            byte[] payload = offHeap == null ? e.getPayload() : null;
+            int flags = 0;
+            if (e.isReply()) flags |= REPLY;
+            if (e.getPartitionKey() != 0L) flags |= PARTITION_KEY;
+            if (e.getCorrelationId() != 0L) flags |= CORRELATION_ID;
+            if (offHeap == null && payload == null) flags |= NULL_PAYLOAD;
+            if (this.selfContained) flags |= SELF_CONTAINED;
+
+            long p = offset;
+            dst.set(ValueLayout.JAVA_BYTE, p++, VERSION);
+            dst.set(ValueLayout.JAVA_BYTE, p++, (byte) flags);
+            p = this.putSymbol(dst, p, e.getType());
+            p = this.putSymbol(dst, p, e.getFrom());
+            long previous = this.selfContained ? 0L : this.timestamp;
+            p = putVarLong(dst, p, zigzag(e.getTimestamp() - previous));
+            this.timestamp = e.getTimestamp();
+            if ((flags & PARTITION_KEY) != 0) p = putVarLong(dst, p, zigzag(e.getPartitionKey()));
+            if ((flags & CORRELATION_ID) != 0) p = putVarLong(dst, p, e.getCorrelationId());
+            if (offHeap != null) {
+                p = putVarLong(dst, p, offHeap.byteSize());
+                MemorySegment.copy(offHeap, 0, dst, p, offHeap.byteSize());
+                p += offHeap.byteSize();
+            } else if (payload != null) {
+                p = putVarLong(dst, p, payload.length);
+                MemorySegment.copy(payload, 0, dst, ValueLayout.JAVA_BYTE, p, payload.length);
+                p += payload.length;
+            }
+            return p;
+        }
+
+        /**
+         * Encode an event at the position of a buffer, and move its position after it.
+         *
+         * @return the size of the encoded event
+         * @throws BufferOverflowException if the buffer has less than {@link #maxSize(Event)} bytes
+         *                                 remaining
+         */
+        public int encode(@NotNull Event e, @NotNull ByteBuffer dst) throws BufferOverflowException {
+            if (dst.remaining() < this.maxSize(e)) throw new BufferOverflowException();
+            if (dst != this.buffer) {
+                this.buffer = dst;
+                this.bufferView = viewOf(dst);
+            }
+            int start = dst.position();
+            int end = (int) this.encode(e, this.bufferView, start);
+            dst.position(end);
+            return end - start;
+        }
+
+        private long putSymbol(@NotNull MemorySegment dst, long p, @NotNull String s) {
+            Symbol symbol = this.symbols.get(s);
+            if (symbol != null && !this.selfContained) return putVarLong(dst, p, (long) symbol.id << 1);
+            if (symbol == null) {
+                if (this.symbols.size() == MAX_SYMBOLS) this.symbols.clear();
+                symbol = new Symbol(this.symbols.size(), s.getBytes(StandardCharsets.UTF_8));
+                this.symbols.put(s, symbol);
+            }
+            byte[] bytes = symbol.utf8;
+            p = putVarLong(dst, p, (long) symbol.id << 1 | 1);
+            p = putVarLong(dst, p, bytes.length);
+            MemorySegment.copy(bytes, 0, dst, ValueLayout.JAVA_BYTE, p, bytes.length);
+            return p + bytes.length;
+        }
+
+        /**
+         * Interned string, with its id and UTF-8 bytes.
+         */
+        private record Symbol(int id, byte @NotNull [] utf8) {}
+    }
+
+    /**
+     * Decoder of a stream of events. Not thread-safe.
+     */
+    public static final class Decoder {
+        private final @Nullable String @NotNull [] symbols = new String[MAX_SYMBOLS];
+
+        /**
+         * UTF-8 bytes of the interned strings, to reuse a string that is defined again.
+         */
+        private final @Nullable MemorySegment @NotNull [] utf8 = new MemorySegment[MAX_SYMBOLS];
+        private long timestamp = 0L;
+
+        /**
+         * State of the event being decoded: position, end of the readable bytes and the strings it
+         * interns, which are only added to the symbols once the whole event is read, so that a
+         * malformed or truncated event leaves the decoder unchanged.
+         */
+        private long position;
+        private long limit;
+        private final int @NotNull [] definedIds = new int[2];
+        private final @Nullable String @NotNull [] definedSymbols = new String[2];
+        private final @Nullable MemorySegment @NotNull [] definedUtf8 = new MemorySegment[2];
+        private int defined;
+
+        private @Nullable ByteBuffer buffer;
+        private @Nullable MemorySegment bufferView;
+
+        private Decoder() {}
+
+        /**
+         * Forget interned strings and the previous timestamp, at the start of a new stream.
+         */
+        public void reset() {
+            Arrays.fill(this.symbols, null);
+            Arrays.fill(this.utf8, null);
+            this.timestamp = 0L;
+        }
+
+        /**
+         * Decode an event at an offset of a segment into the given event. The type, sender, payload,
+         * timestamp, partition key, correlation id and reply flag of the event are overwritten.
+         *
+         * @return the offset following the decoded event
+         * @throws IllegalArgumentException  if the event is malformed, e.g. has unknown flags, or of
+         *                                   another version
+         * @throws IndexOutOfBoundsException if the event is truncated
+         */
+        public long decode(@NotNull MemorySegment src, long offset, @NotNull Event into)
+                throws IllegalArgumentException, IndexOutOfBoundsException {
+            return this.read(src, offset, src.byteSize(), into, false);
+        }
+
+        /**
+         * Decode an event like {@link #decode(MemorySegment, long, Event)}, but give it a view of its
+         * payload in the segment rather than a copy. The view is only valid while the segment is.
+         *
+         * @return the offset following the decoded event
+         */
+        long decodeView(@NotNull MemorySegment src, long offset, @NotNull Event into)
+                throws IllegalArgumentException, IndexOutOfBoundsException {
+            return this.read(src, offset, src.byteSize(), into, true);
+        }
+
+        /**
+         * Decode an event at the position of a buffer into the given event, see {@link
+         * #decode(MemorySegment, long, Event)}, and move its position after it.
+         *
+         * @return the size of the decoded event
+         * @throws BufferUnderflowException if the event is truncated
+         */
+        public int decode(@NotNull ByteBuffer src, @NotNull Event into)
+                throws IllegalArgumentException, BufferUnderflowException {
+            return this.read(src, into);
+        }
+
+        /**
+         * Skip an event at an offset of a segment, still learning its interned strings and timestamp.
+         *
+         * @return the offset following the skipped event
+         */
+        public long skip(@NotNull MemorySegment src, long offset)
+                throws IllegalArgumentException, IndexOutOfBoundsException {
+            return this.read(src, offset, src.byteSize(), null, false);
+        }
+
+        private int read(@NotNull ByteBuffer src, @Nullable Event into) {
+            if (src != this.buffer) {
+                this.buffer = src;
+                this.bufferView = viewOf(src);
+            }
+            int start = src.position();
+            long end;
+            try {
+                end = this.read(this.bufferView, start, src.limit(), into, false);
+            } catch (IndexOutOfBoundsException _) {
+                throw new BufferUnderflowException();
+            }
+            src.position((int) end);
+            return (int) end - start;
+        }
+
+        /**
+         * Decode an event whose bytes must end before a limit. Nothing is changed, neither the decoder
+         * nor the event, if the event is malformed or truncated.
+         *
+         * @param view whether the payload is given as a view of the source rather than copied
+         */
+        private long read(
+                @NotNull MemorySegment src, long offset, long limit, @Nullable Event into, boolean view) {
+            this.position = offset;
+            this.limit = limit;
+            this.defined = 0;
+            byte version = this.getByte(src);
+            if (version != VERSION)
+                throw new IllegalArgumentException("Unsupported event codec version " + version);
+            int flags = this.getByte(src);
+            if ((flags & ~FLAGS) != 0)
+                throw new IllegalArgumentException("Malformed event: unknown flags " + (flags & 0xff));
+            String type = this.getSymbol(src);
+            String from = this.getSymbol(src);
+            long previous = (flags & SELF_CONTAINED) != 0 ? 0L : this.timestamp;
+            long timestamp = previous + unzigzag(this.getVarLong(src));
+            long partitionKey = (flags & PARTITION_KEY) != 0 ? unzigzag(this.getVarLong(src)) : 0L;
+            long correlationId = (flags & CORRELATION_ID) != 0 ? this.getVarLong(src) : 0L;
+            int length = (flags & NULL_PAYLOAD) != 0 ? -1 : this.getLength(src);
+            long p = this.position;
+            for (int i = 0; i < this.defined; i++) {
+                this.symbols[this.definedIds[i]] = this.definedSymbols[i];
+                this.utf8[this.definedIds[i]] = this.definedUtf8[i];
+                this.definedSymbols[i] = null;
+                this.definedUtf8[i] = null;
+            }
+            this.timestamp = timestamp;
+            if (into != null) {
+                into.setType(type);
+                into.setFrom(from);
+                into.setTimestamp(timestamp);
+                into.setPartitionKey(partitionKey);
+                into.setCorrelationId(correlationId);
+                into.setReply((flags & REPLY) != 0);
+                if (length >= 0 && view) {
+                    into.setPayloadView(src.asSlice(p, length));
+                } else {
+                    byte[] payload = null;
+                    if (length >= 0) {
+                        payload = new byte[length];
+                        MemorySegment.copy(src, ValueLayout.JAVA_BYTE, p, payload, 0, length);
+                    }
+                    into.setPayload(payload);
+                }
+            }
+            return length >= 0 ? p + length : p;
+        }
+
+        private @NotNull String getSymbol(@NotNull MemorySegment src) {
+            long ref = this.getVarLong(src);
+            long id = ref >>> 1;
+            if (id >= MAX_SYMBOLS)
+                throw new IllegalArgumentException("Malformed event: invalid symbol " + id);
+            if ((ref & 1) != 0) {
+                int length = this.getLength(src);
+                long start = this.position;
+                this.position += length;
+                // A string defined again with the same id, e.g. by a self-contained event, is reused
+                MemorySegment utf8 = this.utf8[(int) id];
+                String s = this.symbols[(int) id];
+                if (s == null
+                        || utf8.byteSize() != length
+                        || MemorySegment.mismatch(src, start, start + length, utf8, 0, length) != -1) {
+                    byte[] bytes = new byte[length];
+                    MemorySegment.copy(src, ValueLayout.JAVA_BYTE, start, bytes, 0, length);
+                    s = new String(bytes, StandardCharsets.UTF_8);
+                    utf8 = MemorySegment.ofArray(bytes);
+                }
+                this.definedIds[this.defined] = (int) id;
+                this.definedUtf8[this.defined] = utf8;
+                this.definedSymbols[this.defined++] = s;
+                return s;
+            }
+            for (int i = this.defined - 1; i >= 0; i--) {
+                if (this.definedIds[i] == id) return this.definedSymbols[i];
+            }
+            String s = this.symbols[(int) id];
+            if (s == null) throw new IllegalArgumentException("Malformed event: undefined symbol " + id);
+            return s;
+        }
+
+        private int getLength(@NotNull MemorySegment src) {
+            long length = this.getVarLong(src);
+            if (length > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("Malformed event: invalid length " + length);
+            // Checked before allocating the bytes
+            if (length > this.limit - this.position)
+                throw new IndexOutOfBoundsException("Truncated event");
+            return (int) length;
+        }
+
+        private byte getByte(@NotNull MemorySegment src) {
+            if (this.position >= this.limit) throw new IndexOutOfBoundsException("Truncated event");
+            return src.get(ValueLayout.JAVA_BYTE, this.position++);
+        }
+
+        private long getVarLong(@NotNull MemorySegment src) {
+            long p = this.position;
+            long value = 0L;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (p >= this.limit) throw new IndexOutOfBoundsException("Truncated event");
+                byte b = src.get(ValueLayout.JAVA_BYTE, p++);
+                value |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    this.position = p;
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed event: varint too long");
+        }
+    }
+
+    static long putVarLong(@NotNull MemorySegment dst, long p, long value) {
+        while ((value & ~0x7fL) != 0) {
+            dst.set(ValueLayout.JAVA_BYTE, p++, (byte) (value | 0x80));
+            value >>>= 7;
+        }
+        dst.set(ValueLayout.JAVA_BYTE, p++, (byte) value);
+        return p;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Return a view of the whole capacity of a buffer, addressed like the buffer.
+     */
+    private static @NotNull MemorySegment viewOf(@NotNull ByteBuffer buffer) {
+        return MemorySegment.ofBuffer(buffer.duplicate().clear());
+    }
+}
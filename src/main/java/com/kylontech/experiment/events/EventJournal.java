@@ -0,0 +1,407 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of the events published to a router, in segment files mapped in memory.
+ *
+ * <p>The journal is a ring buffer stage running before dispatch: each event is appended and given a
+ * sequence number, see {@link Event#getSequence()}, and the whole batch taken from the ring buffer is
+ * committed at once according to the {@link JournalOptions.SyncPolicy}, before it is dispatched.
+ *
+ * <p>Segment files are named after the sequence of their first event. Each record is aligned on 8
+ * bytes and starts with the length of its body, written last, a CRC32C of its sequence and body,
+ * and its sequence. Bodies are self-contained {@link EventCodec} events, see {@link
+ * EventCodec#selfContainedEncoder()}, so a reader starts at any record of a segment, hopping over
+ * the records before it by their headers. A length of -1 marks the end of a segment.
+ *
+ * <p>When a journal is opened, records are checked from the start of its last segment and the first
+ * invalid record, e.g. torn by a crash, is discarded with the following ones. Appending resumes in
+ * a new segment.
+ *
+ * <p>An I/O error while appending stops the router's dispatcher rather than losing events silently.
+ */
+public final class EventJournal {
+
+    static final String SUFFIX = ".journal";
+    private static final int HEADER = 16;
+    private static final int END_OF_SEGMENT = -1;
+
+    /**
+     * Size of the chunks the tail of a recovered segment is checked and zeroed by.
+     */
+    private static final int ZERO_CHUNK = 64 * 1024;
+    private static final VarHandle LENGTH =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Segment being written, published to readers.
+     */
+    private record Segment(long first, @NotNull Path file, @NotNull MappedByteBuffer buffer) {}
+
+    private final @NotNull Path directory;
+    private final int segmentSize;
+    private final @NotNull JournalOptions.SyncPolicy syncPolicy;
+    private final long syncIntervalNanos;
+
+    /**
+     * Paths of the segments by their first sequence.
+     */
+    private final @NotNull ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private volatile @NotNull Segment active;
+
+    /**
+     * State of the writer, the thread of the journal stage, which runs ahead of the dispatcher.
+     */
+    private @NotNull MappedByteBuffer buffer;
+    private @NotNull MemorySegment mapped;
+    private int position;
+    private int synced;
+    private long nextSequence;
+    private long lastSyncNanos = System.nanoTime();
+    private final @NotNull CRC32C crc = new CRC32C();
+    private final @NotNull EventCodec.Encoder encoder = EventCodec.selfContainedEncoder();
+
+    /**
+     * Sequence of the last event of the last committed batch.
+     */
+    private volatile long lastSequence;
+
+    /**
+     * Open the journal in a directory, which may differ from the directory of its options.
+     */
+    EventJournal(@NotNull JournalOptions options, @NotNull Path directory) throws IOException {
+        this.directory = directory;
+        this.segmentSize = options.segmentSize();
+        this.syncPolicy = options.syncPolicy();
+        this.syncIntervalNanos = options.syncIntervalNanos();
+        Files.createDirectories(this.directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long first = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                this.segments.put(first, file);
+            }
+        }
+        if (this.segments.isEmpty()) {
+            this.nextSequence = 0L;
+            this.active = this.createSegment(this.segmentSize);
+            this.segments.put(this.active.first, this.active.file);
+        } else {
+            Map.Entry<Long, Path> last = this.segments.lastEntry();
+            this.nextSequence = last.getKey();
+            MappedByteBuffer buffer = map(last.getValue(), 0, FileChannel.MapMode.READ_WRITE);
+            this.active = new Segment(last.getKey(), last.getValue(), buffer);
+            this.recover();
+        }
+        this.buffer = this.active.buffer;
+        this.mapped = MemorySegment.ofBuffer(this.buffer);
+        // Append to a new segment rather than after the recovered records
+        if (this.position > 0) this.roll(0);
+        this.lastSequence = this.nextSequence - 1;
+    }
+
+    /**
+     * Return new journal options for the given directory, see {@link
+     * EventRouterBuilder#journal(JournalOptions)}.
+     */
+    public static @NotNull JournalOptions options(@NotNull Path directory) {
+        return new JournalOptions(directory);
+    }
+
+    /**
+     * Return the directory of the journal.
+     */
+    public @NotNull Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Return the sequence of the last committed event, -1 if the journal is empty.
+     */
+    public long getLastSequence() {
+        return this.lastSequence;
+    }
+
+    /**
+     * Return a reader of the committed events, starting at the given sequence or at the first event
+     * of the journal if it is older.
+     */
+    public @NotNull Reader read(long fromSequence) {
+        return new Reader(fromSequence);
+    }
+
+    /**
+     * Append a ring buffer slot, and commit the batch if it is its last slot. Control slots, e.g.
+     * barriers, are not journaled but get the sequence of the next journaled event.
+     */
+    void append(@NotNull Event e, long ringSequence, boolean endOfBatch) {
+        if (e.barrier == null && e.getEventType() != null) this.append(e);
+        else e.setSequence(this.nextSequence);
+        if (endOfBatch) this.commit();
+    }
+
+    private void append(@NotNull Event e) {
+        int maxSize = align(HEADER + (int) this.encoder.maxSize(e));
+        if (this.position + maxSize > this.buffer.capacity()) this.roll(maxSize);
+
+        MappedByteBuffer buffer = this.buffer;
+        int start = this.position;
+        long sequence = this.nextSequence++;
+        buffer.putLong(start + 8, sequence);
+        int length = (int) (this.encoder.encode(e, this.mapped, start + HEADER) - start - HEADER);
+        buffer.putInt(start + 4, this.checksum(buffer, start + 8, Long.BYTES + length));
+        LENGTH.setRelease(buffer, start, length);
+        this.position = start + align(HEADER + length);
+        e.setSequence(sequence);
+    }
+
+    /**
+     * Force the appended events according to the sync policy and publish their sequence.
+     */
+    private void commit() {
+        if (this.position == this.synced) return;
+        switch (this.syncPolicy) {
+            case NONE -> this.synced = this.position;
+            case BATCH -> this.sync();
+            case INTERVAL -> {
+                if (System.nanoTime() - this.lastSyncNanos >= this.syncIntervalNanos) this.sync();
+            }
+        }
+        this.lastSequence = this.nextSequence - 1;
+    }
+
+    private void sync() {
+        this.buffer.force(this.synced, this.position - this.synced);
+        this.synced = this.position;
+        this.lastSyncNanos = System.nanoTime();
+    }
+
+    /**
+     * Close the current segment and start a new one with room for at least the given size.
+     */
+    private void roll(int size) {
+        if (this.position < this.buffer.capacity())
+            LENGTH.setRelease(this.buffer, this.position, END_OF_SEGMENT);
+        if (this.syncPolicy != JournalOptions.SyncPolicy.NONE) this.buffer.force();
+        Segment segment;
+        try {
+            segment = this.createSegment(Math.max(this.segmentSize, align(size + Integer.BYTES)));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        // Publish the segment to readers once it is active, so that they read it through its mapping
+        this.active = segment;
+        this.segments.put(segment.first, segment.file);
+        this.buffer = segment.buffer;
+        this.mapped = MemorySegment.ofBuffer(segment.buffer);
+        this.position = 0;
+        this.synced = 0;
+        this.encoder.reset();
+    }
+
+    private @NotNull Segment createSegment(int size) throws IOException {
+        Path file = this.directory.resolve(String.format("%020d", this.nextSequence) + SUFFIX);
+        return new Segment(this.nextSequence, file, map(file, size, FileChannel.MapMode.READ_WRITE));
+    }
+
+    /**
+     * Find the end of the last segment, discard what follows and find the next sequence.
+     */
+    private void recover() throws IOException {
+        MappedByteBuffer buffer = this.active.buffer;
+        int p = 0;
+        while (p + HEADER <= buffer.capacity()) {
+            int length = buffer.getInt(p);
+            if (length == END_OF_SEGMENT) {
+                this.position = p;
+                this.buffer = buffer;
+                this.roll(0);
+                return;
+            }
+            if (length <= 0 || p + HEADER + length > buffer.capacity()) break;
+            if (buffer.getInt(p + 4) != this.checksum(buffer, p + 8, Long.BYTES + length)) break;
+            if (buffer.getLong(p + 8) != this.nextSequence) break;
+            this.nextSequence++;
+            p += align(HEADER + length);
+        }
+        if (zeroTail(MemorySegment.ofBuffer(buffer), p)) buffer.force();
+        this.position = p;
+        this.synced = p;
+    }
+
+    /**
+     * Zero what follows the valid records of a segment, so that readers and the writer find no torn
+     * record there. Only the chunks that are not already zero are written.
+     *
+     * @return whether a torn tail was found and zeroed
+     */
+    private static boolean zeroTail(@NotNull MemorySegment segment, long from) {
+        MemorySegment zeros = MemorySegment.ofArray(new byte[ZERO_CHUNK]);
+        boolean torn = false;
+        for (long p = from; p < segment.byteSize(); p += ZERO_CHUNK) {
+            long size = Math.min(ZERO_CHUNK, segment.byteSize() - p);
+            MemorySegment chunk = segment.asSlice(p, size);
+            if (chunk.mismatch(zeros.asSlice(0, size)) == -1) continue;
+            chunk.fill((byte) 0);
+            torn = true;
+        }
+        return torn;
+    }
+
+    private int checksum(@NotNull ByteBuffer buffer, int offset, int length) {
+        this.crc.reset();
+        this.crc.update(buffer.slice(offset, length));
+        return (int) this.crc.getValue();
+    }
+
+    /**
+     * Force the last events and release the segment. The journal must not be appended to anymore.
+     */
+    void close() {
+        if (this.syncPolicy != JournalOptions.SyncPolicy.NONE && this.position > this.synced) this.sync();
+        this.lastSequence = this.nextSequence - 1;
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    /**
+     * Map a segment file, with the given size if it is not 0 or with its current size otherwise.
+     */
+    private static @NotNull MappedByteBuffer map(
+            @NotNull Path file, int size, @NotNull FileChannel.MapMode mode) throws IOException {
+        Set<StandardOpenOption> options = mode == FileChannel.MapMode.READ_ONLY
+                ? EnumSet.of(StandardOpenOption.READ)
+                : EnumSet.of(StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            MappedByteBuffer buffer = channel.map(mode, 0, size != 0 ? size : channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+    }
+
+    /**
+     * Reader of the committed events of a journal, in sequence order, from any thread. A reader is
+     * not thread-safe and holds no resource besides memory mappings, released once neither the reader
+     * nor the payloads of its events are reachable.
+     */
+    public final class Reader {
+        private long next;
+        private long first = -1L;
+        private @Nullable ByteBuffer buffer;
+        private @Nullable MemorySegment segment;
+        private int position;
+        private final @NotNull EventCodec.Decoder decoder = EventCodec.decoder();
+
+        private Reader(long next) {
+            this.next = next;
+        }
+
+        /**
+         * Return the next committed event, or null if there is none yet. Returned events have the type
+         * name, sender, timestamp, partition key and sequence of the journaled event, and a read-only
+         * view of its payload in the journal, see {@link Event#getPayloadSegment()}.
+         */
+        public @Nullable Event next() throws UncheckedIOException {
+            Event e = new Event();
+            return this.next(e) ? e : null;
+        }
+
+        /**
+         * Read the next committed event into a reset event, straight from the mapped segment, whose
+         * payload it views.
+         *
+         * @return false if there is no committed event yet
+         */
+        boolean next(@NotNull Event into) throws UncheckedIOException {
+            while (true) {
+                ByteBuffer buffer = this.buffer;
+                if (buffer == null) {
+                    if (!this.open()) return false;
+                    continue;
+                }
+                int length = this.position + HEADER <= buffer.capacity()
+                        ? (int) LENGTH.getAcquire(buffer, this.position)
+                        : END_OF_SEGMENT;
+                if (length == END_OF_SEGMENT) {
+                    if (!this.advance()) return false;
+                    continue;
+                }
+                if (length == 0) return false;
+                int p = this.position;
+                long sequence = buffer.getLong(p + 8);
+                if (sequence > EventJournal.this.lastSequence) return false;
+                this.position += align(HEADER + length);
+                if (sequence < this.next) continue;
+                this.next = sequence + 1;
+                this.decoder.decodeView(this.segment, p + HEADER, into);
+                into.setSequence(sequence);
+                return true;
+            }
+        }
+
+        /**
+         * Return the sequence of the next event returned by this reader.
+         */
+        public long getNextSequence() {
+            return this.next;
+        }
+
+        /**
+         * Open the segment holding the next sequence.
+         */
+        private boolean open() {
+            Map.Entry<Long, Path> entry = EventJournal.this.segments.floorEntry(this.next);
+            if (entry == null) entry = EventJournal.this.segments.firstEntry();
+            if (entry == null) return false;
+            this.openSegment(entry.getKey(), entry.getValue());
+            return true;
+        }
+
+        /**
+         * Move to the segment following the current one, if it exists yet.
+         */
+        private boolean advance() {
+            Map.Entry<Long, Path> entry = EventJournal.this.segments.higherEntry(this.first);
+            if (entry == null) return false;
+            this.openSegment(entry.getKey(), entry.getValue());
+            return true;
+        }
+
+        private void openSegment(long first, @NotNull Path file) {
+            Segment active = EventJournal.this.active;
+            try {
+                this.buffer = active.first == first
+                        ? active.buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+                        : map(file, 0, FileChannel.MapMode.READ_ONLY);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            this.segment = MemorySegment.ofBuffer(this.buffer).asReadOnly();
+            this.first = first;
+            this.position = 0;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pool of reference-counted event snapshots. Snapshots return to the pool when their last reader
+ * releases them, so a router dispatching at a steady rate stops allocating events.
+ *
+ * <p>The pool is a lock-free stack linked through the pooled events. Events may be released from
+ * any thread but must only be acquired from a single thread, which rules out ABA on the stack head.
+ */
+final class EventPool {
+
+    private final @NotNull AtomicReference<Event> head = new AtomicReference<>();
+
+    /**
+     * Take an event from the pool, or allocate one if the pool is empty. Must always be called from
+     * the same thread.
+     */
+    @NotNull
+    Event acquire() {
+        Event e;
+        do {
+            e = this.head.get();
+            if (e == null) return new Event(this);
+        } while (!this.head.compareAndSet(e, e.next));
+        e.next = null;
+        return e;
+    }
+
+    /**
+     * Give an event back to the pool. Called by {@link Event#release()}.
+     */
+    void release(@NotNull Event e) {
+        e.reset();
+        Event h;
+        do {
+            h = this.head.get();
+            e.next = h;
+        } while (!this.head.compareAndSet(h, e));
+    }
+}
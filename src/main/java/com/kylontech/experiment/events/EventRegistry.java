@@ -1,50 +1,105 @@
 package com.kylontech.experiment.events;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Global event type registry mapping event types to scopes.
+ * Global event type registry mapping event types to scopes. Each registered type gets a dense id,
+ * ids of unregistered types are reused.
  */
 public class EventRegistry {
 
-    private final @NotNull ConcurrentHashMap<String, Scope> scopes;
+    private final @NotNull ConcurrentHashMap<String, EventType> types;
+
+    /**
+     * Registered types indexed by id. Copied on write, registration is rare.
+     */
+    private volatile @NotNull EventType[] byId;
+
+    /**
+     * Ids in use, guarded by this registry.
+     */
+    private final @NotNull BitSet usedIds;
 
     public EventRegistry() {
-        this.scopes = new ConcurrentHashMap<>();
+        this.types = new ConcurrentHashMap<>();
+        this.byId = new EventType[0];
+        this.usedIds = new BitSet();
     }
 
     /**
      * Register a new type of event with an associated scope.
+     *
+     * @return the handle of the new event type
      */
-    public void register(@NotNull String type, @NotNull Scope s) throws IllegalStateException {
-        if (this.scopes.putIfAbsent(type, s) != null)
+    public synchronized @NotNull EventType register(@NotNull String type, @NotNull Scope s)
+            throws IllegalStateException {
+        if (this.types.containsKey(type))
             throw new IllegalStateException("Type '" + type + "' is already registered");
+        int id = this.usedIds.nextClearBit(0);
+        EventType handle = new EventType(type, s, id);
+        EventType[] next = Arrays.copyOf(this.byId, Math.max(this.byId.length, id + 1));
+        next[id] = handle;
+        this.usedIds.set(id);
+        this.types.put(type, handle);
+        this.byId = next;
+        return handle;
     }
 
     /**
      * Unregister a type of event.
      */
-    public void unregister(@NotNull String type) {
-        this.scopes.remove(type);
+    public synchronized void unregister(@NotNull String type) {
+        EventType handle = this.types.remove(type);
+        if (handle == null) return;
+        EventType[] next = this.byId.clone();
+        next[handle.getId()] = null;
+        this.usedIds.clear(handle.getId());
+        this.byId = next;
+    }
+
+    /**
+     * Return the handle of a registered event type.
+     */
+    public @NotNull EventType typeOf(@NotNull String type) throws NoSuchElementException {
+        EventType handle = this.find(type);
+        if (handle == null) throw new NoSuchElementException("Type '" + type + "' is not registered");
+        return handle;
+    }
+
+    /**
+     * Return the handle of an event type, or null if it is not registered.
+     */
+    public @Nullable EventType find(@NotNull String type) {
+        return this.types.get(type);
     }
 
     /**
      * Return the scope of a registered event type.
      */
     public Scope scopeOf(@NotNull String type) throws NoSuchElementException {
-        Scope s = this.scopes.get(type);
-        if (s == null) throw new NoSuchElementException("Type '" + type + "' is not registered");
-        return s;
+        return this.typeOf(type).getScope();
     }
 
     /**
      * Return whether an event type is registered.
      */
     public boolean isRegistered(@NotNull String type) {
-        return this.scopes.containsKey(type);
+        return this.types.containsKey(type);
+    }
+
+    /**
+     * Return whether an event type handle is still registered. This does not hash the type name.
+     */
+    public boolean isRegistered(@NotNull EventType type) {
+        EventType[] byId = this.byId;
+        int id = type.getId();
+        return id < byId.length && byId[id] == type;
     }
 
 }
@@ -1,30 +1,62 @@
 package com.kylontech.experiment.events;
 
+import com.lmax.disruptor.EventTranslator;
+import com.lmax.disruptor.EventTranslatorOneArg;
+import com.lmax.disruptor.EventTranslatorTwoArg;
+import com.lmax.disruptor.InsufficientCapacityException;
 import com.lmax.disruptor.RingBuffer;
-import com.lmax.disruptor.YieldingWaitStrategy;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import javax.management.ObjectName;
+import java.lang.foreign.MemorySegment;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.LockSupport;
 
 /**
  * A router is an event bus for subscribers to attach to and receive relevant events.
  */
-public class EventRouter implements AutoCloseable {
+public class EventRouter implements AutoCloseable, EventRouterMXBean {
 
+    /**
+     * Default number of ring buffer slots.
+     */
     public static final int BUFFER_SIZE = 1024 * 16;
 
     /**
-     * Thread pool for dispatching events to subscribers.
+     * Default number of slots of the pending request table.
      */
-    private final ExecutorService DISPATCH_POOL =
-            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    public static final int MAX_PENDING_REQUESTS = 4096;
+
+    private static final AtomicLongFieldUpdater<EventRouter> DISPATCHED_CONTROLS =
+            AtomicLongFieldUpdater.newUpdater(EventRouter.class, "dispatchedControls");
+
+    /**
+     * Publishes events for {@link #publishAsync} when the ring buffer is full, one virtual thread per
+     * event.
+     */
+    private static final Executor ASYNC_PUBLISHER =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("AsyncPublisher #", 0).factory());
+
+    /**
+     * Bounds of the exponential backoff of publishers waiting for room in the ring buffer.
+     */
+    private static final long MIN_BACKOFF_NANOS = 1_000L;
+    private static final long MAX_BACKOFF_NANOS = 1_000_000L;
 
     /**
      * Scope of this router.
@@ -37,31 +69,152 @@ public class EventRouter implements AutoCloseable {
     private final @NotNull EventRegistry registry;
 
     /**
-     * This maps each event types to its subscribers.
+     * Subscribers of each event type, indexed by event type id. Copied on write under this
+     * router's lock.
+     */
+    private volatile @NotNull SubscriberList[] subscribers;
+
+    /**
+     * Pattern subscriptions, guarded by this router.
+     */
+    private final @NotNull TopicTrie patterns = new TopicTrie();
+
+    /**
+     * Number of delivery arrays holding each subscriber, guarded by this router.
      */
-    private final @NotNull ConcurrentHashMap<@NotNull String, @NotNull SubscriberList> subscribers;
+    private final @NotNull Map<@NotNull Subscriber, @NotNull Integer> deliveries = new IdentityHashMap<>();
+
+    /**
+     * Subscribers removed from every delivery array, guarded by this router. Their mailbox may still
+     * hold events of this router until a barrier published after their removal is dispatched.
+     */
+    private final @NotNull List<@NotNull Retired> retired = new ArrayList<>();
+
+    /**
+     * Subscribers barriers are dispatched to, those of the delivery arrays and the retired ones, each
+     * once. Copied on write under this router's lock.
+     */
+    private volatile @NotNull Subscriber @NotNull [] barrierTargets = SubscriberList.EMPTY;
+
+    /**
+     * Sequence of the last dispatched barrier, only written by the dispatcher thread.
+     */
+    private volatile long lastBarrier = -1L;
+
+    /**
+     * Snapshots of dispatched events, only acquired by the dispatcher thread.
+     */
+    private final @NotNull EventPool snapshots = new EventPool();
+
+    /**
+     * Off-heap payload blocks, see {@link #allocatePayload(Event, long)}.
+     */
+    private final @NotNull PayloadSlab payloads = new PayloadSlab();
 
     private final @NotNull Disruptor<@NotNull Event> disruptor;
     private final @NotNull RingBuffer<@NotNull Event> ringBuffer;
 
+    /**
+     * Publishes found the ring buffer full and gave up, or waited for it to have room.
+     */
+    private final @NotNull LongAdder rejectedPublishes = new LongAdder();
+    private final @NotNull LongAdder delayedPublishes = new LongAdder();
+
+    /**
+     * Control slots, barriers and catch-up handovers, published and dispatched. They take ring buffer
+     * slots but are not events.
+     */
+    private final @NotNull LongAdder publishedControls = new LongAdder();
+    private volatile long dispatchedControls = 0L;
+
+    /**
+     * Bridges to routers outside the process, see {@link Bridge}. Copied on write under this
+     * router's lock.
+     */
+    private volatile @NotNull Bridge @NotNull [] bridges = new Bridge[0];
+
+    /**
+     * Whether the ring buffer only supports publishing from a single thread, see {@link
+     * #checkMultiProducer(String)}.
+     */
+    private final boolean singleProducer;
+
+    /**
+     * Whether dispatched events are counted per event type.
+     */
+    private final boolean metrics;
+
+    /**
+     * Whether events are stamped at publish and dispatch to track latencies.
+     */
+    private final boolean latency;
+    private final @Nullable ObjectName objectName;
+
+    /**
+     * Requests waiting for a reply, possibly shared with other routers.
+     */
+    private final @NotNull PendingRequests requests;
+
+    /**
+     * Journal of published events, appended to by a stage running before dispatch.
+     */
+    private final @Nullable EventJournal journal;
+
+    /**
+     * Whether the router is shutting down, checked by asynchronous publishes waiting for room.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Create a router with the {@link EventRouterBuilder.Profile#BALANCED} profile.
+     */
     public EventRouter(@NotNull Scope scope) {
-        this.scope = scope;
+        this(builder(scope), new PendingRequests(MAX_PENDING_REQUESTS), -1);
+    }
+
+    /**
+     * @param shard index of the router in a sharded router, -1 for a router on its own
+     */
+    EventRouter(@NotNull EventRouterBuilder builder, @NotNull PendingRequests requests, int shard) {
+        this.scope = builder.scope();
+        this.requests = requests;
         this.registry = new EventRegistry();
-        this.subscribers = new ConcurrentHashMap<>();
+        this.subscribers = new SubscriberList[0];
 
         ThreadFactory dispatcherFactory = new EventDispatcherFactory();
         this.disruptor =
                 new Disruptor<>(
                         Event::new,
-                        BUFFER_SIZE,
+                        builder.bufferSize(),
                         dispatcherFactory,
-                        ProducerType.MULTI,
-                        new YieldingWaitStrategy());
-        this.disruptor.handleEventsWith(this::dispatch);
+                        builder.producerType(),
+                        builder.newWaitStrategy());
+        this.journal = builder.openJournal(shard);
+        if (this.journal != null) this.disruptor.handleEventsWith(this.journal::append).then(this::dispatch);
+        else this.disruptor.handleEventsWith(this::dispatch);
         this.ringBuffer = this.disruptor.getRingBuffer();
+        this.singleProducer = builder.producerType() == ProducerType.SINGLE;
+        this.metrics = builder.metrics();
+        this.latency = builder.latency();
         this.registerDefaultEventTypes();
 
         this.disruptor.start();
+        String jmxName = builder.jmxName(shard);
+        try {
+            this.objectName =
+                    jmxName != null ? Jmx.register(this, EventRouterMXBean.class, "EventRouter", jmxName) : null;
+        } catch (IllegalStateException ex) {
+            this.disruptor.halt();
+            if (this.journal != null) this.journal.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Return a builder of routers with the given scope.
+     */
+    public static @NotNull EventRouterBuilder builder(@NotNull Scope scope) {
+        return new EventRouterBuilder(scope);
     }
 
     /**
@@ -70,15 +223,58 @@ public class EventRouter implements AutoCloseable {
      * @param type  event type
      * @param scope event scope
      * @param sub   event creator, must have enough scope to create this event
+     * @return the handle of the new event type
      */
-    public void registerEventType(@NotNull String type, @NotNull Scope scope, @NotNull Subscriber sub)
+    public @NotNull EventType registerEventType(
+            @NotNull String type, @NotNull Scope scope, @NotNull Subscriber sub)
             throws IllegalStateException, IllegalAccessError {
         if (this.scope.compareTo(scope) < 0)
             throw new IllegalAccessError("Invalid scope for this router");
         if (sub.scope().compareTo(scope) < 0)
             throw new IllegalAccessError("Insufficient scope to register this event");
-        this.registry.register(type, scope);
-        this.subscribers.put(type, new SubscriberList());
+        return this.register(type, scope, null);
+    }
+
+    /**
+     * Register an event type and allocate its subscriber list.
+     *
+     * @param wildcard scope of the events delivered to subscribers of this type if it is a wildcard
+     *                 channel, null otherwise
+     */
+    private synchronized @NotNull EventType register(
+            @NotNull String type, @NotNull Scope scope, @Nullable Scope wildcard)
+            throws IllegalStateException {
+        EventType handle = this.registry.register(type, scope);
+        int id = handle.getId();
+        SubscriberList[] next =
+                Arrays.copyOf(this.subscribers, Math.max(this.subscribers.length, id + 1));
+        SubscriberList holder = new SubscriberList(handle, wildcard, this.latency);
+        next[id] = holder;
+        this.subscribers = next;
+        this.updateDelivery(holder);
+        return handle;
+    }
+
+    /**
+     * Return the handle of a registered event type.
+     */
+    public @NotNull EventType getEventType(@NotNull String type) throws NoSuchElementException {
+        return this.registry.typeOf(type);
+    }
+
+    /**
+     * Return whether an event type is one of the default wildcard channels.
+     */
+    boolean isChannel(@NotNull String type) {
+        EventType handle;
+        try {
+            handle = this.registry.typeOf(type);
+        } catch (NoSuchElementException _) {
+            return false;
+        }
+        SubscriberList[] subscribers = this.subscribers;
+        int id = handle.getId();
+        return id < subscribers.length && subscribers[id] != null && subscribers[id].wildcard != null;
     }
 
     /**
@@ -89,13 +285,26 @@ public class EventRouter implements AutoCloseable {
      */
     public void unregisterEventType(@NotNull String type, @NotNull Subscriber sub)
             throws NoSuchElementException, IllegalAccessError {
-        if (sub.scope().compareTo(this.registry.scopeOf(type)) < 0)
+        this.unregisterEventType(this.registry.typeOf(type), sub);
+    }
+
+    /**
+     * Unregister an event type. The event type is not unregistered if there is still subscribers.
+     *
+     * @param type event type
+     * @param sub  event creator or subscriber, must have enough scope to remove this event
+     */
+    public synchronized void unregisterEventType(@NotNull EventType type, @NotNull Subscriber sub)
+            throws NoSuchElementException, IllegalAccessError {
+        if (sub.scope().compareTo(type.getScope()) < 0)
             throw new IllegalAccessError("Insufficient scope to unregister this event");
-        var holder = this.subscribers.get(type);
-        var list = holder.list;
-        if (list.isEmpty()) {
-            this.registry.unregister(type);
-            this.subscribers.remove(type);
+        var holder = this.holderOf(type);
+        if (holder.subs.length == 0) {
+            this.setDelivery(holder, SubscriberList.EMPTY);
+            this.registry.unregister(type.getName());
+            SubscriberList[] next = this.subscribers.clone();
+            next[type.getId()] = null;
+            this.subscribers = next;
         }
     }
 
@@ -107,13 +316,90 @@ public class EventRouter implements AutoCloseable {
      */
     public void subscribe(@NotNull String type, @NotNull Subscriber sub)
             throws NoSuchElementException, IllegalAccessError {
-        if (sub.scope().compareTo(this.registry.scopeOf(type)) < 0)
+        this.subscribe(this.registry.typeOf(type), sub);
+    }
+
+    /**
+     * Subscribe to an event type.
+     *
+     * @param type event type
+     * @param sub  event subscriber, must have enough scope to subscribe to this event
+     */
+    public synchronized void subscribe(@NotNull EventType type, @NotNull Subscriber sub)
+            throws NoSuchElementException, IllegalAccessError {
+        if (sub.scope().compareTo(type.getScope()) < 0)
+            throw new IllegalAccessError("Insufficient scope to subscribe to this event type");
+        SubscriberList holder = this.holderOf(type);
+        Subscriber[] subs = Arrays.copyOf(holder.subs, holder.subs.length + 1);
+        subs[subs.length - 1] = sub;
+        holder.subs = subs;
+        this.updateDelivery(holder);
+    }
+
+    /**
+     * Subscribe to an event type, first replaying its journaled events from a sequence, see {@link
+     * Event#getSequence()}. Replayed events are read from the journal by a catch-up thread, which
+     * pauses while the subscriber is behind, and the subscriber then joins live dispatch without
+     * missing or receiving twice any event. Replayed events have the handle of their type if it is
+     * still registered, and view their payload in the journal.
+     *
+     * @param type         event type
+     * @param sub          event subscriber, must have enough scope to subscribe to this event
+     * @param fromSequence sequence of the first replayed event, older events of the journal are
+     *                     replayed if it is lower than the journal's first sequence
+     * @return a future completed once the subscriber receives live events
+     * @throws IllegalStateException if events are not journaled or the router is single producer,
+     *                               since the catch-up thread publishes the handover
+     */
+    public @NotNull CompletableFuture<Void> subscribe(
+            @NotNull String type, @NotNull Subscriber sub, long fromSequence)
+            throws NoSuchElementException, IllegalAccessError, IllegalStateException {
+        this.checkMultiProducer("Catch-up subscriptions");
+        EventJournal journal = this.journal;
+        if (journal == null) throw new IllegalStateException("Events are not journaled");
+        EventType handle = this.registry.typeOf(type);
+        if (sub.scope().compareTo(handle.getScope()) < 0)
             throw new IllegalAccessError("Insufficient scope to subscribe to this event type");
-        SubscriberList holder = this.subscribers.get(type);
-        var oldList = holder.list;
-        var newList = new ArrayList<>(oldList);
-        newList.add(sub);
-        holder.list = List.copyOf(newList);
+        SubscriberList holder = this.holderOf(handle);
+        CatchUp catchUp =
+                new CatchUp(handle, holder.wildcard, sub, journal.read(fromSequence), this.registry);
+        Thread.ofVirtual().name("CatchUp " + type).start(() -> this.catchUp(catchUp));
+        return catchUp.future;
+    }
+
+    /**
+     * Replay journaled events until caught up, then publish the handover slot. Runs on the catch-up
+     * thread.
+     */
+    private void catchUp(@NotNull CatchUp catchUp) {
+        try {
+            catchUp.replay();
+        } catch (RuntimeException ex) {
+            catchUp.future.completeExceptionally(ex);
+            return;
+        }
+        long sequence = this.claim();
+        Event bufferedEvent = this.ringBuffer.get(sequence);
+        bufferedEvent.reset();
+        bufferedEvent.catchUp = catchUp;
+        this.publishedControls.increment();
+        this.ringBuffer.publish(sequence);
+    }
+
+    /**
+     * Replay the events journaled before the handover slot and subscribe the subscriber, on the
+     * dispatcher thread.
+     *
+     * @param end sequence of the first event journaled after the handover slot
+     */
+    private void handOver(@NotNull CatchUp catchUp, long end) {
+        try {
+            catchUp.replay(this.snapshots, end);
+            this.subscribe(catchUp.type, catchUp.sub);
+            catchUp.future.complete(null);
+        } catch (RuntimeException ex) {
+            catchUp.future.completeExceptionally(ex);
+        }
     }
 
     /**
@@ -124,89 +410,908 @@ public class EventRouter implements AutoCloseable {
      */
     public void unsubscribe(@NotNull String type, @NotNull Subscriber sub)
             throws NoSuchElementException {
-        if (sub.scope().compareTo(this.registry.scopeOf(type)) < 0)
+        this.unsubscribe(this.registry.typeOf(type), sub);
+    }
+
+    /**
+     * Unsubscribe to an event type.
+     *
+     * @param type event type
+     * @param sub  event subscriber
+     */
+    public synchronized void unsubscribe(@NotNull EventType type, @NotNull Subscriber sub)
+            throws NoSuchElementException {
+        if (sub.scope().compareTo(type.getScope()) < 0)
             throw new IllegalAccessError("Insufficient scope to unsubscribe to this event type");
-        SubscriberList holder = this.subscribers.get(type);
-        var oldList = holder.list;
-        var newList = new ArrayList<>(oldList);
-        newList.remove(sub);
-        holder.list = List.copyOf(newList);
+        SubscriberList holder = this.holderOf(type);
+        Subscriber[] subs = holder.subs;
+        for (int i = 0; i < subs.length; i++) {
+            if (subs[i] == sub) {
+                Subscriber[] next = new Subscriber[subs.length - 1];
+                System.arraycopy(subs, 0, next, 0, i);
+                System.arraycopy(subs, i + 1, next, i, subs.length - i - 1);
+                holder.subs = next;
+                this.updateDelivery(holder);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Subscribe to every event type matching a hierarchical pattern, including types registered
+     * later. Types are dot-separated segments, in a pattern {@code *} matches exactly one segment and
+     * {@code >}, only allowed as last segment, matches one or more trailing segments. For instance,
+     * {@code orders.*.created} matches {@code orders.eu.created} and {@code orders.>} matches every
+     * type starting with {@code orders.}. The subscriber only receives events of the matching types
+     * its scope gives access to.
+     *
+     * @param pattern event type pattern
+     * @param sub     event subscriber
+     */
+    public synchronized void subscribePattern(@NotNull String pattern, @NotNull Subscriber sub)
+            throws IllegalArgumentException {
+        this.patterns.add(pattern, sub);
+        this.updateAllDeliveries();
+    }
+
+    /**
+     * Unsubscribe to a hierarchical pattern.
+     *
+     * @param pattern event type pattern
+     * @param sub     event subscriber
+     */
+    public synchronized void unsubscribePattern(@NotNull String pattern, @NotNull Subscriber sub)
+            throws IllegalArgumentException {
+        if (this.patterns.remove(pattern, sub)) this.updateAllDeliveries();
+    }
+
+    /**
+     * Recompute delivery arrays after the subscribers of an event type changed. A wildcard channel
+     * change affects every other event type.
+     */
+    private void updateDelivery(@NotNull SubscriberList holder) {
+        if (holder.wildcard == null) {
+            this.setDelivery(holder, this.computeDelivery(holder));
+            return;
+        }
+        this.setDelivery(holder, holder.subs);
+        this.updateAllDeliveries();
+    }
+
+    /**
+     * Recompute the delivery arrays of every event type that is not a wildcard channel.
+     */
+    private void updateAllDeliveries() {
+        for (SubscriberList h : this.subscribers) {
+            if (h != null && h.wildcard == null) this.setDelivery(h, this.computeDelivery(h));
+        }
+    }
+
+    /**
+     * Replace the delivery array of an event type and update the barrier targets if a subscriber
+     * joined or left every delivery array. A subscriber leaving is retired with the ring buffer
+     * cursor: the events delivered to it were all published at or before this sequence.
+     */
+    private void setDelivery(@NotNull SubscriberList holder, @NotNull Subscriber @NotNull [] delivery) {
+        Subscriber[] previous = holder.delivery;
+        holder.delivery = delivery;
+        boolean changed = false;
+        for (Subscriber sub : delivery) changed |= this.deliveries.merge(sub, 1, Integer::sum) == 1;
+        for (Subscriber sub : previous) {
+            if (this.deliveries.merge(sub, -1, Integer::sum) > 0) continue;
+            this.deliveries.remove(sub);
+            this.retired.add(new Retired(sub, this.ringBuffer.getCursor()));
+            changed = true;
+        }
+        if (changed) this.updateBarrierTargets();
     }
 
     /**
-     * Publish an event in the event bus.
+     * Recompute the barrier targets, dropping the retired subscribers a dispatched barrier already
+     * reached.
+     */
+    private void updateBarrierTargets() {
+        long lastBarrier = this.lastBarrier;
+        this.retired.removeIf(r -> r.sequence < lastBarrier);
+        List<Subscriber> targets = new ArrayList<>(this.deliveries.keySet());
+        Set<Subscriber> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Retired r : this.retired) {
+            if (!this.deliveries.containsKey(r.sub) && seen.add(r.sub)) targets.add(r.sub);
+        }
+        this.barrierTargets = targets.toArray(SubscriberList.EMPTY);
+    }
+
+    /**
+     * Merge the direct subscribers of an event type with the subscribers of the wildcard channels
+     * covering its scope and of the patterns matching its name. Subscribers appear once.
+     */
+    private @NotNull Subscriber[] computeDelivery(@NotNull SubscriberList holder) {
+        Scope scope = holder.type.getScope();
+        List<Subscriber> delivery = new ArrayList<>(Arrays.asList(holder.subs));
+        Set<Subscriber> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Collections.addAll(seen, holder.subs);
+        for (SubscriberList h : this.subscribers) {
+            if (h == null || h.wildcard == null || h.wildcard.compareTo(scope) < 0) continue;
+            for (Subscriber sub : h.subs) if (seen.add(sub)) delivery.add(sub);
+        }
+        if (!this.patterns.isEmpty()) {
+            List<Subscriber> matches = new ArrayList<>();
+            this.patterns.match(holder.type.getName(), matches);
+            for (Subscriber sub : matches) {
+                if (sub.scope().compareTo(scope) >= 0 && seen.add(sub)) delivery.add(sub);
+            }
+        }
+        return delivery.toArray(SubscriberList.EMPTY);
+    }
+
+    /**
+     * Publish an event in the event bus. Events whose type was set from a handle skip the type name
+     * lookup.
      */
     public void publish(@NotNull Event e) throws IllegalAccessError, NoSuchElementException {
-        String type = e.getType();
-        if (!this.registry.isRegistered(type))
-            throw new NoSuchElementException("Even type '" + type + "' is not registered");
-        long sequence = this.ringBuffer.next();
-        try {
-            Event bufferedEvent = ringBuffer.get(sequence);
-            bufferedEvent.setType(e.getType());
-            bufferedEvent.setFrom(e.getFrom());
-            bufferedEvent.setPayload(e.getPayload());
-            bufferedEvent.setTimestamp(e.getTimestamp());
+        EventType type = this.resolve(e);
+        this.publish(this.claim(), type, e);
+    }
+
+    /**
+     * Publish an event if the ring buffer has room for it, without waiting.
+     *
+     * @return whether the event was published
+     */
+    public boolean tryPublish(@NotNull Event e) throws IllegalAccessError, NoSuchElementException {
+        EventType type = this.resolve(e);
+        long sequence;
+        try {
+            sequence = this.ringBuffer.tryNext();
+        } catch (InsufficientCapacityException _) {
+            this.rejectedPublishes.increment();
+            return false;
+        }
+        this.publish(sequence, type, e);
+        return true;
+    }
+
+    /**
+     * Publish an event if the ring buffer has room for it, like {@link #tryPublish(Event)} but
+     * without counting a rejected publish otherwise. Used by bridges, which retry.
+     */
+    boolean offer(@NotNull Event e) throws NoSuchElementException {
+        EventType type = this.resolve(e);
+        long sequence;
+        try {
+            sequence = this.ringBuffer.tryNext();
+        } catch (InsufficientCapacityException _) {
+            return false;
+        }
+        this.publish(sequence, type, e);
+        return true;
+    }
+
+    /**
+     * Publish an event, waiting at most the given time for the ring buffer to have room for it.
+     *
+     * @return whether the event was published
+     */
+    public boolean publish(@NotNull Event e, long timeout, @NotNull TimeUnit unit)
+            throws IllegalAccessError, NoSuchElementException {
+        EventType type = this.resolve(e);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long backoff = MIN_BACKOFF_NANOS;
+        boolean delayed = false;
+        while (true) {
+            try {
+                long sequence = this.ringBuffer.tryNext();
+                if (delayed) this.delayedPublishes.increment();
+                this.publish(sequence, type, e);
+                return true;
+            } catch (InsufficientCapacityException _) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    this.rejectedPublishes.increment();
+                    return false;
+                }
+                delayed = true;
+                LockSupport.parkNanos(Math.min(backoff, remaining));
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Give an event an off-heap payload of the given size, taken from this router's slab, and return
+     * it to be written by the caller. Publishing the event hands the payload over to the router,
+     * which recycles it once every subscriber has processed the event, so the caller must not keep
+     * it. Subscribers read it without copy through {@link Event#getPayloadSegment()}. A payload that
+     * is never published is not recycled.
+     *
+     * @param size payload size, at most 16MB
+     */
+    public @NotNull MemorySegment allocatePayload(@NotNull Event e, long size)
+            throws IllegalArgumentException {
+        return e.setPayload(this.payloads.allocate(size), size);
+    }
+
+    /**
+     * Publish an event without ever blocking the caller. The event is published right away if the
+     * ring buffer has room for it, otherwise a copy of it is published from a virtual thread, which
+     * parks with an exponential backoff until there is room. Events published asynchronously may be
+     * published after events published later by the same thread.
+     *
+     * @return a future completed once the event is published, or failed with an {@link
+     *         IllegalStateException} if the router closes first
+     * @throws IllegalStateException if the router is single producer, since the virtual thread would
+     *                               publish concurrently with the caller
+     */
+    public @NotNull CompletableFuture<Void> publishAsync(@NotNull Event e)
+            throws IllegalAccessError, NoSuchElementException, IllegalStateException {
+        this.checkMultiProducer("Asynchronous publishes");
+        EventType type = this.resolve(e);
+        if (this.closed) return CompletableFuture.failedFuture(new IllegalStateException("Router closed"));
+        try {
+            this.publish(this.ringBuffer.tryNext(), type, e);
+            return CompletableFuture.completedFuture(null);
+        } catch (InsufficientCapacityException _) {
+            this.delayedPublishes.increment();
+        }
+        Event copy = new Event();
+        copy.copyFrom(e);
+        copy.movePayload(e);
+        copy.origin = e.origin;
+        return CompletableFuture.runAsync(() -> this.publishWhenRoom(type, copy), ASYNC_PUBLISHER);
+    }
+
+    /**
+     * Publish an event once the ring buffer has room for it, backing off exponentially while it is
+     * full.
+     *
+     * @throws IllegalStateException if the router closes first, since its ring buffer may never have
+     *                               room again
+     */
+    private void publishWhenRoom(@NotNull EventType type, @NotNull Event e) throws IllegalStateException {
+        long backoff = MIN_BACKOFF_NANOS;
+        while (!this.closed) {
+            try {
+                this.publish(this.ringBuffer.tryNext(), type, e);
+                return;
+            } catch (InsufficientCapacityException _) {
+                LockSupport.parkNanos(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+            }
+        }
+        throw new IllegalStateException("Router closed");
+    }
+
+    /**
+     * Publish an event and return a future completed once it has been processed, or dropped, by all
+     * its subscribers. The future completes on the thread of the last subscriber, so dependent
+     * actions should be asynchronous.
+     */
+    public @NotNull CompletableFuture<Void> publishAcked(@NotNull Event e)
+            throws IllegalAccessError, NoSuchElementException {
+        EventType type = this.resolve(e);
+        CompletableFuture<Void> ack = new CompletableFuture<>();
+        this.publish(this.claim(), type, e, ack);
+        return ack;
+    }
+
+    /**
+     * Publish a request and return a future completed with a copy of the first reply to it, see
+     * {@link #reply(Event, Event)}. The future fails with a {@link TimeoutException} if no reply is
+     * dispatched within the timeout, or with an {@link IllegalStateException} if there are too many
+     * pending requests or the router closes first. It completes on the dispatcher thread, so dependent
+     * actions should be asynchronous.
+     */
+    public @NotNull CompletableFuture<@NotNull Event> request(
+            @NotNull Event e, long timeout, @NotNull TimeUnit unit)
+            throws IllegalAccessError, NoSuchElementException {
+        EventType type = this.resolve(e);
+        PendingRequests.Request request = this.requests.register(timeout, unit);
+        if (request == null)
+            return CompletableFuture.failedFuture(new IllegalStateException("Too many pending requests"));
+        long sequence = this.claim();
+        try {
+            Event bufferedEvent = this.fill(this.ringBuffer.get(sequence), type, e);
+            bufferedEvent.setCorrelationId(request.id);
+            bufferedEvent.setReply(false);
         } finally {
             this.ringBuffer.publish(sequence);
         }
+        return request.future;
+    }
+
+    /**
+     * Publish a reply to a request received by a subscriber. Replies are delivered to the subscribers
+     * of their type like any other event.
+     */
+    public void reply(@NotNull Event request, @NotNull Event reply)
+            throws IllegalAccessError, NoSuchElementException {
+        reply.setReplyTo(request);
+        this.publish(reply);
+    }
+
+    /**
+     * Claim the next ring buffer slot, waiting for room if needed.
+     */
+    private long claim() {
+        try {
+            return this.ringBuffer.tryNext();
+        } catch (InsufficientCapacityException _) {
+            this.delayedPublishes.increment();
+            return this.ringBuffer.next();
+        }
+    }
+
+    /**
+     * Claim the next ring buffer slots, waiting for room if needed.
+     *
+     * @return the sequence of the last claimed slot
+     */
+    private long claim(int n) {
+        try {
+            return this.ringBuffer.tryNext(n);
+        } catch (InsufficientCapacityException _) {
+            this.delayedPublishes.increment();
+            return this.ringBuffer.next(n);
+        }
+    }
+
+    /**
+     * Copy an event in a claimed slot and publish it.
+     */
+    private void publish(long sequence, @NotNull EventType type, @NotNull Event e) {
+        this.publish(sequence, type, e, null);
+    }
+
+    private void publish(
+            long sequence, @NotNull EventType type, @NotNull Event e, @Nullable CompletableFuture<Void> ack) {
+        try {
+            this.fill(this.ringBuffer.get(sequence), type, e).ack = ack;
+        } finally {
+            this.ringBuffer.publish(sequence);
+        }
+    }
+
+    private @NotNull Event fill(@NotNull Event bufferedEvent, @NotNull EventType type, @NotNull Event e) {
+        bufferedEvent.setType(type);
+        bufferedEvent.setFrom(e.getFrom());
+        bufferedEvent.takePayload(e);
+        bufferedEvent.setTimestamp(e.getTimestamp());
+        bufferedEvent.setPartitionKey(e.getPartitionKey());
+        bufferedEvent.setCorrelationId(e.getCorrelationId());
+        bufferedEvent.setReply(e.isReply());
+        bufferedEvent.origin = e.origin;
+        bufferedEvent.setPublishNanos(this.stamp());
+        return bufferedEvent;
+    }
+
+    /**
+     * Throw if the router is single producer, for features publishing from threads of their own:
+     * concurrent claims silently corrupt a single producer ring buffer.
+     */
+    void checkMultiProducer(@NotNull String feature) throws IllegalStateException {
+        if (this.singleProducer)
+            throw new IllegalStateException(feature + " need a router built with ProducerType.MULTI");
+    }
+
+    /**
+     * Start handing dispatched events to a bridge.
+     */
+    synchronized void attach(@NotNull Bridge bridge) {
+        Bridge[] next = Arrays.copyOf(this.bridges, this.bridges.length + 1);
+        next[next.length - 1] = bridge;
+        this.bridges = next;
     }
 
     /**
-     * Dispatch an event to all its subscribers.
+     * Stop handing dispatched events to a bridge. Events being dispatched may still be handed to it.
+     */
+    synchronized void detach(@NotNull Bridge bridge) {
+        this.bridges = Arrays.stream(this.bridges).filter(b -> b != bridge).toArray(Bridge[]::new);
+    }
+
+    /**
+     * Return the journal of published events, null if events are not journaled.
+     */
+    public @Nullable EventJournal getJournal() {
+        return this.journal;
+    }
+
+    @Override
+    public long getPublishedEvents() {
+        return this.ringBuffer.getCursor() + 1 - this.publishedControls.sum();
+    }
+
+    @Override
+    public long getDispatchedEvents() {
+        return this.ringBuffer.getMinimumGatingSequence() + 1 - this.dispatchedControls;
+    }
+
+    @Override
+    public long getRingOccupancy() {
+        return Math.max(this.ringBuffer.getCursor() - this.ringBuffer.getMinimumGatingSequence(), 0);
+    }
+
+    @Override
+    public int getBufferSize() {
+        return this.ringBuffer.getBufferSize();
+    }
+
+    /**
+     * Return the number of dispatched events of each registered event type, including wildcard
+     * channels. This is empty unless the router was built with metrics enabled.
+     */
+    @Override
+    public @NotNull Map<@NotNull String, @NotNull Long> getDispatchCounts() {
+        if (!this.metrics) return Map.of();
+        Map<String, Long> counts = new TreeMap<>();
+        for (SubscriberList holder : this.subscribers) {
+            if (holder != null && this.registry.isRegistered(holder.type))
+                counts.put(holder.type.getName(), holder.dispatched);
+        }
+        return counts;
+    }
+
+    /**
+     * Return the histogram of latencies from publish to dispatch of an event type, which is the time
+     * spent waiting in the ring buffer.
+     */
+    public @NotNull LatencyHistogram getDispatchLatency(@NotNull String type)
+            throws NoSuchElementException, IllegalStateException {
+        LatencyHistogram histogram = this.holderOf(this.registry.typeOf(type)).dispatchLatency;
+        if (histogram == null) throw new IllegalStateException("Latency tracking is disabled");
+        return histogram;
+    }
+
+    /**
+     * Return the histogram of latencies from publish to the end of processing by a subscriber of an
+     * event type. Each subscriber adds a latency per event, see {@link
+     * Subscriber#getEndToEndLatency()} for the latencies of a single subscriber.
+     */
+    public @NotNull LatencyHistogram getEndToEndLatency(@NotNull String type)
+            throws NoSuchElementException, IllegalStateException {
+        LatencyHistogram histogram = this.holderOf(this.registry.typeOf(type)).endToEndLatency;
+        if (histogram == null) throw new IllegalStateException("Latency tracking is disabled");
+        return histogram;
+    }
+
+    /**
+     * Return the current {@link System#nanoTime()} if latencies are tracked, 0 otherwise.
+     */
+    private long stamp() {
+        return this.latency ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Return the number of publishes that gave up because the ring buffer was full.
+     */
+    @Override
+    public long getRejectedPublishes() {
+        return this.rejectedPublishes.sum();
+    }
+
+    /**
+     * Return the number of publishes that had to wait for the ring buffer to have room.
+     */
+    @Override
+    public long getDelayedPublishes() {
+        return this.delayedPublishes.sum();
+    }
+
+    /**
+     * Publish an event by filling a ring buffer slot in place, which does not allocate. The slot
+     * is reset before being handed to the translator and its type is always set to the given
+     * event type. The slot must not be used after the translator returns.
+     *
+     * @param type       event type
+     * @param translator fills the slot, it is given the slot and its sequence
+     */
+    public void publish(@NotNull EventType type, @NotNull EventTranslator<@NotNull Event> translator)
+            throws NoSuchElementException {
+        this.checkRegistered(type);
+        long sequence = this.claim();
+        Event bufferedEvent = this.ringBuffer.get(sequence);
+        try {
+            bufferedEvent.reset();
+            translator.translateTo(bufferedEvent, sequence);
+            bufferedEvent.setType(type);
+            bufferedEvent.setPublishNanos(this.stamp());
+        } catch (RuntimeException | Error ex) {
+            bufferedEvent.reset();
+            throw ex;
+        } finally {
+            this.ringBuffer.publish(sequence);
+        }
+    }
+
+    /**
+     * Same as {@link #publish(EventType, EventTranslator)} with an argument passed to the
+     * translator. This lets producers use non-capturing translators, which do not allocate.
+     */
+    public <A> void publish(
+            @NotNull EventType type,
+            @NotNull EventTranslatorOneArg<@NotNull Event, A> translator,
+            A arg)
+            throws NoSuchElementException {
+        this.checkRegistered(type);
+        long sequence = this.claim();
+        Event bufferedEvent = this.ringBuffer.get(sequence);
+        try {
+            bufferedEvent.reset();
+            translator.translateTo(bufferedEvent, sequence, arg);
+            bufferedEvent.setType(type);
+            bufferedEvent.setPublishNanos(this.stamp());
+        } catch (RuntimeException | Error ex) {
+            bufferedEvent.reset();
+            throw ex;
+        } finally {
+            this.ringBuffer.publish(sequence);
+        }
+    }
+
+    /**
+     * Same as {@link #publish(EventType, EventTranslator)} with two arguments passed to the
+     * translator.
+     */
+    public <A, B> void publish(
+            @NotNull EventType type,
+            @NotNull EventTranslatorTwoArg<@NotNull Event, A, B> translator,
+            A arg0,
+            B arg1)
+            throws NoSuchElementException {
+        this.checkRegistered(type);
+        long sequence = this.claim();
+        Event bufferedEvent = this.ringBuffer.get(sequence);
+        try {
+            bufferedEvent.reset();
+            translator.translateTo(bufferedEvent, sequence, arg0, arg1);
+            bufferedEvent.setType(type);
+            bufferedEvent.setPublishNanos(this.stamp());
+        } catch (RuntimeException | Error ex) {
+            bufferedEvent.reset();
+            throw ex;
+        } finally {
+            this.ringBuffer.publish(sequence);
+        }
+    }
+
+    /**
+     * Publish several events at once. Ring buffer slots are claimed and published by ranges of up to
+     * the buffer size, instead of once per event. Nothing is published if an event type is not
+     * registered.
+     */
+    public void publishBatch(@NotNull Event @NotNull [] events)
+            throws IllegalAccessError, NoSuchElementException {
+        this.publishBatch(Arrays.asList(events));
+    }
+
+    /**
+     * Publish several events at once. Ring buffer slots are claimed and published by ranges of up to
+     * the buffer size, instead of once per event. Nothing is published if an event type is not
+     * registered.
+     */
+    public void publishBatch(@NotNull List<@NotNull Event> events)
+            throws IllegalAccessError, NoSuchElementException {
+        int size = events.size();
+        EventType[] types = new EventType[size];
+        for (int i = 0; i < size; i++) types[i] = this.resolve(events.get(i));
+        int batchSize = this.ringBuffer.getBufferSize();
+        for (int offset = 0; offset < size; offset += batchSize) {
+            int n = Math.min(batchSize, size - offset);
+            long hi = this.claim(n);
+            long lo = hi - (n - 1);
+            long now = this.stamp();
+            try {
+                for (int i = 0; i < n; i++) {
+                    Event e = events.get(offset + i);
+                    Event bufferedEvent = this.ringBuffer.get(lo + i);
+                    bufferedEvent.setType(types[offset + i]);
+                    bufferedEvent.setFrom(e.getFrom());
+                    bufferedEvent.takePayload(e);
+                    bufferedEvent.setTimestamp(e.getTimestamp());
+                    bufferedEvent.setPartitionKey(e.getPartitionKey());
+                    bufferedEvent.setCorrelationId(e.getCorrelationId());
+                    bufferedEvent.setReply(e.isReply());
+                    bufferedEvent.origin = e.origin;
+                    bufferedEvent.setPublishNanos(now);
+                }
+            } finally {
+                this.ringBuffer.publish(lo, hi);
+            }
+        }
+    }
+
+    /**
+     * Publish one event per argument by filling ring buffer slots in place, see {@link
+     * #publish(EventType, EventTranslatorOneArg, Object)}. Slots are claimed and published by ranges
+     * of up to the buffer size. If the translator throws, the remaining slots of the range are reset
+     * and skipped by dispatch.
+     */
+    public <A> void publishBatch(
+            @NotNull EventType type,
+            @NotNull EventTranslatorOneArg<@NotNull Event, A> translator,
+            A @NotNull [] args)
+            throws NoSuchElementException {
+        this.checkRegistered(type);
+        int batchSize = this.ringBuffer.getBufferSize();
+        for (int offset = 0; offset < args.length; offset += batchSize) {
+            int n = Math.min(batchSize, args.length - offset);
+            long hi = this.claim(n);
+            long lo = hi - (n - 1);
+            long now = this.stamp();
+            long sequence = lo;
+            try {
+                for (; sequence <= hi; sequence++) {
+                    Event bufferedEvent = this.ringBuffer.get(sequence);
+                    bufferedEvent.reset();
+                    translator.translateTo(bufferedEvent, sequence, args[offset + (int) (sequence - lo)]);
+                    bufferedEvent.setType(type);
+                    bufferedEvent.setPublishNanos(now);
+                }
+            } catch (RuntimeException | Error ex) {
+                for (; sequence <= hi; sequence++) this.ringBuffer.get(sequence).reset();
+                throw ex;
+            } finally {
+                this.ringBuffer.publish(lo, hi);
+            }
+        }
+    }
+
+    /**
+     * Throw if an event type handle is not registered anymore.
+     */
+    private void checkRegistered(@NotNull EventType type) throws NoSuchElementException {
+        if (!this.registry.isRegistered(type))
+            throw new NoSuchElementException("Event type '" + type.getName() + "' is not registered");
+    }
+
+    /**
+     * Return the registered handle of an event's type.
+     */
+    private @NotNull EventType resolve(@NotNull Event e) throws NoSuchElementException {
+        EventType type = e.getEventType();
+        if (type != null && this.registry.isRegistered(type)) return type;
+        String name = e.getType();
+        EventType handle = this.registry.find(name);
+        if (handle == null) throw new NoSuchElementException("Event type '" + name + "' is not registered");
+        return handle;
+    }
+
+    /**
+     * Return the subscribers of a registered event type.
+     */
+    private @NotNull SubscriberList holderOf(@NotNull EventType type) throws NoSuchElementException {
+        SubscriberList[] subscribers = this.subscribers;
+        int id = type.getId();
+        SubscriberList holder = id < subscribers.length ? subscribers[id] : null;
+        if (holder == null || holder.type != type)
+            throw new NoSuchElementException("Type '" + type.getName() + "' is not registered");
+        return holder;
+    }
+
+    /**
+     * Dispatch an event to all its subscribers. Enqueuing in a subscriber's mailbox is cheap, so
+     * subscribers are served directly from the dispatcher thread. Subscribers receive a pooled
+     * snapshot of the ring buffer slot, which may be overwritten before they process it.
      */
     private void dispatch(@NotNull Event e, long sequence, boolean endOfBatch) {
-        SubscriberList holder = this.subscribers.get(e.getType());
-        if (holder == null) return;
-        var subs = holder.list;
-        if (subs.isEmpty()) return;
-        if (subs.size() == 1) subs.getFirst().onEvent(e);
-        else {
-            for (Subscriber sub : subs) DISPATCH_POOL.submit(() -> sub.onEvent(e));
+        Bridge[] bridges = this.bridges;
+        if (bridges.length != 0) this.forward(bridges, e, endOfBatch);
+        Barrier barrier = e.barrier;
+        if (barrier != null) {
+            e.barrier = null;
+            DISPATCHED_CONTROLS.lazySet(this, this.dispatchedControls + 1);
+            this.dispatchBarrier(barrier, sequence);
+            return;
+        }
+        CatchUp catchUp = e.catchUp;
+        if (catchUp != null) {
+            e.catchUp = null;
+            DISPATCHED_CONTROLS.lazySet(this, this.dispatchedControls + 1);
+            this.handOver(catchUp, e.getSequence());
+            return;
+        }
+        if (e.isReply()) this.requests.complete(e);
+        CompletableFuture<Void> ack = e.ack;
+        if (ack != null) e.ack = null;
+        if (!this.deliver(e, ack)) {
+            e.releasePayload();
+            if (ack != null) ack.complete(null);
         }
     }
 
     /**
-     * Blocks until all published events have been dispatched and processed.
+     * Hand an event to the bridges its scope is visible to, except the one it came from, before it
+     * is delivered and its payload moved to the snapshot.
      */
-    public boolean awaitEmptyTimedOut(long timeout, @NotNull TimeUnit unit) {
-        long endTime = System.currentTimeMillis() + unit.toMillis(timeout);
-        while (System.currentTimeMillis() < endTime) {
-            long cursor = ringBuffer.getCursor();
-            long lastSequence = disruptor.getRingBuffer().getMinimumGatingSequence();
-            if (cursor == lastSequence) return false;
-            LockSupport.parkNanos(1_000_000);
+    private void forward(@NotNull Bridge @NotNull [] bridges, @NotNull Event e, boolean endOfBatch) {
+        EventType type = e.getEventType();
+        if (type != null && e.barrier == null && e.catchUp == null) {
+            for (Bridge bridge : bridges) {
+                if (bridge != e.origin && type.getScope().compareTo(bridge.scope) <= 0) bridge.forward(e);
+            }
+        }
+        if (endOfBatch) for (Bridge bridge : bridges) bridge.endOfBatch();
+    }
+
+    /**
+     * Deliver an event to its subscribers.
+     *
+     * @return whether the event was delivered to at least one subscriber
+     */
+    private boolean deliver(@NotNull Event e, @Nullable CompletableFuture<Void> ack) {
+        EventType type = e.getEventType();
+        if (type == null) return false;
+        SubscriberList[] subscribers = this.subscribers;
+        int id = type.getId();
+        if (id >= subscribers.length) return false;
+        SubscriberList holder = subscribers[id];
+        if (holder == null || holder.type != type) return false;
+        if (this.metrics) SubscriberList.DISPATCHED.lazySet(holder, holder.dispatched + 1);
+        long now = 0L;
+        if (holder.dispatchLatency != null) {
+            now = System.nanoTime();
+            holder.dispatchLatency.record(now - e.getPublishNanos());
         }
+        Subscriber[] subs = holder.delivery;
+        if (subs.length == 0) return false;
+        Event snapshot = this.snapshots.acquire();
+        snapshot.copyFrom(e);
+        snapshot.movePayload(e);
+        snapshot.ack = ack;
+        if (holder.endToEndLatency != null) {
+            snapshot.setDispatchNanos(now);
+            snapshot.endToEndLatency = holder.endToEndLatency;
+        }
+        snapshot.retain(subs.length);
+        for (Subscriber sub : subs) sub.onEvent(snapshot);
         return true;
     }
 
+    /**
+     * Enqueue a barrier marker in the mailboxes of all subscribers of this router, including those
+     * which unsubscribed with events still queued. Mailboxes are ordered, so the barrier completes
+     * once the events dispatched before it are processed.
+     */
+    private void dispatchBarrier(@NotNull Barrier barrier, long sequence) {
+        for (Subscriber sub : this.barrierTargets) sub.onBarrier(barrier);
+        this.lastBarrier = sequence;
+        barrier.arrive();
+    }
+
+    /**
+     * Return a future completed once every event published before this call has been processed, or
+     * dropped, by every subscriber it was delivered to. This waits for room in the ring buffer if it
+     * is full.
+     */
+    public @NotNull CompletableFuture<Void> flush() {
+        Barrier barrier = new Barrier();
+        this.publishBarrier(barrier, this.claim());
+        return barrier.future;
+    }
+
+    private void publishBarrier(@NotNull Barrier barrier, long sequence) {
+        Event bufferedEvent = this.ringBuffer.get(sequence);
+        bufferedEvent.reset();
+        bufferedEvent.barrier = barrier;
+        this.publishedControls.increment();
+        this.ringBuffer.publish(sequence);
+    }
+
+    /**
+     * Blocks until all published events have been dispatched and processed, see {@link #flush()}.
+     *
+     * @return whether it timed out
+     */
+    public boolean awaitEmptyTimedOut(long timeout, @NotNull TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Barrier barrier = new Barrier();
+        while (true) {
+            try {
+                this.publishBarrier(barrier, this.ringBuffer.tryNext());
+                break;
+            } catch (InsufficientCapacityException _) {
+                if (System.nanoTime() - deadline >= 0) return true;
+                LockSupport.parkNanos(1L);
+            }
+        }
+        try {
+            barrier.future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+            return false;
+        } catch (TimeoutException | ExecutionException _) {
+            return true;
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+
+    /**
+     * Shut the router down and fail the requests still waiting for a reply.
+     */
     @Override
     public void close() throws TimeoutException, InterruptedException {
+        this.shutdown();
+        this.requests.fail(new IllegalStateException("Router closed"));
+    }
+
+    /**
+     * Dispatch the published events and stop the dispatcher. Asynchronous publishes still waiting for
+     * room fail, pending requests are left to the caller since shards share them.
+     */
+    void shutdown() throws TimeoutException, InterruptedException {
+        this.closed = true;
+        if (this.objectName != null) Jmx.unregister(this.objectName);
         try {
             this.disruptor.shutdown(1, TimeUnit.MINUTES);
         } catch (com.lmax.disruptor.TimeoutException _) {
             throw new TimeoutException("disruptor shutdown timed out");
         }
-        DISPATCH_POOL.shutdown();
-        if (!DISPATCH_POOL.awaitTermination(1, TimeUnit.MINUTES))
-            throw new TimeoutException("dispatch pool termination timed out");
+        if (this.journal != null) this.journal.close();
     }
 
     /**
-     * Register default event types.
+     * Register default event types. These are wildcard channels: subscribers of {@code *} receive
+     * every event, subscribers of {@code *SCOPE_X} receive every event whose type scope is at or
+     * below {@code SCOPE_X}.
      */
     private void registerDefaultEventTypes() {
-        this.registry.register("*", this.scope);
+        this.register("*", this.scope, this.scope);
         for (@NotNull Scope s : Scope.values()) {
-            if (this.scope.compareTo(s) >= 0) this.registry.register("*" + s, s);
+            if (this.scope.compareTo(s) >= 0) this.register("*" + s, s, s);
         }
     }
 
     /**
-     * Thin wrapper around a volatile list because java does not support volatile values for maps.
+     * Subscriber removed from every delivery array, with the ring buffer cursor at the time.
+     */
+    private record Retired(@NotNull Subscriber sub, long sequence) {}
+
+    /**
+     * Thin wrapper around volatile arrays because java does not support volatile array elements.
+     * Arrays are copied on write.
      */
     static class SubscriberList {
-        volatile List<Subscriber> list = List.of();
+        private static final Subscriber[] EMPTY = {};
+        static final AtomicLongFieldUpdater<SubscriberList> DISPATCHED =
+                AtomicLongFieldUpdater.newUpdater(SubscriberList.class, "dispatched");
+
+        final @NotNull EventType type;
+
+        /**
+         * Scope of the events delivered to subscribers of this type if it is a wildcard channel, null
+         * otherwise.
+         */
+        final @Nullable Scope wildcard;
+
+        /**
+         * Subscribers of this event type.
+         */
+        volatile @NotNull Subscriber[] subs = EMPTY;
+
+        /**
+         * Subscribers receiving events of this type: its own subscribers and those of the wildcard
+         * channels covering it, precomputed so that dispatch does not match wildcards.
+         */
+        volatile @NotNull Subscriber[] delivery = EMPTY;
+
+        /**
+         * Number of dispatched events of this type, only written by the dispatcher thread.
+         */
+        volatile long dispatched = 0L;
+
+        /**
+         * Latencies from publish to dispatch and from publish to the end of processing by a
+         * subscriber, null unless the router tracks latencies.
+         */
+        final @Nullable LatencyHistogram dispatchLatency;
+        final @Nullable LatencyHistogram endToEndLatency;
+
+        SubscriberList(@NotNull EventType type, @Nullable Scope wildcard, boolean latency) {
+            this.type = type;
+            this.wildcard = wildcard;
+            this.dispatchLatency = latency ? new LatencyHistogram() : null;
+            this.endToEndLatency = latency ? new LatencyHistogram() : null;
+        }
     }
 
     /**
@@ -0,0 +1,249 @@
+package com.kylontech.experiment.events;
+
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.PhasedBackoffWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Builder of event routers. A profile gives defaults for the ring buffer and its wait strategy,
+ * explicit settings override them.
+ */
+public class EventRouterBuilder {
+
+    /**
+     * Named sets of defaults trading latency for CPU usage.
+     */
+    public enum Profile {
+
+        /**
+         * The dispatcher busy-spins, so it reacts to events as fast as possible but keeps a core busy
+         * even when idle. Give it a dedicated core, and use {@link ProducerType#SINGLE} if events are
+         * only ever published from one thread.
+         */
+        LOW_LATENCY(BusySpinWaitStrategy::new),
+
+        /**
+         * The dispatcher spins then yields when idle. This was the only behavior before profiles.
+         */
+        BALANCED(YieldingWaitStrategy::new),
+
+        /**
+         * The dispatcher spins, yields, then blocks after a millisecond of inactivity, so idle routers
+         * do not burn a core. Publishing may need to wake it up.
+         */
+        LOW_CPU(() -> PhasedBackoffWaitStrategy.withLiteLock(100, 1000, TimeUnit.MICROSECONDS));
+
+        private final @NotNull Supplier<@NotNull WaitStrategy> waitStrategy;
+
+        Profile(@NotNull Supplier<@NotNull WaitStrategy> waitStrategy) {
+            this.waitStrategy = waitStrategy;
+        }
+    }
+
+    private final @NotNull Scope scope;
+    private @NotNull Profile profile = Profile.BALANCED;
+    private int bufferSize = EventRouter.BUFFER_SIZE;
+    private @NotNull ProducerType producerType = ProducerType.MULTI;
+    private @Nullable Supplier<@NotNull WaitStrategy> waitStrategy;
+    private boolean metrics = false;
+    private @Nullable String jmxName;
+    private boolean latency = false;
+    private int maxPendingRequests = EventRouter.MAX_PENDING_REQUESTS;
+    private @Nullable JournalOptions journal;
+    private boolean used = false;
+
+    EventRouterBuilder(@NotNull Scope scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * Use the defaults of a profile. Defaults to {@link Profile#BALANCED}.
+     */
+    public @NotNull EventRouterBuilder profile(@NotNull Profile profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    /**
+     * Set the number of ring buffer slots, a power of 2. Defaults to {@link EventRouter#BUFFER_SIZE}.
+     */
+    public @NotNull EventRouterBuilder bufferSize(int bufferSize) throws IllegalArgumentException {
+        if (bufferSize <= 0 || Integer.bitCount(bufferSize) != 1)
+            throw new IllegalArgumentException("Buffer size must be a power of 2");
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * Set whether events are published from a single thread or several. Defaults to {@link
+     * ProducerType#MULTI}. With {@link ProducerType#SINGLE}, publishing from several threads corrupts
+     * the ring buffer, so features publishing from threads of their own are rejected: {@link
+     * EventRouter#publishAsync}, catch-up subscriptions and bridges.
+     */
+    public @NotNull EventRouterBuilder producerType(@NotNull ProducerType producerType) {
+        this.producerType = producerType;
+        return this;
+    }
+
+    /**
+     * Override the wait strategy of the profile. The supplier is called once per built router, since
+     * wait strategies must not be shared.
+     */
+    public @NotNull EventRouterBuilder waitStrategy(@NotNull Supplier<@NotNull WaitStrategy> waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+
+    /**
+     * Enable per event type metrics, see {@link EventRouter#getDispatchCounts()}. Router-wide
+     * metrics are always available. Disabled by default.
+     */
+    public @NotNull EventRouterBuilder metrics(boolean metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Enable metrics and register built routers in the platform MBean server, under the given name.
+     * Routers are unregistered when closed. A builder with a JMX name builds a single router, or the
+     * shards of a single {@link ShardedEventRouter}, whose names are suffixed with {@code #<shard>}.
+     */
+    public @NotNull EventRouterBuilder jmx(@NotNull String name) {
+        this.metrics = true;
+        this.jmxName = name;
+        return this;
+    }
+
+    /**
+     * Stamp events when published and dispatched, and record per event type latency histograms, see
+     * {@link EventRouter#getDispatchLatency(String)} and {@link EventRouter#getEndToEndLatency(String)}.
+     * This costs two {@link System#nanoTime()} calls per event. Disabled by default.
+     */
+    public @NotNull EventRouterBuilder latency(boolean latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Set the number of slots of the pending request table, a power of 2. Defaults to {@link
+     * EventRouter#MAX_PENDING_REQUESTS}. Requests fail when their slot is taken by another pending
+     * request, so keep it well above the expected number of concurrent requests.
+     */
+    public @NotNull EventRouterBuilder maxPendingRequests(int maxPendingRequests)
+            throws IllegalArgumentException {
+        if (maxPendingRequests <= 0 || Integer.bitCount(maxPendingRequests) != 1)
+            throw new IllegalArgumentException("Max pending requests must be a power of 2");
+        this.maxPendingRequests = maxPendingRequests;
+        return this;
+    }
+
+    /**
+     * Journal published events before dispatching them, see {@link EventJournal}. A builder with a
+     * journal builds a single router, or the shards of a single {@link ShardedEventRouter}, which
+     * journal in the {@code shard-<shard>} subdirectories of the directory. Events are not journaled
+     * by default.
+     */
+    public @NotNull EventRouterBuilder journal(@NotNull JournalOptions options) {
+        this.journal = options;
+        return this;
+    }
+
+    /**
+     * Create and start a router.
+     *
+     * @throws UncheckedIOException  if the journal cannot be opened
+     * @throws IllegalStateException if the builder has a journal or a JMX name and was already used,
+     *                               or the JMX name is taken
+     */
+    public @NotNull EventRouter build() throws UncheckedIOException, IllegalStateException {
+        this.use();
+        return new EventRouter(this, new PendingRequests(this.maxPendingRequests), -1);
+    }
+
+    /**
+     * Create and start a shard of a sharded router, completing the requests of a given table, see
+     * {@link #use()}.
+     */
+    @NotNull
+    EventRouter build(@NotNull PendingRequests requests, int shard) {
+        return new EventRouter(this, requests, shard);
+    }
+
+    /**
+     * Record that the builder builds a router or the shards of a sharded router. Routers may not
+     * share a journal or a JMX name, so a builder with either is only used once.
+     */
+    void use() throws IllegalStateException {
+        if (this.used && (this.journal != null || this.jmxName != null))
+            throw new IllegalStateException("A builder with a journal or a JMX name builds a single router");
+        this.used = true;
+    }
+
+    @NotNull
+    Scope scope() {
+        return this.scope;
+    }
+
+    int bufferSize() {
+        return this.bufferSize;
+    }
+
+    @NotNull
+    ProducerType producerType() {
+        return this.producerType;
+    }
+
+    boolean metrics() {
+        return this.metrics;
+    }
+
+    boolean latency() {
+        return this.latency;
+    }
+
+    int maxPendingRequests() {
+        return this.maxPendingRequests;
+    }
+
+    /**
+     * Open the journal of a router, if any.
+     *
+     * @param shard index of the router in a sharded router, -1 for a router on its own
+     */
+    @Nullable
+    EventJournal openJournal(int shard) throws UncheckedIOException {
+        if (this.journal == null) return null;
+        Path directory = this.journal.directory();
+        if (shard >= 0) directory = directory.resolve("shard-" + shard);
+        try {
+            return new EventJournal(this.journal, directory);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Return the JMX name of a router, if any.
+     *
+     * @param shard index of the router in a sharded router, -1 for a router on its own
+     */
+    @Nullable
+    String jmxName(int shard) {
+        return this.jmxName == null || shard < 0 ? this.jmxName : this.jmxName + " #" + shard;
+    }
+
+    @NotNull
+    WaitStrategy newWaitStrategy() {
+        return (this.waitStrategy != null ? this.waitStrategy : this.profile.waitStrategy).get();
+    }
+}
@@ -0,0 +1,46 @@
+package com.kylontech.experiment.events;
+
+import java.util.Map;
+
+/**
+ * Metrics of an event router, exposed over JMX when the router is built with {@link
+ * EventRouterBuilder#jmx(String)}.
+ */
+public interface EventRouterMXBean {
+
+    /**
+     * Return the number of events published since the router started.
+     */
+    long getPublishedEvents();
+
+    /**
+     * Return the number of events dispatched since the router started.
+     */
+    long getDispatchedEvents();
+
+    /**
+     * Return the number of events published but not dispatched yet.
+     */
+    long getRingOccupancy();
+
+    /**
+     * Return the number of ring buffer slots.
+     */
+    int getBufferSize();
+
+    /**
+     * Return the number of publishes that gave up because the ring buffer was full.
+     */
+    long getRejectedPublishes();
+
+    /**
+     * Return the number of publishes that had to wait for the ring buffer to have room.
+     */
+    long getDelayedPublishes();
+
+    /**
+     * Return the number of dispatched events of each registered event type, empty unless metrics
+     * are enabled.
+     */
+    Map<String, Long> getDispatchCounts();
+}
@@ -0,0 +1,39 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Handle of a registered event type. Each handle has a dense integer id, unique among the types
+ * currently registered in a router, that is used to index subscriber tables instead of hashing
+ * the type name on every publish and dispatch.
+ */
+public final class EventType {
+
+    private final @NotNull String name;
+    private final @NotNull Scope scope;
+    private final int id;
+
+    EventType(@NotNull String name, @NotNull Scope scope, int id) {
+        this.name = name;
+        this.scope = scope;
+        this.id = id;
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    @NotNull
+    public Scope getScope() {
+        return scope;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String toString() {
+        return "EventType {name='" + this.name + "', scope='" + this.scope + "', id='" + this.id + "'}";
+    }
+}
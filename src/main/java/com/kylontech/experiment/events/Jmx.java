@@ -0,0 +1,45 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registration of routers and subscribers in the platform MBean server.
+ */
+final class Jmx {
+
+    static final String DOMAIN = "com.kylontech.experiment.events";
+
+    private Jmx() {}
+
+    /**
+     * Register an MXBean under {@code com.kylontech.experiment.events:type=<type>,name=<name>}.
+     */
+    static <T> @NotNull ObjectName register(
+            @NotNull T bean, @NotNull Class<T> mxBean, @NotNull String type, @NotNull String name)
+            throws IllegalStateException {
+        try {
+            ObjectName objectName =
+                    new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(new StandardMBean(bean, mxBean, true), objectName);
+            return objectName;
+        } catch (JMException ex) {
+            throw new IllegalStateException("Could not register " + type + " '" + name + "' in JMX", ex);
+        }
+    }
+
+    /**
+     * Unregister an MXBean, this is a no-op if it is not registered.
+     */
+    static void unregister(@NotNull ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException _) {
+        }
+    }
+}
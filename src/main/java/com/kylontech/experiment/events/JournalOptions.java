@@ -0,0 +1,97 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options of an {@link EventJournal}: its directory, the size of its segment files and when it
+ * forces them to the storage device. By default segments are 64MB and forced after each batch.
+ */
+public class JournalOptions {
+
+    /**
+     * When journaled events are forced to the storage device.
+     */
+    public enum SyncPolicy {
+
+        /**
+         * Never, events are only written to the page cache. They survive a crash of the JVM but not
+         * of the host.
+         */
+        NONE,
+
+        /**
+         * After each batch of events taken from the ring buffer, before they are dispatched.
+         */
+        BATCH,
+
+        /**
+         * After the first batch ending once the sync interval has elapsed since the last sync.
+         */
+        INTERVAL
+    }
+
+    /**
+     * Default size of segment files.
+     */
+    public static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final @NotNull Path directory;
+    private int segmentSize = SEGMENT_SIZE;
+    private @NotNull SyncPolicy syncPolicy = SyncPolicy.BATCH;
+    private long syncIntervalNanos = 0L;
+
+    JournalOptions(@NotNull Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Set the size of segment files, a multiple of 8. Events larger than a segment get a segment of
+     * their own. Defaults to {@link #SEGMENT_SIZE}.
+     */
+    public @NotNull JournalOptions segmentSize(int segmentSize) throws IllegalArgumentException {
+        if (segmentSize <= 0 || segmentSize % 8 != 0)
+            throw new IllegalArgumentException("Segment size must be a positive multiple of 8");
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * Set when events are forced to the storage device. Defaults to {@link SyncPolicy#BATCH}.
+     */
+    public @NotNull JournalOptions sync(@NotNull SyncPolicy policy) {
+        this.syncPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Force events to the storage device at most once per interval, see {@link SyncPolicy#INTERVAL}.
+     */
+    public @NotNull JournalOptions sync(long interval, @NotNull TimeUnit unit)
+            throws IllegalArgumentException {
+        if (interval <= 0) throw new IllegalArgumentException("Sync interval must be positive");
+        this.syncPolicy = SyncPolicy.INTERVAL;
+        this.syncIntervalNanos = unit.toNanos(interval);
+        return this;
+    }
+
+    @NotNull
+    Path directory() {
+        return this.directory;
+    }
+
+    int segmentSize() {
+        return this.segmentSize;
+    }
+
+    @NotNull
+    SyncPolicy syncPolicy() {
+        return this.syncPolicy;
+    }
+
+    long syncIntervalNanos() {
+        return this.syncIntervalNanos;
+    }
+}
@@ -0,0 +1,119 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of latencies in nanoseconds. Each power of 2 is split in 32
+ * buckets, so recorded values are known within about 3%. Recording never allocates.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of bits of each value kept exactly, the others are rounded.
+     */
+    private static final int PRECISION = 5;
+    private static final int SUB_BUCKETS = 1 << PRECISION;
+    private static final int BUCKETS = (64 - PRECISION) * SUB_BUCKETS;
+
+    /**
+     * Plain atomics rather than striped adders, which allocate cells on contention. Histograms are
+     * mostly recorded by a single thread.
+     */
+    private final @NotNull AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final @NotNull AtomicLong count = new AtomicLong();
+    private final @NotNull AtomicLong sum = new AtomicLong();
+    private final @NotNull AtomicLong max = new AtomicLong();
+
+    /**
+     * Percentiles of a histogram at a given time, in nanoseconds.
+     */
+    public record Snapshot(long count, double mean, long p50, long p99, long p999, long max) {}
+
+    /**
+     * Record a latency, negative latencies are recorded as 0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        this.counts.incrementAndGet(bucketOf(nanos));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(nanos);
+        long max;
+        while (nanos > (max = this.max.get()) && !this.max.compareAndSet(max, nanos)) Thread.onSpinWait();
+    }
+
+    /**
+     * Return the percentiles of the latencies recorded so far. Latencies recorded concurrently may
+     * or may not be included.
+     */
+    public @NotNull Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.counts.get(i);
+            total += counts[i];
+        }
+        if (total == 0) return new Snapshot(0, 0, 0, 0, 0, 0);
+        long max = this.max.get();
+        return new Snapshot(
+                total,
+                (double) this.sum.get() / Math.max(this.count.get(), 1),
+                Math.min(valueAt(counts, total, 0.5), max),
+                Math.min(valueAt(counts, total, 0.99), max),
+                Math.min(valueAt(counts, total, 0.999), max),
+                max);
+    }
+
+    /**
+     * Clear all recorded latencies. Latencies recorded concurrently may or may not be kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) this.counts.set(i, 0);
+        this.count.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+    }
+
+    /**
+     * Return the highest value of the bucket holding the given percentile.
+     */
+    private static long valueAt(long @NotNull [] counts, long total, double percentile) {
+        long rank = Math.max((long) Math.ceil(percentile * total), 1);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return highestValueOf(i);
+        }
+        return highestValueOf(BUCKETS - 1);
+    }
+
+    /**
+     * Return the bucket of a non-negative value. Values below 32 have their own bucket, the others
+     * keep their 5 most significant bits.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - PRECISION;
+        return ((shift + 1) << PRECISION) + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Return the lowest value of a bucket.
+     */
+    static long lowestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = (bucket >>> PRECISION) - 1;
+        return (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+    }
+
+    /**
+     * Return the highest value of a bucket.
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = (bucket >>> PRECISION) - 1;
+        return lowestValueOf(bucket) + (1L << shift) - 1;
+    }
+}
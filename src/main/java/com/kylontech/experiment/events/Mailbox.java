@@ -0,0 +1,413 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ordered queue of events waiting to be processed by a subscriber. A mailbox is scheduled on its
+ * runtime when it receives events and is drained by at most one worker at a time.
+ *
+ * <p>A conflating mailbox keeps a single pending event per event type and partition key: the queue
+ * holds the first event received for a key, which stands for the latest one until it is polled, so
+ * events replaced meanwhile are never processed.
+ */
+final class Mailbox implements Runnable {
+
+    private final @NotNull Subscriber owner;
+    private final @NotNull SubscriberRuntime runtime;
+    private final @NotNull Queue<@NotNull Event> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of events in the queue. Slots are reserved here before offering an event, which bounds
+     * the queue without locking it.
+     */
+    private final @NotNull AtomicInteger depth = new AtomicInteger(0);
+
+    private final int capacity;
+    private final @NotNull SubscriberOptions.OverflowPolicy overflowPolicy;
+
+    /**
+     * Pending events by key when conflating, null otherwise. Guards itself.
+     */
+    private final @Nullable PendingTable pending;
+    private final int slowDepth;
+    private final long slowLatencyNanos;
+
+    /**
+     * Whether processing is timed, for slow consumer detection or latency histograms.
+     */
+    private final boolean timed;
+
+    /**
+     * Whether a drain is scheduled or running. Setting and clearing it orders drains, so events
+     * processed by different workers are seen in order.
+     */
+    private final @NotNull AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private static final AtomicLongFieldUpdater<Mailbox> PROCESSED =
+            AtomicLongFieldUpdater.newUpdater(Mailbox.class, "processed");
+
+    /**
+     * Number of processed events, only written by the worker draining the mailbox.
+     */
+    private volatile long processed = 0L;
+
+    private volatile boolean closed = false;
+    private final @NotNull CountDownLatch terminated = new CountDownLatch(1);
+
+    Mailbox(@NotNull Subscriber owner, @NotNull SubscriberOptions options) {
+        this.owner = owner;
+        this.runtime = options.runtime();
+        this.capacity = options.capacity();
+        this.overflowPolicy = options.overflowPolicy();
+        this.pending = options.conflate() ? new PendingTable() : null;
+        this.slowDepth = options.slowDepth();
+        this.slowLatencyNanos = options.slowLatencyNanos();
+        this.timed = this.slowLatencyNanos != Long.MAX_VALUE || options.latency();
+    }
+
+    /**
+     * Add an event to this mailbox. Events are dropped once the mailbox is closed, while its owner is
+     * quarantined, or when it is full depending on its overflow policy. When conflating, an event
+     * replaces the pending one of its key, if any, and only takes room in the mailbox otherwise. The
+     * mailbox releases the event once processed, dropped or replaced.
+     */
+    void enqueue(@NotNull Event e) {
+        if (this.closed || this.owner.isQuarantined()) {
+            this.drop(e);
+            return;
+        }
+        if (this.pending != null && this.conflate(e, false)) return;
+        int d = this.reserve();
+        if (d < 0) {
+            d = this.overflow(e);
+            if (d < 0) return;
+        }
+        if (this.pending == null) this.queue.offer(e);
+        else this.conflate(e, true);
+        this.schedule();
+        if (d >= this.slowDepth) this.owner.quarantine();
+    }
+
+    /**
+     * Reserve a slot for an event.
+     *
+     * @return the depth before the reservation, or -1 if the mailbox is full
+     */
+    private int reserve() {
+        if (this.capacity == Integer.MAX_VALUE) return this.depth.getAndIncrement();
+        int d;
+        do {
+            d = this.depth.get();
+            if (d >= this.capacity) return -1;
+        } while (!this.depth.compareAndSet(d, d + 1));
+        return d;
+    }
+
+    /**
+     * Apply the overflow policy to an event received while the mailbox is full.
+     *
+     * @return the depth before the reservation of a slot, or -1 if the event was dropped
+     */
+    private int overflow(@NotNull Event e) {
+        int d = -1;
+        switch (this.overflowPolicy) {
+            case BLOCK -> {
+                this.schedule();
+                while ((d = this.reserve()) < 0) {
+                    if (this.closed || this.owner.isQuarantined() || Thread.currentThread().isInterrupted())
+                        break;
+                    LockSupport.parkNanos(1000L);
+                }
+            }
+            case DROP_OLDEST -> {
+                while ((d = this.reserve()) < 0) {
+                    Event oldest = this.next();
+                    if (oldest != null) this.drop(oldest);
+                }
+            }
+            case DISCONNECT -> this.owner.quarantine();
+            case DROP_NEWEST -> {}
+        }
+        if (d < 0) this.drop(e);
+        return d;
+    }
+
+    private void drop(@NotNull Event e) {
+        if (e.barrier != null) {
+            e.barrier.arrive();
+            return;
+        }
+        this.owner.dropped();
+        e.release();
+    }
+
+    /**
+     * Add a barrier marker to this mailbox. Markers are never dropped nor bounded, and are reached
+     * once all the events received before them are processed or dropped. Closed mailboxes reach
+     * markers right away.
+     */
+    void enqueueBarrier(@NotNull Event marker) {
+        if (this.closed) {
+            marker.barrier.arrive();
+            return;
+        }
+        this.depth.incrementAndGet();
+        this.queue.offer(marker);
+        this.schedule();
+    }
+
+    /**
+     * Make an event the pending one of its key, replacing the former one if any.
+     *
+     * @param reserved whether a slot is reserved in the queue for the event, which is queued if no
+     *                 event of its key is pending, and given back otherwise
+     * @return false if no event of its key is pending and no slot is reserved
+     */
+    private boolean conflate(@NotNull Event e, boolean reserved) {
+        Event first;
+        Event replaced;
+        synchronized (this.pending) {
+            Pending p = this.pending.get(e);
+            if (p == null) {
+                if (!reserved) return false;
+                this.pending.add(e);
+                this.queue.offer(e);
+                return true;
+            }
+            first = p.first;
+            replaced = p.latest;
+            p.latest = e;
+        }
+        if (reserved) this.depth.decrementAndGet();
+        // The first event stays in the queue until polled
+        if (replaced != first) replaced.release();
+        this.owner.conflated();
+        return true;
+    }
+
+    private @Nullable Event poll() {
+        Event e = this.queue.poll();
+        if (e != null) this.depth.decrementAndGet();
+        return e;
+    }
+
+    /**
+     * Poll the next event, the latest pending one of its key when conflating.
+     */
+    private @Nullable Event next() {
+        Event e = this.poll();
+        if (e == null || e.barrier != null || this.pending == null) return e;
+        Event latest;
+        synchronized (this.pending) {
+            latest = this.pending.remove(e);
+        }
+        if (latest != e) e.release();
+        return latest;
+    }
+
+    /**
+     * Return the number of events waiting to be processed.
+     */
+    int size() {
+        return Math.max(this.depth.get(), 0);
+    }
+
+    private void schedule() {
+        if (!this.scheduled.get() && this.scheduled.compareAndSet(false, true)) this.runtime.execute(this);
+    }
+
+    /**
+     * Process up to the runtime throughput of events, then reschedule if some are left.
+     */
+    @Override
+    public void run() {
+        try {
+            int throughput = this.runtime.throughput();
+            for (int i = 0; i < throughput; i++) {
+                Event e = this.next();
+                if (e == null) break;
+                if (e.barrier != null) {
+                    e.barrier.arrive();
+                    continue;
+                }
+                if (!this.timed && e.endToEndLatency == null) {
+                    this.process(e);
+                    continue;
+                }
+                LatencyHistogram endToEnd = e.endToEndLatency;
+                long published = e.getPublishNanos();
+                long dispatched = e.getDispatchNanos();
+                long start = System.nanoTime();
+                this.process(e);
+                long end = System.nanoTime();
+                if (end - start > this.slowLatencyNanos) this.owner.quarantine();
+                if (endToEnd != null) endToEnd.record(end - published);
+                if (this.owner.processingLatency != null) this.owner.processingLatency.record(end - start);
+                if (this.owner.mailboxLatency != null && dispatched != 0L)
+                    this.owner.mailboxLatency.record(start - dispatched);
+                if (this.owner.endToEndLatency != null && published != 0L)
+                    this.owner.endToEndLatency.record(end - published);
+            }
+        } finally {
+            this.scheduled.set(false);
+            if (!this.queue.isEmpty()) this.schedule();
+            else if (this.closed) this.terminated.countDown();
+        }
+    }
+
+    private void process(@NotNull Event e) {
+        try {
+            this.owner.process(e);
+        } finally {
+            e.release();
+            PROCESSED.lazySet(this, this.processed + 1);
+        }
+    }
+
+    /**
+     * Return the number of processed events.
+     */
+    long processed() {
+        return this.processed;
+    }
+
+    /**
+     * Stop accepting events and wait until the ones already received are processed.
+     */
+    void close(long timeout, @NotNull TimeUnit unit) throws TimeoutException, InterruptedException {
+        this.closed = true;
+        this.schedule();
+        if (!this.terminated.await(timeout, unit))
+            throw new TimeoutException("subscriber's mailbox termination timed out");
+    }
+
+    /**
+     * First and latest events of a key received since the key was last polled. Entries are recycled
+     * once their key is polled, chained by {@code next} while free.
+     */
+    private static final class Pending {
+        @Nullable EventType eventType;
+        @NotNull String type;
+        long partitionKey;
+        int hash;
+        @NotNull Event first;
+        @NotNull Event latest;
+        @Nullable Pending next;
+
+        Pending(@NotNull Event e, int hash) {
+            this.set(e, hash);
+        }
+
+        void set(@NotNull Event e, int hash) {
+            this.eventType = e.getEventType();
+            this.type = e.getType();
+            this.partitionKey = e.getPartitionKey();
+            this.hash = hash;
+            this.first = e;
+            this.latest = e;
+        }
+
+        boolean matches(@NotNull Event e) {
+            return this.partitionKey == e.getPartitionKey()
+                    && this.eventType == e.getEventType()
+                    && (this.eventType != null || this.type.equals(e.getType()));
+        }
+    }
+
+    /**
+     * Pending events by event type and partition key, in an open addressing table with linear probing
+     * kept at most half full. Types are keyed by their handle, hashed by id, or by name for events
+     * received without one. Polled entries are kept for reuse, so conflating allocates nothing once
+     * the table holds as many entries as keys pending at once.
+     */
+    private static final class PendingTable {
+        private @Nullable Pending @NotNull [] slots = new Pending[16];
+        private int size = 0;
+        private @Nullable Pending free = null;
+
+        @Nullable
+        Pending get(@NotNull Event e) {
+            int mask = this.slots.length - 1;
+            for (int i = hash(e) & mask; ; i = (i + 1) & mask) {
+                Pending p = this.slots[i];
+                if (p == null || p.matches(e)) return p;
+            }
+        }
+
+        /**
+         * Add an event of a key with no pending event.
+         */
+        void add(@NotNull Event e) {
+            if (2 * (this.size + 1) > this.slots.length) this.resize();
+            int hash = hash(e);
+            Pending p = this.free;
+            if (p == null) {
+                p = new Pending(e, hash);
+            } else {
+                this.free = p.next;
+                p.next = null;
+                p.set(e, hash);
+            }
+            this.insert(p);
+            this.size++;
+        }
+
+        /**
+         * Remove the pending entry of the key of a polled event.
+         *
+         * @return the latest event of the key
+         */
+        @NotNull
+        Event remove(@NotNull Event e) {
+            Pending[] slots = this.slots;
+            int mask = slots.length - 1;
+            int i = hash(e) & mask;
+            while (!slots[i].matches(e)) i = (i + 1) & mask;
+            Pending p = slots[i];
+            // Shift back the entries of the probe sequence past the removed one
+            for (int j = (i + 1) & mask; slots[j] != null; j = (j + 1) & mask) {
+                int home = slots[j].hash & mask;
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    slots[i] = slots[j];
+                    i = j;
+                }
+            }
+            slots[i] = null;
+            this.size--;
+            p.next = this.free;
+            this.free = p;
+            return p.latest;
+        }
+
+        private void insert(@NotNull Pending p) {
+            int mask = this.slots.length - 1;
+            int i = p.hash & mask;
+            while (this.slots[i] != null) i = (i + 1) & mask;
+            this.slots[i] = p;
+        }
+
+        private void resize() {
+            Pending[] old = this.slots;
+            this.slots = new Pending[old.length * 2];
+            for (Pending p : old) if (p != null) this.insert(p);
+        }
+
+        private static int hash(@NotNull Event e) {
+            EventType type = e.getEventType();
+            long h = (type != null ? type.getId() : e.getType().hashCode()) * 0x9E3779B97F4A7C15L;
+            h = (h ^ e.getPartitionKey()) * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Slab of off-heap payload blocks, in power of 2 size classes from {@link #MIN_BLOCK} to {@link
+ * #MAX_BLOCK} bytes. Blocks are allocated from an automatic arena owned by the router and recycled
+ * once the event holding them is released, so a router's off-heap memory follows its peak of
+ * payloads in flight. The arena is freed once the router and all its blocks are unreachable, so a
+ * payload read after its router is closed is still valid memory.
+ *
+ * <p>Blocks are taken by producers from any thread, so free blocks are kept in concurrent queues
+ * rather than in a stack like {@link EventPool}, which would be exposed to ABA.
+ */
+final class PayloadSlab {
+
+    static final int MIN_SHIFT = 8;
+    static final int MAX_SHIFT = 24;
+    static final long MIN_BLOCK = 1L << MIN_SHIFT;
+    static final long MAX_BLOCK = 1L << MAX_SHIFT;
+
+    /**
+     * Block alignment, a cache line.
+     */
+    private static final long ALIGNMENT = 64;
+
+    private final @NotNull Arena arena = Arena.ofAuto();
+    private final @NotNull Queue<@NotNull Block> @NotNull [] free;
+
+    /**
+     * An off-heap block of a size class, returned to its queue when released.
+     */
+    static final class Block {
+        final @NotNull MemorySegment segment;
+        private final @NotNull Queue<@NotNull Block> free;
+
+        private Block(@NotNull MemorySegment segment, @NotNull Queue<@NotNull Block> free) {
+            this.segment = segment;
+            this.free = free;
+        }
+
+        void release() {
+            this.free.offer(this);
+        }
+    }
+
+    PayloadSlab() {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Queue<@NotNull Block>[] free = new Queue[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < free.length; i++) free[i] = new ConcurrentLinkedQueue<>();
+        this.free = free;
+    }
+
+    /**
+     * Take a block of at least the given size, or allocate one if none is free.
+     */
+    @NotNull
+    Block allocate(long size) throws IllegalArgumentException {
+        if (size < 0 || size > MAX_BLOCK)
+            throw new IllegalArgumentException("Payload size must be between 0 and " + MAX_BLOCK);
+        int sizeClass = classOf(size);
+        Queue<Block> free = this.free[sizeClass];
+        Block block = free.poll();
+        if (block == null) block = new Block(this.arena.allocate(MIN_BLOCK << sizeClass, ALIGNMENT), free);
+        return block;
+    }
+
+    /**
+     * Return the size class of a payload size: blocks of class {@code c} hold {@code MIN_BLOCK << c}
+     * bytes.
+     */
+    static int classOf(long size) {
+        return size <= MIN_BLOCK ? 0 : 64 - Long.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+}
@@ -0,0 +1,102 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Requests waiting for a reply, in a preallocated lock-free table indexed by correlation id.
+ * Requests are completed by the dispatcher when their reply is dispatched, by the timer wheel when
+ * they time out, or failed when the router closes, whichever removes them from the table first. A
+ * replied request cancels its timeout so that the wheel does not keep its reply.
+ */
+final class PendingRequests {
+
+    /**
+     * Number of correlation ids tried before giving up when the slots they map to are taken.
+     */
+    private static final int MAX_PROBES = 8;
+
+    private final @NotNull AtomicReferenceArray<Request> table;
+    private final int mask;
+    private final @NotNull AtomicLong ids = new AtomicLong(0);
+
+    /**
+     * A request waiting for its reply.
+     */
+    final class Request extends TimerWheel.Timeout {
+        final long id;
+        final @NotNull CompletableFuture<@NotNull Event> future = new CompletableFuture<>();
+
+        Request(long id) {
+            this.id = id;
+        }
+
+        @Override
+        void expire() {
+            if (PendingRequests.this.remove(this))
+                this.future.completeExceptionally(new TimeoutException("request " + this.id + " timed out"));
+        }
+    }
+
+    /**
+     * @param capacity number of slots, a power of 2
+     */
+    PendingRequests(int capacity) {
+        this.table = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Add a request to the table and schedule its timeout.
+     *
+     * @return the request, or null if the table is full
+     */
+    @Nullable
+    Request register(long timeout, @NotNull TimeUnit unit) {
+        for (int i = 0; i < MAX_PROBES; i++) {
+            long id = this.ids.incrementAndGet();
+            Request request = new Request(id);
+            if (this.table.compareAndSet((int) (id & this.mask), null, request)) {
+                TimerWheel.shared().schedule(request, timeout, unit);
+                return request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Complete the request a reply answers with a copy of the reply. Replies to unknown or timed out
+     * requests are ignored.
+     */
+    void complete(@NotNull Event reply) {
+        long id = reply.getCorrelationId();
+        Request request = this.table.get((int) (id & this.mask));
+        if (request != null && request.id == id && this.remove(request)) {
+            request.cancel();
+            request.future.complete(reply.copy());
+        }
+    }
+
+    /**
+     * Fail every pending request, because no reply will be dispatched anymore.
+     */
+    void fail(@NotNull Throwable cause) {
+        for (int i = 0; i < this.table.length(); i++) {
+            Request request = this.table.get(i);
+            if (request != null && this.remove(request)) {
+                request.cancel();
+                request.future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private boolean remove(@NotNull Request request) {
+        return this.table.compareAndSet((int) (request.id & this.mask), request, null);
+    }
+}
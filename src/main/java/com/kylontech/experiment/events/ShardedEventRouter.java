@@ -0,0 +1,497 @@
+package com.kylontech.experiment.events;
+
+import com.lmax.disruptor.EventTranslator;
+import com.lmax.disruptor.EventTranslatorOneArg;
+import com.lmax.disruptor.EventTranslatorTwoArg;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A router spreading event types over several independent routers, called shards, each with its own
+ * ring buffer and dispatcher thread. Every event type lives in a single shard, chosen by hashing its
+ * name or by explicit placement, so events of a type keep their order while dispatch scales with
+ * the number of shards.
+ *
+ * <p>Wildcard channels and pattern subscriptions span all shards. Events of different types are not
+ * ordered with each other.
+ *
+ * <p>A sharded router offers the publishing, subscribing and metrics methods of {@link EventRouter},
+ * so callers can switch from one to the other. Router-wide metrics are summed over shards. What is
+ * attached to a single ring stays per shard: journals, see {@link #getJournal(String)}, and bridges,
+ * which are opened on a shard, see {@link #shard(int)}.
+ */
+public class ShardedEventRouter implements AutoCloseable, EventRouterMXBean {
+
+    private final @NotNull EventRouter @NotNull [] shards;
+
+    /**
+     * Requests waiting for a reply, shared by shards since a reply may be published to another shard
+     * than its request.
+     */
+    private final @NotNull PendingRequests requests;
+
+    /**
+     * Explicit placements of event types, by type name.
+     */
+    private final @NotNull ConcurrentHashMap<@NotNull String, @NotNull Integer> placements =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Create a sharded router with the {@link EventRouterBuilder.Profile#BALANCED} profile.
+     */
+    public ShardedEventRouter(@NotNull Scope scope, int shards) throws IllegalArgumentException {
+        this(EventRouter.builder(scope), shards);
+    }
+
+    /**
+     * Create a sharded router, each shard is built with the given builder.
+     *
+     * @throws IllegalArgumentException if the number of shards is not positive
+     * @throws IllegalStateException    if the builder has a journal or a JMX name and was already used
+     */
+    public ShardedEventRouter(@NotNull EventRouterBuilder builder, int shards)
+            throws IllegalArgumentException, IllegalStateException {
+        if (shards <= 0) throw new IllegalArgumentException("Number of shards must be positive");
+        this.shards = new EventRouter[shards];
+        builder.use();
+        this.requests = new PendingRequests(builder.maxPendingRequests());
+        for (int i = 0; i < shards; i++) this.shards[i] = builder.build(this.requests, i);
+    }
+
+    /**
+     * Return the number of shards.
+     */
+    public int shards() {
+        return this.shards.length;
+    }
+
+    /**
+     * Place an event type in a given shard instead of the one chosen by hashing its name. This must
+     * be done before the event type is registered.
+     */
+    public synchronized void place(@NotNull String type, int shard)
+            throws IllegalStateException, IndexOutOfBoundsException {
+        if (shard < 0 || shard >= this.shards.length)
+            throw new IndexOutOfBoundsException("Shard " + shard + " does not exist");
+        for (EventRouter router : this.shards) {
+            try {
+                router.getEventType(type);
+            } catch (NoSuchElementException _) {
+                continue;
+            }
+            throw new IllegalStateException("Type '" + type + "' is already registered");
+        }
+        this.placements.put(type, shard);
+    }
+
+    /**
+     * Return the index of the shard of an event type.
+     */
+    public int shardOf(@NotNull String type) {
+        if (!this.placements.isEmpty()) {
+            Integer shard = this.placements.get(type);
+            if (shard != null) return shard;
+        }
+        int h = type.hashCode();
+        return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % this.shards.length;
+    }
+
+    /**
+     * Return a shard, e.g. to open a bridge on it.
+     */
+    public @NotNull EventRouter shard(int shard) throws IndexOutOfBoundsException {
+        return this.shards[shard];
+    }
+
+    private @NotNull EventRouter shardFor(@NotNull String type) {
+        return this.shards[this.shardOf(type)];
+    }
+
+    /**
+     * Register a new event type in its shard, see {@link EventRouter#registerEventType}.
+     */
+    public synchronized @NotNull EventType registerEventType(
+            @NotNull String type, @NotNull Scope scope, @NotNull Subscriber sub)
+            throws IllegalStateException, IllegalAccessError {
+        return this.shardFor(type).registerEventType(type, scope, sub);
+    }
+
+    /**
+     * Return the handle of a registered event type.
+     */
+    public @NotNull EventType getEventType(@NotNull String type) throws NoSuchElementException {
+        return this.shardFor(type).getEventType(type);
+    }
+
+    /**
+     * Unregister an event type, see {@link EventRouter#unregisterEventType(String, Subscriber)}.
+     */
+    public void unregisterEventType(@NotNull String type, @NotNull Subscriber sub)
+            throws NoSuchElementException, IllegalAccessError {
+        this.shardFor(type).unregisterEventType(type, sub);
+    }
+
+    /**
+     * Unregister an event type, see {@link EventRouter#unregisterEventType(EventType, Subscriber)}.
+     */
+    public void unregisterEventType(@NotNull EventType type, @NotNull Subscriber sub)
+            throws NoSuchElementException, IllegalAccessError {
+        this.shardFor(type.getName()).unregisterEventType(type, sub);
+    }
+
+    /**
+     * Subscribe to an event type. Subscribing to a wildcard channel subscribes to it in all shards.
+     */
+    public void subscribe(@NotNull String type, @NotNull Subscriber sub)
+            throws NoSuchElementException, IllegalAccessError {
+        EventRouter router = this.shardFor(type);
+        if (!router.isChannel(type)) {
+            router.subscribe(type, sub);
+            return;
+        }
+        for (EventRouter shard : this.shards) shard.subscribe(type, sub);
+    }
+
+    /**
+     * Subscribe to an event type, first replaying its journaled events from a sequence, see {@link
+     * EventRouter#subscribe(String, Subscriber, long)}. Sequences are given by the journal of each
+     * shard, so wildcard channels, which span all shards, cannot be replayed.
+     */
+    public @NotNull CompletableFuture<Void> subscribe(
+            @NotNull String type, @NotNull Subscriber sub, long fromSequence)
+            throws NoSuchElementException, IllegalAccessError, IllegalStateException {
+        EventRouter router = this.shardFor(type);
+        if (router.isChannel(type))
+            throw new IllegalStateException("Wildcard channels of a sharded router cannot be replayed");
+        return router.subscribe(type, sub, fromSequence);
+    }
+
+    /**
+     * Subscribe to an event type from its handle.
+     */
+    public void subscribe(@NotNull EventType type, @NotNull Subscriber sub)
+            throws NoSuchElementException, IllegalAccessError {
+        if (this.shardFor(type.getName()).isChannel(type.getName())) this.subscribe(type.getName(), sub);
+        else this.shardFor(type.getName()).subscribe(type, sub);
+    }
+
+    /**
+     * Unsubscribe to an event type. Unsubscribing to a wildcard channel unsubscribes in all shards.
+     */
+    public void unsubscribe(@NotNull String type, @NotNull Subscriber sub) throws NoSuchElementException {
+        EventRouter router = this.shardFor(type);
+        if (!router.isChannel(type)) {
+            router.unsubscribe(type, sub);
+            return;
+        }
+        for (EventRouter shard : this.shards) shard.unsubscribe(type, sub);
+    }
+
+    /**
+     * Unsubscribe to an event type from its handle.
+     */
+    public void unsubscribe(@NotNull EventType type, @NotNull Subscriber sub) throws NoSuchElementException {
+        if (this.shardFor(type.getName()).isChannel(type.getName())) this.unsubscribe(type.getName(), sub);
+        else this.shardFor(type.getName()).unsubscribe(type, sub);
+    }
+
+    /**
+     * Subscribe to a hierarchical pattern in all shards, see {@link EventRouter#subscribePattern}.
+     */
+    public void subscribePattern(@NotNull String pattern, @NotNull Subscriber sub)
+            throws IllegalArgumentException {
+        for (EventRouter shard : this.shards) shard.subscribePattern(pattern, sub);
+    }
+
+    /**
+     * Unsubscribe to a hierarchical pattern in all shards.
+     */
+    public void unsubscribePattern(@NotNull String pattern, @NotNull Subscriber sub)
+            throws IllegalArgumentException {
+        for (EventRouter shard : this.shards) shard.unsubscribePattern(pattern, sub);
+    }
+
+    /**
+     * Publish an event in the shard of its type.
+     */
+    public void publish(@NotNull Event e) throws IllegalAccessError, NoSuchElementException {
+        this.shardFor(e.getType()).publish(e);
+    }
+
+    /**
+     * Publish an event if the ring buffer of its shard has room for it, without waiting.
+     *
+     * @return whether the event was published
+     */
+    public boolean tryPublish(@NotNull Event e) throws IllegalAccessError, NoSuchElementException {
+        return this.shardFor(e.getType()).tryPublish(e);
+    }
+
+    /**
+     * Publish an event, waiting at most the given time for the ring buffer of its shard to have room
+     * for it.
+     *
+     * @return whether the event was published
+     */
+    public boolean publish(@NotNull Event e, long timeout, @NotNull TimeUnit unit)
+            throws IllegalAccessError, NoSuchElementException {
+        return this.shardFor(e.getType()).publish(e, timeout, unit);
+    }
+
+    /**
+     * Publish an event without ever blocking the caller, see {@link EventRouter#publishAsync}.
+     */
+    public @NotNull CompletableFuture<Void> publishAsync(@NotNull Event e)
+            throws IllegalAccessError, NoSuchElementException {
+        return this.shardFor(e.getType()).publishAsync(e);
+    }
+
+    /**
+     * Publish an event and return a future completed once it has been processed by all its
+     * subscribers, see {@link EventRouter#publishAcked}.
+     */
+    public @NotNull CompletableFuture<Void> publishAcked(@NotNull Event e)
+            throws IllegalAccessError, NoSuchElementException {
+        return this.shardFor(e.getType()).publishAcked(e);
+    }
+
+    /**
+     * Give an event an off-heap payload from the slab of its shard, see {@link
+     * EventRouter#allocatePayload(Event, long)}. The event type must be set first.
+     */
+    public @NotNull MemorySegment allocatePayload(@NotNull Event e, long size)
+            throws IllegalArgumentException {
+        return this.shardFor(e.getType()).allocatePayload(e, size);
+    }
+
+    /**
+     * Publish a request and return a future completed with a copy of the first reply to it, see
+     * {@link EventRouter#request}. Shards share their pending request table, so the reply may be
+     * published in any shard.
+     */
+    public @NotNull CompletableFuture<@NotNull Event> request(
+            @NotNull Event e, long timeout, @NotNull TimeUnit unit)
+            throws IllegalAccessError, NoSuchElementException {
+        return this.shardFor(e.getType()).request(e, timeout, unit);
+    }
+
+    /**
+     * Publish a reply to a request received by a subscriber, see {@link EventRouter#reply}.
+     */
+    public void reply(@NotNull Event request, @NotNull Event reply)
+            throws IllegalAccessError, NoSuchElementException {
+        reply.setReplyTo(request);
+        this.publish(reply);
+    }
+
+    /**
+     * Return the journal of the shard of an event type, null if events are not journaled.
+     */
+    public @Nullable EventJournal getJournal(@NotNull String type) {
+        return this.shardFor(type).getJournal();
+    }
+
+    @Override
+    public long getPublishedEvents() {
+        long published = 0;
+        for (EventRouter shard : this.shards) published += shard.getPublishedEvents();
+        return published;
+    }
+
+    @Override
+    public long getDispatchedEvents() {
+        long dispatched = 0;
+        for (EventRouter shard : this.shards) dispatched += shard.getDispatchedEvents();
+        return dispatched;
+    }
+
+    @Override
+    public long getRingOccupancy() {
+        long occupancy = 0;
+        for (EventRouter shard : this.shards) occupancy += shard.getRingOccupancy();
+        return occupancy;
+    }
+
+    /**
+     * Return the number of slots of all ring buffers.
+     */
+    @Override
+    public int getBufferSize() {
+        int size = 0;
+        for (EventRouter shard : this.shards) size += shard.getBufferSize();
+        return size;
+    }
+
+    /**
+     * Return the number of dispatched events of each registered event type, see {@link
+     * EventRouter#getDispatchCounts()}. Counts of wildcard channels are summed over shards.
+     */
+    @Override
+    public @NotNull Map<@NotNull String, @NotNull Long> getDispatchCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (EventRouter shard : this.shards)
+            shard.getDispatchCounts().forEach((type, n) -> counts.merge(type, n, Long::sum));
+        return counts;
+    }
+
+    /**
+     * Return the histogram of latencies from publish to dispatch of an event type, see {@link
+     * EventRouter#getDispatchLatency(String)}.
+     */
+    public @NotNull LatencyHistogram getDispatchLatency(@NotNull String type)
+            throws NoSuchElementException, IllegalStateException {
+        return this.shardFor(type).getDispatchLatency(type);
+    }
+
+    /**
+     * Return the histogram of latencies from publish to the end of processing of an event type, see
+     * {@link EventRouter#getEndToEndLatency(String)}.
+     */
+    public @NotNull LatencyHistogram getEndToEndLatency(@NotNull String type)
+            throws NoSuchElementException, IllegalStateException {
+        return this.shardFor(type).getEndToEndLatency(type);
+    }
+
+    /**
+     * Return the number of publishes that gave up because a ring buffer was full.
+     */
+    @Override
+    public long getRejectedPublishes() {
+        long rejected = 0;
+        for (EventRouter shard : this.shards) rejected += shard.getRejectedPublishes();
+        return rejected;
+    }
+
+    /**
+     * Return the number of publishes that had to wait for a ring buffer to have room.
+     */
+    @Override
+    public long getDelayedPublishes() {
+        long delayed = 0;
+        for (EventRouter shard : this.shards) delayed += shard.getDelayedPublishes();
+        return delayed;
+    }
+
+    /**
+     * Publish an event by filling a ring buffer slot of the shard of its type in place, see {@link
+     * EventRouter#publish(EventType, EventTranslator)}.
+     */
+    public void publish(@NotNull EventType type, @NotNull EventTranslator<@NotNull Event> translator)
+            throws NoSuchElementException {
+        this.shardFor(type.getName()).publish(type, translator);
+    }
+
+    /**
+     * Same as {@link #publish(EventType, EventTranslator)} with an argument passed to the translator.
+     */
+    public <A> void publish(
+            @NotNull EventType type, @NotNull EventTranslatorOneArg<@NotNull Event, A> translator, A arg)
+            throws NoSuchElementException {
+        this.shardFor(type.getName()).publish(type, translator, arg);
+    }
+
+    /**
+     * Same as {@link #publish(EventType, EventTranslator)} with two arguments passed to the
+     * translator.
+     */
+    public <A, B> void publish(
+            @NotNull EventType type,
+            @NotNull EventTranslatorTwoArg<@NotNull Event, A, B> translator,
+            A arg0,
+            B arg1)
+            throws NoSuchElementException {
+        this.shardFor(type.getName()).publish(type, translator, arg0, arg1);
+    }
+
+    /**
+     * Publish several events at once. Events are grouped by shard, keeping their order, and each
+     * group is published as a batch.
+     */
+    public void publishBatch(@NotNull Event @NotNull [] events)
+            throws IllegalAccessError, NoSuchElementException {
+        this.publishBatch(Arrays.asList(events));
+    }
+
+    /**
+     * Publish several events at once. Events are grouped by shard, keeping their order, and each
+     * group is published as a batch.
+     */
+    public void publishBatch(@NotNull List<@NotNull Event> events)
+            throws IllegalAccessError, NoSuchElementException {
+        List<List<Event>> groups = new ArrayList<>(this.shards.length);
+        for (int i = 0; i < this.shards.length; i++) groups.add(new ArrayList<>());
+        for (Event e : events) groups.get(this.shardOf(e.getType())).add(e);
+        for (int i = 0; i < this.shards.length; i++) {
+            if (!groups.get(i).isEmpty()) this.shards[i].publishBatch(groups.get(i));
+        }
+    }
+
+    /**
+     * Publish one event per argument in the shard of the event type, see {@link
+     * EventRouter#publishBatch(EventType, EventTranslatorOneArg, Object[])}.
+     */
+    public <A> void publishBatch(
+            @NotNull EventType type,
+            @NotNull EventTranslatorOneArg<@NotNull Event, A> translator,
+            A @NotNull [] args)
+            throws NoSuchElementException {
+        this.shardFor(type.getName()).publishBatch(type, translator, args);
+    }
+
+    /**
+     * Return a future completed once every event published before this call, in any shard, has been
+     * processed by every subscriber it was delivered to, see {@link EventRouter#flush()}.
+     */
+    public @NotNull CompletableFuture<Void> flush() {
+        CompletableFuture<?>[] flushes = new CompletableFuture<?>[this.shards.length];
+        for (int i = 0; i < this.shards.length; i++) flushes[i] = this.shards[i].flush();
+        return CompletableFuture.allOf(flushes);
+    }
+
+    /**
+     * Blocks until all published events have been dispatched and processed in every shard.
+     *
+     * @return whether it timed out
+     */
+    public boolean awaitEmptyTimedOut(long timeout, @NotNull TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (EventRouter shard : this.shards) {
+            long remaining = deadline - System.nanoTime();
+            if (shard.awaitEmptyTimedOut(Math.max(remaining, 0), TimeUnit.NANOSECONDS)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Shut every shard down, then fail the requests still waiting for a reply. Every shard is shut
+     * down even if some fail to, the first failure is rethrown with the others suppressed.
+     */
+    @Override
+    public void close() throws TimeoutException, InterruptedException {
+        Exception failure = null;
+        for (EventRouter shard : this.shards) {
+            try {
+                shard.shutdown();
+            } catch (TimeoutException | InterruptedException | RuntimeException ex) {
+                if (failure == null) failure = ex;
+                else failure.addSuppressed(ex);
+            }
+        }
+        this.requests.fail(new IllegalStateException("Router closed"));
+        if (failure instanceof TimeoutException ex) throw ex;
+        if (failure instanceof InterruptedException ex) throw ex;
+        if (failure instanceof RuntimeException ex) throw ex;
+    }
+}
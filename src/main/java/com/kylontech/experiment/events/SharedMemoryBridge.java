@@ -0,0 +1,412 @@
+package com.kylontech.experiment.events;
+
+import com.lmax.disruptor.dsl.ProducerType;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+/**
+ * Bridge between the routers of several processes of a host, through a ring file mapped in memory.
+ * Each bridge opened on the same file writes the events dispatched by its router to the ring, and
+ * publishes in its router the events written by the other bridges, so that subscribers of any of
+ * these routers receive the events published in all of them, within the bridges' scope.
+ *
+ * <p>The ring is a broadcast ring of fixed size slots. Writers encode events with {@link EventCodec}
+ * aside, then claim slots with a counter in the file. Each slot is a seqlock, marked as being
+ * written while the event is copied in, then as holding its sequence. Readers never hold writers
+ * back: a reader that a writer laps skips to the newest events and counts the others as dropped. A
+ * writer only claims the next slot once its previous writer committed, spinning for at most {@link
+ * #SPIN_NANOS} and dropping its event otherwise, so the router's dispatcher is never held up. It
+ * takes the slot over once that writer has stalled for more than {@link #TAKEOVER_NANOS}, e.g.
+ * because its process died.
+ *
+ * <p>The seqlock word is also the owner of the slot: a writer only copies its event after setting
+ * it with a CAS, and commits with a CAS from the value it set, which fails once the slot is taken
+ * over. A writer stalled while copying may still write to a slot it lost, so the slot holds the
+ * sequence and a CRC32C of the event, and readers drop slots that do not match them.
+ *
+ * <p>Bridged routers must be built with {@link ProducerType#MULTI}, the default, since a bridge
+ * publishes from its own thread, and bridges must be closed before their router.
+ */
+public final class SharedMemoryBridge extends Bridge {
+
+    /**
+     * Default number of ring slots.
+     */
+    public static final int SLOTS = 4096;
+
+    /**
+     * Default slot size. Events encoded in more than the slot size minus 32 bytes are dropped.
+     */
+    public static final int SLOT_SIZE = 4096;
+
+    /**
+     * Time after which a writer takes over a slot whose previous writer is still writing, and a
+     * reader skips such a slot. This is long enough for a live writer to be descheduled, paused by
+     * a garbage collection or loading classes.
+     */
+    static final long TAKEOVER_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Time a writer spins on the router's dispatcher thread for the previous writer of the next slot
+     * to commit, before dropping its event.
+     */
+    static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+
+    private static final int MAGIC = 0x4B455652;
+    private static final int LAYOUT = 2;
+
+    /**
+     * File header: magic, layout, number and size of slots, counter of bridge ids, and the counter of
+     * claimed slots on its own cache line.
+     */
+    private static final int HEADER = 128;
+    private static final int LAYOUT_OFFSET = 4;
+    private static final int SLOTS_OFFSET = 8;
+    private static final int SLOT_SIZE_OFFSET = 12;
+    private static final int IDS_OFFSET = 16;
+    private static final int TAIL_OFFSET = 64;
+
+    /**
+     * Slot header: seqlock word, sequence, id of the writing bridge, length of the event and CRC32C of
+     * the header fields before it and of the event.
+     */
+    private static final int SLOT_HEADER = 32;
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int ORIGIN_OFFSET = 16;
+    private static final int LENGTH_OFFSET = 20;
+    private static final int CHECKSUM_OFFSET = 24;
+    private static final VarHandle LONG =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final @NotNull MappedByteBuffer buffer;
+    private final @NotNull MemorySegment mapped;
+    private final int slotSize;
+    private final int slots;
+    private final int mask;
+
+    /**
+     * Id of this bridge in the ring, marking the events it writes so that it skips them.
+     */
+    private final int id;
+
+    /**
+     * State of the writer, the router's dispatcher thread: the slot is prepared aside, then copied.
+     * The sequence whose slot was last found still being written is kept with the time it was first
+     * found, to take the slot over once its writer has stalled for long enough.
+     */
+    private final @NotNull EventCodec.Encoder encoder = EventCodec.encoder();
+    private final @NotNull ByteBuffer staged;
+    private final @NotNull MemorySegment stagedSegment;
+    private final @NotNull CRC32C writerCrc = new CRC32C();
+    private long blocked = -1L;
+    private long blockedSince = 0L;
+
+    /**
+     * State of the reader, the poller thread: slots are copied, then checked and decoded.
+     */
+    private final @NotNull EventCodec.Decoder decoder = EventCodec.decoder();
+    private final @NotNull ByteBuffer copied;
+    private final @NotNull MemorySegment copiedSegment;
+    private final @NotNull CRC32C readerCrc = new CRC32C();
+    private final @NotNull Event received = new Event();
+    private long next;
+    private long stalledSince = 0L;
+
+    private final @NotNull Thread poller;
+    private volatile boolean running = true;
+
+    private SharedMemoryBridge(
+            @NotNull EventRouter router,
+            @NotNull Scope scope,
+            @NotNull Path file,
+            @NotNull MappedByteBuffer buffer) {
+        super(router, scope);
+        this.buffer = buffer;
+        this.slots = buffer.getInt(SLOTS_OFFSET);
+        this.slotSize = buffer.getInt(SLOT_SIZE_OFFSET);
+        this.mask = this.slots - 1;
+        this.mapped = MemorySegment.ofBuffer(buffer);
+        this.staged = ByteBuffer.allocate(this.slotSize).order(ByteOrder.LITTLE_ENDIAN);
+        this.stagedSegment = MemorySegment.ofBuffer(this.staged);
+        this.copied = ByteBuffer.allocate(this.slotSize).order(ByteOrder.LITTLE_ENDIAN);
+        this.copiedSegment = MemorySegment.ofBuffer(this.copied);
+        this.id = (int) (long) LONG.getAndAdd(buffer, IDS_OFFSET, 1L) + 1;
+        this.next = (long) LONG.getVolatile(buffer, TAIL_OFFSET);
+        this.poller = new Thread(this::run, "SharedMemoryBridge " + file.getFileName());
+        this.poller.setDaemon(true);
+        this.poller.start();
+        router.attach(this);
+    }
+
+    /**
+     * Bridge a router to the ring of a file, with the default sizes and {@link Scope#SCOPE_PRIVATE},
+     * see {@link #open(EventRouter, Path, Scope, int, int)}.
+     */
+    public static @NotNull SharedMemoryBridge open(@NotNull EventRouter router, @NotNull Path file)
+            throws IOException {
+        return open(router, file, Scope.SCOPE_PRIVATE, SLOTS, SLOT_SIZE);
+    }
+
+    /**
+     * Bridge a router to the ring of a file, created if it does not exist. The bridge receives the
+     * events written after it is opened.
+     *
+     * @param scope    broadest scope of the events forwarded and received
+     * @param slots    number of ring slots, a power of 2, ignored if the ring exists
+     * @param slotSize size of a ring slot, a multiple of 8 of at least 64, ignored if the ring exists
+     * @throws IOException           if the file cannot be mapped or is not a ring
+     * @throws IllegalStateException if the router is single producer, see {@link
+     *                               EventRouterBuilder#producerType}
+     */
+    public static @NotNull SharedMemoryBridge open(
+            @NotNull EventRouter router, @NotNull Path file, @NotNull Scope scope, int slots, int slotSize)
+            throws IOException, IllegalArgumentException, IllegalStateException {
+        router.checkMultiProducer("Bridges");
+        if (slots <= 0 || Integer.bitCount(slots) != 1)
+            throw new IllegalArgumentException("Number of slots must be a power of 2");
+        if (slotSize < 64 || slotSize % 8 != 0)
+            throw new IllegalArgumentException("Slot size must be a multiple of 8 of at least 64");
+        if (HEADER + (long) slots * slotSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Ring must be smaller than 2GB");
+        MappedByteBuffer buffer;
+        Set<StandardOpenOption> options =
+                EnumSet.of(StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try (FileChannel channel = FileChannel.open(file, options);
+                FileLock _ = channel.lock()) {
+            if (channel.size() == 0) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) slots * slotSize);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(LAYOUT_OFFSET, LAYOUT);
+                buffer.putInt(SLOTS_OFFSET, slots);
+                buffer.putInt(SLOT_SIZE_OFFSET, slotSize);
+                buffer.putInt(0, MAGIC);
+            } else {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                if (channel.size() < HEADER
+                        || buffer.getInt(0) != MAGIC
+                        || buffer.getInt(LAYOUT_OFFSET) != LAYOUT)
+                    throw new IOException("Not an event ring: " + file);
+                long size = HEADER + (long) buffer.getInt(SLOTS_OFFSET) * buffer.getInt(SLOT_SIZE_OFFSET);
+                if (size != channel.size()) throw new IOException("Event ring of an invalid size: " + file);
+            }
+        }
+        return new SharedMemoryBridge(router, scope, file, buffer);
+    }
+
+    /**
+     * Write an event to the next slot of the ring, from the router's dispatcher thread.
+     */
+    @Override
+    void forward(@NotNull Event e) {
+        if (this.encoder.maxSize(e) > this.slotSize - SLOT_HEADER) {
+            this.droppedEvents.increment();
+            return;
+        }
+        this.encoder.reset();
+        int length = (int) this.encoder.encode(e, this.stagedSegment, SLOT_HEADER) - SLOT_HEADER;
+        long sequence = this.claim();
+        if (sequence < 0) {
+            this.droppedEvents.increment();
+            return;
+        }
+        ByteBuffer staged = this.staged;
+        staged.putLong(SEQUENCE_OFFSET, sequence);
+        staged.putInt(ORIGIN_OFFSET, this.id);
+        staged.putInt(LENGTH_OFFSET, length);
+        staged.putInt(CHECKSUM_OFFSET, checksum(this.writerCrc, staged, length));
+        int slot = this.slotOffset(sequence);
+        if (!this.acquire(slot, sequence)) {
+            this.droppedEvents.increment();
+            return;
+        }
+        MemorySegment.copy(
+                this.stagedSegment, SEQUENCE_OFFSET, this.mapped, slot + SEQUENCE_OFFSET,
+                SLOT_HEADER - SEQUENCE_OFFSET + length);
+        if (LONG.compareAndSet(this.buffer, slot, writing(sequence), committed(sequence)))
+            this.forwardedEvents.increment();
+        else
+            this.droppedEvents.increment();
+    }
+
+    /**
+     * Claim the next sequence once the previous writer of its slot has committed, spinning for at most
+     * {@link #SPIN_NANOS}. A previous writer found stalled for more than {@link #TAKEOVER_NANOS}, over
+     * any number of calls, is taken over.
+     *
+     * @return the claimed sequence, -1 if its slot is still being written
+     */
+    private long claim() {
+        long deadline = 0L;
+        while (true) {
+            long sequence = (long) LONG.getVolatile(this.buffer, TAIL_OFFSET);
+            long word = (long) LONG.getVolatile(this.buffer, this.slotOffset(sequence));
+            if (word < Math.max(committed(sequence - this.slots), 0L)) {
+                long now = System.nanoTime();
+                if (this.blocked != sequence) {
+                    this.blocked = sequence;
+                    this.blockedSince = now;
+                }
+                if (now - this.blockedSince < TAKEOVER_NANOS) {
+                    if (deadline == 0L) deadline = now + SPIN_NANOS;
+                    else if (now - deadline >= 0) return -1L;
+                    Thread.onSpinWait();
+                    continue;
+                }
+            }
+            if (LONG.compareAndSet(this.buffer, TAIL_OFFSET, sequence, sequence + 1)) return sequence;
+        }
+    }
+
+    /**
+     * Take a claimed slot from its previous writer, which committed or stalled.
+     *
+     * @return false if a later writer took the slot over
+     */
+    private boolean acquire(int slot, long sequence) {
+        long writing = writing(sequence);
+        while (true) {
+            long word = (long) LONG.getVolatile(this.buffer, slot);
+            if (word >= writing) return false;
+            if (LONG.compareAndSet(this.buffer, slot, word, writing)) return true;
+        }
+    }
+
+    /**
+     * Poll the ring until closed, spinning, then yielding, then parking while it is idle.
+     */
+    private void run() {
+        int idle = 0;
+        while (this.running) {
+            if (this.poll()) idle = 0;
+            else if (++idle < 100) Thread.onSpinWait();
+            else if (idle < 200) Thread.yield();
+            else LockSupport.parkNanos(this, 50_000L);
+        }
+    }
+
+    /**
+     * Read the next slot, and publish its event in the router unless this bridge wrote it.
+     *
+     * @return false if the next slot is not written yet
+     */
+    private boolean poll() {
+        int slot = this.slotOffset(this.next);
+        long committed = committed(this.next);
+        long word = (long) LONG.getAcquire(this.buffer, slot);
+        if (word == committed) {
+            int length = this.buffer.getInt(slot + LENGTH_OFFSET);
+            boolean copied = length >= 0 && length <= this.slotSize - SLOT_HEADER;
+            if (copied) {
+                MemorySegment.copy(
+                        this.mapped, slot + SEQUENCE_OFFSET, this.copiedSegment, SEQUENCE_OFFSET,
+                        SLOT_HEADER - SEQUENCE_OFFSET + length);
+            }
+            VarHandle.loadLoadFence();
+            if ((long) LONG.getVolatile(this.buffer, slot) == committed) {
+                this.stalledSince = 0L;
+                this.read(copied ? length : -1);
+                this.next++;
+                return true;
+            }
+        } else if (word < committed) {
+            // Not written yet, skipped if claimed by a writer that stalls
+            if ((long) LONG.getVolatile(this.buffer, TAIL_OFFSET) <= this.next) return false;
+            long now = System.nanoTime();
+            if (this.stalledSince == 0L) this.stalledSince = now;
+            if (now - this.stalledSince < TAKEOVER_NANOS) return false;
+            this.next++;
+            this.stalledSince = 0L;
+            this.droppedEvents.increment();
+            return true;
+        }
+        // Lapped by writers, skip to the newest events
+        long tail = (long) LONG.getVolatile(this.buffer, TAIL_OFFSET);
+        this.droppedEvents.add(tail - this.next);
+        this.next = tail;
+        this.stalledSince = 0L;
+        return true;
+    }
+
+    /**
+     * Check a copied slot, and publish its event unless this bridge wrote it. Slots that do not hold
+     * the expected sequence and checksum, e.g. written by a writer that lost them, are dropped.
+     *
+     * @param length length of the copied event, -1 if it was invalid
+     */
+    private void read(int length) {
+        ByteBuffer copied = this.copied;
+        if (length < 0
+                || copied.getLong(SEQUENCE_OFFSET) != this.next
+                || copied.getInt(CHECKSUM_OFFSET) != checksum(this.readerCrc, copied, length)) {
+            this.droppedEvents.increment();
+            return;
+        }
+        if (copied.getInt(ORIGIN_OFFSET) == this.id) return;
+        this.decoder.reset();
+        try {
+            this.decoder.decode(this.copiedSegment, SLOT_HEADER, this.received);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException _) {
+            this.droppedEvents.increment();
+            return;
+        }
+        this.receive(this.received, true);
+    }
+
+    /**
+     * Return the CRC32C of the header fields of a slot before the checksum and of its event.
+     */
+    private static int checksum(@NotNull CRC32C crc, @NotNull ByteBuffer slot, int length) {
+        crc.reset();
+        crc.update(slot.array(), SEQUENCE_OFFSET, CHECKSUM_OFFSET - SEQUENCE_OFFSET);
+        crc.update(slot.array(), SLOT_HEADER, length);
+        return (int) crc.getValue();
+    }
+
+    private int slotOffset(long sequence) {
+        return HEADER + (int) (sequence & this.mask) * this.slotSize;
+    }
+
+    /**
+     * Seqlock words of a slot while the event of a sequence is written, and once it is.
+     */
+    private static long writing(long sequence) {
+        return 2 * sequence + 1;
+    }
+
+    private static long committed(long sequence) {
+        return 2 * sequence + 2;
+    }
+
+    /**
+     * Detach the bridge from its router and stop reading the ring. The mapping of the ring is released
+     * once the bridge is unreachable.
+     */
+    @Override
+    public void close() {
+        this.router.detach(this);
+        this.running = false;
+        LockSupport.unpark(this.poller);
+        try {
+            this.poller.join();
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
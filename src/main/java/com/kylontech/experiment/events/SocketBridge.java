@@ -0,0 +1,372 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bridge between routers of different hosts over a TCP connection, for events of scope {@link
+ * Scope#SCOPE_FEDERATED} or narrower, which trusted servers share. Both ends of the connection run
+ * a bridge, so events cross it both ways.
+ *
+ * <p>The router's dispatcher encodes the events of each batch it dispatches into a frame, with a
+ * {@link EventCodec} stream spanning the connection, and hands the frame to the bridge's I/O thread
+ * at the end of the batch, so the connection costs a few syscalls per batch rather than per event.
+ * Frames are sent in order from a bounded set of {@link #FRAMES} buffers of {@link #FRAME_SIZE}
+ * bytes. While the remote router does not take events fast enough, its bridge stops reading and
+ * frames wait to be sent. Once every buffer is waiting, the dispatcher waits for one to be sent,
+ * which holds this router's producers back, for at most the bridge's maximum wait. It drops the
+ * events it would forward and counts them once the wait times out, or right away while this
+ * bridge stopped reading because this router's ring buffer is full: only the waiting dispatcher
+ * could make room in it, and the remote router may itself be waiting for this router to take its
+ * events, so two routers flooding each other never wait for each other.
+ *
+ * <p>Once the connection is closed, by either end or by an I/O error, events are dropped.
+ */
+public final class SocketBridge extends Bridge {
+
+    /**
+     * Size of a frame, the most events encoded in one batch. Events encoded in more than the frame
+     * size minus 8 bytes are dropped.
+     */
+    public static final int FRAME_SIZE = 256 * 1024;
+
+    /**
+     * Number of frames being filled or waiting to be sent.
+     */
+    public static final int FRAMES = 4;
+
+    /**
+     * Default maximum time the dispatcher waits for a frame to be sent.
+     */
+    public static final long MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Time between checks of the I/O thread while the dispatcher waits for a frame.
+     */
+    private static final long CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Frame header: length of the frame after the length, and number of events.
+     */
+    private static final int FRAME_HEADER = 2 * Integer.BYTES;
+
+    private final @NotNull SocketChannel channel;
+    private final @NotNull Selector selector;
+    private final @NotNull SelectionKey key;
+    private final @NotNull BlockingQueue<@NotNull ByteBuffer> free = new ArrayBlockingQueue<>(FRAMES);
+    private final @NotNull BlockingQueue<@NotNull ByteBuffer> filled = new ArrayBlockingQueue<>(FRAMES);
+    private final long maxWaitNanos;
+
+    /**
+     * State of the writer, the router's dispatcher thread: frame being filled and its number of
+     * events.
+     */
+    private final @NotNull EventCodec.Encoder encoder = EventCodec.encoder();
+    private @Nullable ByteBuffer frame;
+    private int count;
+
+    /**
+     * State of the I/O thread: frame being sent, received bytes, number of events left to publish
+     * in the current received frame, and whether the last decoded one still is.
+     */
+    private final @NotNull EventCodec.Decoder decoder = EventCodec.decoder();
+    private final @NotNull ByteBuffer inbound = ByteBuffer.allocateDirect(FRAME_SIZE);
+    private final @NotNull Event received = new Event();
+    private @Nullable ByteBuffer sending;
+    private int remaining;
+    private boolean decoded;
+
+    private final @NotNull Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean connected = true;
+
+    /**
+     * Whether the I/O thread stopped reading because the router's ring buffer is full.
+     */
+    private volatile boolean stalled = false;
+
+    private SocketBridge(
+            @NotNull EventRouter router,
+            @NotNull Scope scope,
+            @NotNull SocketChannel channel,
+            long maxWaitNanos)
+            throws IOException {
+        super(router, scope);
+        this.channel = channel;
+        this.maxWaitNanos = maxWaitNanos;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.selector = Selector.open();
+        this.key = channel.register(this.selector, SelectionKey.OP_READ);
+        for (int i = 0; i < FRAMES; i++) this.free.add(ByteBuffer.allocateDirect(FRAME_SIZE));
+        this.thread = new Thread(this::run, "SocketBridge " + channel.getRemoteAddress());
+        this.thread.setDaemon(true);
+        this.thread.start();
+        router.attach(this);
+    }
+
+    /**
+     * Connect a router to the bridge of a remote router, waiting at most {@link #MAX_WAIT_NANOS} for
+     * a frame to be sent, see {@link #connect(EventRouter, SocketAddress, Scope, long, TimeUnit)}.
+     */
+    public static @NotNull SocketBridge connect(
+            @NotNull EventRouter router, @NotNull SocketAddress remote, @NotNull Scope scope)
+            throws IOException, IllegalArgumentException, IllegalStateException {
+        return connect(router, remote, scope, MAX_WAIT_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Connect a router to the bridge of a remote router, see {@link #accept(EventRouter,
+     * ServerSocketChannel, Scope, long, TimeUnit)}.
+     *
+     * @param scope   broadest scope of the events forwarded and received, at most {@link
+     *                Scope#SCOPE_FEDERATED}
+     * @param maxWait maximum time the dispatcher waits for a frame to be sent before dropping an
+     *                event, 0 to drop it right away
+     */
+    public static @NotNull SocketBridge connect(
+            @NotNull EventRouter router,
+            @NotNull SocketAddress remote,
+            @NotNull Scope scope,
+            long maxWait,
+            @NotNull TimeUnit unit)
+            throws IOException, IllegalArgumentException, IllegalStateException {
+        checkOptions(router, scope, maxWait);
+        SocketChannel channel = SocketChannel.open(remote);
+        try {
+            return new SocketBridge(router, scope, channel, unit.toNanos(maxWait));
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Accept a connection from the bridge of a remote router on a server channel, waiting at most
+     * {@link #MAX_WAIT_NANOS} for a frame to be sent, see {@link #accept(EventRouter,
+     * ServerSocketChannel, Scope, long, TimeUnit)}.
+     */
+    public static @Nullable SocketBridge accept(
+            @NotNull EventRouter router, @NotNull ServerSocketChannel server, @NotNull Scope scope)
+            throws IOException, IllegalArgumentException, IllegalStateException {
+        return accept(router, server, scope, MAX_WAIT_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Accept a connection from the bridge of a remote router on a server channel, waiting for it if
+     * the server channel is blocking.
+     *
+     * @param scope   broadest scope of the events forwarded and received, at most {@link
+     *                Scope#SCOPE_FEDERATED}
+     * @param maxWait maximum time the dispatcher waits for a frame to be sent before dropping an
+     *                event, 0 to drop it right away
+     * @return the bridge, or null if the server channel is non-blocking and no connection is pending
+     */
+    public static @Nullable SocketBridge accept(
+            @NotNull EventRouter router,
+            @NotNull ServerSocketChannel server,
+            @NotNull Scope scope,
+            long maxWait,
+            @NotNull TimeUnit unit)
+            throws IOException, IllegalArgumentException, IllegalStateException {
+        checkOptions(router, scope, maxWait);
+        SocketChannel channel = server.accept();
+        if (channel == null) return null;
+        try {
+            return new SocketBridge(router, scope, channel, unit.toNanos(maxWait));
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private static void checkOptions(@NotNull EventRouter router, @NotNull Scope scope, long maxWait)
+            throws IllegalArgumentException, IllegalStateException {
+        router.checkMultiProducer("Bridges");
+        if (scope.compareTo(Scope.SCOPE_FEDERATED) > 0)
+            throw new IllegalArgumentException("Only federated or public events may leave the host");
+        if (maxWait < 0) throw new IllegalArgumentException("Maximum wait must not be negative");
+    }
+
+    /**
+     * Return whether the connection is open.
+     */
+    public boolean isConnected() {
+        return this.connected;
+    }
+
+    /**
+     * Encode an event in the current frame, from the router's dispatcher thread. The event is dropped
+     * if no frame is sent in time, see {@link #awaitFrame()}.
+     */
+    @Override
+    void forward(@NotNull Event e) {
+        long size = this.encoder.maxSize(e);
+        if (!this.connected || size > FRAME_SIZE - FRAME_HEADER) {
+            this.droppedEvents.increment();
+            return;
+        }
+        ByteBuffer frame = this.frame;
+        if (frame != null && frame.remaining() < size) {
+            this.send();
+            frame = null;
+        }
+        if (frame == null) {
+            frame = this.free.poll();
+            if (frame == null) frame = this.awaitFrame();
+            if (frame == null) {
+                this.droppedEvents.increment();
+                return;
+            }
+            frame.clear().position(FRAME_HEADER);
+            this.frame = frame;
+            this.count = 0;
+        }
+        this.encoder.encode(e, frame);
+        this.count++;
+        this.forwardedEvents.increment();
+    }
+
+    /**
+     * Wait for a frame to be sent, for at most the maximum wait and while the I/O thread reads: once
+     * it stops because the router's ring buffer is full, only the waiting dispatcher could make room.
+     *
+     * @return the free frame, or null if none was sent in time
+     */
+    private @Nullable ByteBuffer awaitFrame() {
+        long deadline = System.nanoTime() + this.maxWaitNanos;
+        try {
+            while (this.connected && !this.stalled) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) return null;
+                ByteBuffer frame = this.free.poll(Math.min(left, CHECK_NANOS), TimeUnit.NANOSECONDS);
+                if (frame != null) return frame;
+            }
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    @Override
+    void endOfBatch() {
+        if (this.frame != null) this.send();
+    }
+
+    /**
+     * Hand the current frame to the I/O thread.
+     */
+    private void send() {
+        ByteBuffer frame = this.frame;
+        this.frame = null;
+        frame.putInt(0, frame.position() - Integer.BYTES);
+        frame.putInt(Integer.BYTES, this.count);
+        this.filled.add(frame.flip());
+        this.selector.wakeup();
+    }
+
+    /**
+     * Send frames and publish received events until closed.
+     */
+    private void run() {
+        try (this.selector; this.channel) {
+            while (this.running) {
+                boolean blocked = !this.publish();
+                this.stalled = blocked;
+                boolean writing = this.write();
+                int ops = (writing ? SelectionKey.OP_WRITE : 0)
+                        | (blocked || !this.inbound.hasRemaining() ? 0 : SelectionKey.OP_READ);
+                this.key.interestOps(ops);
+                // Retry publishing soon while the router's ring buffer is full
+                int selected = blocked ? this.selector.select(1) : this.selector.select();
+                this.selector.selectedKeys().clear();
+                if (selected > 0 && this.key.isReadable() && this.channel.read(this.inbound) < 0) return;
+            }
+        } catch (IOException _) {
+            // The connection is lost, see isConnected()
+        } finally {
+            this.connected = false;
+            this.router.detach(this);
+        }
+    }
+
+    /**
+     * Write the frames handed by the dispatcher, and return them once sent.
+     *
+     * @return whether a frame is still being sent
+     */
+    private boolean write() throws IOException {
+        while (true) {
+            if (this.sending == null) this.sending = this.filled.poll();
+            ByteBuffer frame = this.sending;
+            if (frame == null) return false;
+            this.channel.write(frame);
+            if (frame.hasRemaining()) return true;
+            this.sending = null;
+            this.free.add(frame);
+        }
+    }
+
+    /**
+     * Decode and publish the events of the received frames.
+     *
+     * @return false if the router's ring buffer is full
+     */
+    private boolean publish() throws IOException {
+        ByteBuffer inbound = this.inbound.flip();
+        try {
+            while (true) {
+                if (this.remaining == 0) {
+                    if (inbound.remaining() < FRAME_HEADER) return true;
+                    int length = inbound.getInt(inbound.position());
+                    if (length < Integer.BYTES || length > FRAME_SIZE - Integer.BYTES)
+                        throw new IOException("Invalid frame length " + length);
+                    if (inbound.remaining() < Integer.BYTES + length) return true;
+                    inbound.getInt();
+                    this.remaining = inbound.getInt();
+                }
+                for (; this.remaining > 0; this.remaining--) {
+                    if (!this.decoded) {
+                        this.decoder.decode(inbound, this.received);
+                        this.decoded = true;
+                    }
+                    if (!this.receive(this.received, false)) return false;
+                    this.decoded = false;
+                }
+            }
+        } catch (IllegalArgumentException | BufferUnderflowException ex) {
+            throw new IOException("Malformed frame", ex);
+        } finally {
+            inbound.compact();
+        }
+    }
+
+    /**
+     * Close the connection and detach the bridge from its router. Frames not sent yet are lost.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        this.connected = false;
+        this.router.detach(this);
+        this.selector.wakeup();
+        try {
+            this.thread.join();
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,22 +1,82 @@
 package com.kylontech.experiment.events;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import javax.management.ObjectName;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A subscriber listens to a given number of event types in his scope's range.
  */
-public abstract class Subscriber implements AutoCloseable {
+public abstract class Subscriber implements AutoCloseable, SubscriberMXBean {
 
     /***
-     * This executor ensures events are processed one at a time, in the order they are received,
-     * without blocking the event router. */
-    @NotNull
-    private final ExecutorService exec = Executors.newSingleThreadExecutor();
+     * Each mailbox, or lane, ensures its events are processed one at a time, in the order they are
+     * received, without blocking the event router. Events are spread over lanes by partition key. */
+    private final @NotNull Mailbox @NotNull [] lanes;
+
+    private final @NotNull AtomicBoolean quarantined = new AtomicBoolean(false);
+    private final @NotNull LongAdder droppedEvents = new LongAdder();
+    private final @NotNull LongAdder conflatedEvents = new LongAdder();
+    private final @NotNull LongAdder quarantines = new LongAdder();
+    private final @Nullable ObjectName objectName;
+
+    /**
+     * Latencies from dispatch to the start of processing, of processing, and from publish to the end
+     * of processing, null unless tracked.
+     */
+    final @Nullable LatencyHistogram mailboxLatency;
+    final @Nullable LatencyHistogram processingLatency;
+    final @Nullable LatencyHistogram endToEndLatency;
+
+    /**
+     * Create a subscriber drained by the shared runtime.
+     */
+    protected Subscriber() {
+        this(options());
+    }
+
+    /**
+     * Create a subscriber drained by the given runtime.
+     */
+    protected Subscriber(@NotNull SubscriberRuntime runtime) {
+        this(options().runtime(runtime));
+    }
+
+    /**
+     * Create a subscriber whose events are spread over several ordered lanes by partition key, see
+     * {@link Event#getPartitionKey()}. Lanes are drained concurrently by the given runtime, events of
+     * a same key are still processed one at a time and in order, but {@link #processEvent} must be
+     * thread-safe if there is more than one lane.
+     */
+    protected Subscriber(@NotNull SubscriberRuntime runtime, int lanes) throws IllegalArgumentException {
+        this(options().runtime(runtime).lanes(lanes));
+    }
+
+    /**
+     * Create a subscriber with the given options.
+     */
+    protected Subscriber(@NotNull SubscriberOptions options) {
+        this.mailboxLatency = options.latency() ? new LatencyHistogram() : null;
+        this.processingLatency = options.latency() ? new LatencyHistogram() : null;
+        this.endToEndLatency = options.latency() ? new LatencyHistogram() : null;
+        this.lanes = new Mailbox[options.lanes()];
+        for (int i = 0; i < this.lanes.length; i++) this.lanes[i] = new Mailbox(this, options);
+        String jmxName = options.jmxName();
+        this.objectName =
+                jmxName != null ? Jmx.register(this, SubscriberMXBean.class, "Subscriber", jmxName) : null;
+    }
+
+    /**
+     * Return new default subscriber options.
+     */
+    public static @NotNull SubscriberOptions options() {
+        return new SubscriberOptions();
+    }
 
     /**
      * Return the scope of this subscriber.
@@ -25,7 +85,8 @@ public abstract class Subscriber implements AutoCloseable {
     public abstract Scope scope();
 
     /**
-     * Process an event received from a router.
+     * Process an event received from a router. The event is only valid during this call, use
+     * {@link Event#copy()} to keep it.
      */
     protected abstract void processEvent(@NotNull Event e);
 
@@ -33,13 +94,153 @@ public abstract class Subscriber implements AutoCloseable {
      * Send data to this subscriber. This is fast and does not block the caller.
      */
     public final void onEvent(@NotNull Event e) {
-        this.exec.submit(() -> this.processEvent(e));
+        Mailbox[] lanes = this.lanes;
+        if (lanes.length == 1) lanes[0].enqueue(e);
+        else lanes[laneOf(e.getPartitionKey(), lanes.length)].enqueue(e);
+    }
+
+    /**
+     * Return the lane of a partition key. Keys are mixed first so sequential ids spread evenly.
+     */
+    static int laneOf(long key, int lanes) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) ((key >>> 1) % lanes);
     }
 
+    /**
+     * Return whether this subscriber is quarantined. A subscriber is quarantined when it is too slow
+     * for its slow consumer thresholds or its mailbox overflows with {@link
+     * SubscriberOptions.OverflowPolicy#DISCONNECT}. It then drops received events until reinstated.
+     */
+    @Override
+    public boolean isQuarantined() {
+        return this.quarantined.get();
+    }
+
+    /**
+     * Lift the quarantine of this subscriber, it receives events again.
+     */
+    public void reinstate() {
+        this.quarantined.set(false);
+    }
+
+    /**
+     * Return the number of events dropped by this subscriber, on overflow, while quarantined or
+     * after being closed.
+     */
+    @Override
+    public long getDroppedEvents() {
+        return this.droppedEvents.sum();
+    }
+
+    /**
+     * Return the number of events replaced by a later event of the same key before being processed,
+     * see {@link SubscriberOptions#conflate(boolean)}.
+     */
+    @Override
+    public long getConflatedEvents() {
+        return this.conflatedEvents.sum();
+    }
+
+    /**
+     * Return the number of times this subscriber was quarantined.
+     */
+    @Override
+    public long getQuarantines() {
+        return this.quarantines.sum();
+    }
+
+    /**
+     * Return the number of events waiting to be processed, over all lanes.
+     */
+    @Override
+    public int getBacklog() {
+        int backlog = 0;
+        for (Mailbox lane : this.lanes) backlog += lane.size();
+        return backlog;
+    }
+
+    /**
+     * Return the number of processed events, over all lanes.
+     */
+    @Override
+    public long getProcessedEvents() {
+        long processed = 0;
+        for (Mailbox lane : this.lanes) processed += lane.processed();
+        return processed;
+    }
+
+    /**
+     * Return the histogram of latencies from dispatch to the start of processing, which is the time
+     * events wait in the mailbox.
+     */
+    public @NotNull LatencyHistogram getMailboxLatency() throws IllegalStateException {
+        if (this.mailboxLatency == null) throw new IllegalStateException("Latency tracking is disabled");
+        return this.mailboxLatency;
+    }
+
+    /**
+     * Return the histogram of processing latencies.
+     */
+    public @NotNull LatencyHistogram getProcessingLatency() throws IllegalStateException {
+        if (this.processingLatency == null) throw new IllegalStateException("Latency tracking is disabled");
+        return this.processingLatency;
+    }
+
+    /**
+     * Return the histogram of latencies from publish to the end of processing by this subscriber,
+     * unlike {@link EventRouter#getEndToEndLatency(String)} which mixes all the subscribers of an
+     * event type.
+     */
+    public @NotNull LatencyHistogram getEndToEndLatency() throws IllegalStateException {
+        if (this.endToEndLatency == null) throw new IllegalStateException("Latency tracking is disabled");
+        return this.endToEndLatency;
+    }
+
+    /**
+     * Enqueue a barrier marker in every lane.
+     */
+    void onBarrier(@NotNull Barrier barrier) {
+        barrier.expect(this.lanes.length);
+        for (Mailbox lane : this.lanes) lane.enqueueBarrier(barrier.marker);
+    }
+
+    void quarantine() {
+        if (!this.quarantined.get() && this.quarantined.compareAndSet(false, true))
+            this.quarantines.increment();
+    }
+
+    void dropped() {
+        this.droppedEvents.increment();
+    }
+
+    void conflated() {
+        this.conflatedEvents.increment();
+    }
+
+    /**
+     * Process an event from the mailbox. Exceptions are reported to the worker's uncaught exception
+     * handler and do not stop the subscriber.
+     */
+    final void process(@NotNull Event e) {
+        try {
+            this.processEvent(e);
+        } catch (RuntimeException ex) {
+            Thread t = Thread.currentThread();
+            t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+        }
+    }
+
+    /**
+     * Stop receiving events and wait until the ones already received are processed.
+     */
     @Override
     public void close() throws TimeoutException, InterruptedException {
-        this.exec.shutdown();
-        if (!this.exec.awaitTermination(1, TimeUnit.MINUTES))
-            throw new TimeoutException("subscriber's executor thread termination timed out");
+        if (this.objectName != null) Jmx.unregister(this.objectName);
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        for (Mailbox lane : this.lanes)
+            lane.close(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
     }
 }
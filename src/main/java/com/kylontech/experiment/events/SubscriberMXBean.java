@@ -0,0 +1,38 @@
+package com.kylontech.experiment.events;
+
+/**
+ * Metrics of a subscriber, exposed over JMX when the subscriber is created with {@link
+ * SubscriberOptions#jmx(String)}.
+ */
+public interface SubscriberMXBean {
+
+    /**
+     * Return the number of events waiting to be processed, over all lanes.
+     */
+    int getBacklog();
+
+    /**
+     * Return the number of processed events.
+     */
+    long getProcessedEvents();
+
+    /**
+     * Return the number of dropped events.
+     */
+    long getDroppedEvents();
+
+    /**
+     * Return the number of events replaced by a later event of the same key before being processed.
+     */
+    long getConflatedEvents();
+
+    /**
+     * Return the number of times the subscriber was quarantined.
+     */
+    long getQuarantines();
+
+    /**
+     * Return whether the subscriber is quarantined.
+     */
+    boolean isQuarantined();
+}
@@ -0,0 +1,168 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options of a subscriber: the runtime draining it, its lanes, the bound of its mailboxes and how
+ * slow consumers are isolated. By default a subscriber has a single unbounded lane on the shared
+ * runtime and is never quarantined.
+ */
+public class SubscriberOptions {
+
+    /**
+     * What a mailbox does with an event received while it is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Wait until the mailbox has room. This slows the router down to the pace of the subscriber,
+         * and with it all other subscribers of the router.
+         */
+        BLOCK,
+
+        /**
+         * Drop the received event.
+         */
+        DROP_NEWEST,
+
+        /**
+         * Drop the oldest event waiting in the mailbox to make room for the received one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Drop the received event and quarantine the subscriber, see {@link Subscriber#isQuarantined()}.
+         */
+        DISCONNECT
+    }
+
+    private @NotNull SubscriberRuntime runtime = SubscriberRuntime.shared();
+    private int lanes = 1;
+    private int capacity = Integer.MAX_VALUE;
+    private @NotNull OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private int slowDepth = Integer.MAX_VALUE;
+    private long slowLatencyNanos = Long.MAX_VALUE;
+    private @Nullable String jmxName;
+    private boolean latency = false;
+    private boolean conflate = false;
+
+    SubscriberOptions() {}
+
+    /**
+     * Set the runtime draining the subscriber. Defaults to {@link SubscriberRuntime#shared()}.
+     */
+    public @NotNull SubscriberOptions runtime(@NotNull SubscriberRuntime runtime) {
+        this.runtime = runtime;
+        return this;
+    }
+
+    /**
+     * Set the number of ordered lanes, see {@link Subscriber#Subscriber(SubscriberRuntime, int)}.
+     * Defaults to 1.
+     */
+    public @NotNull SubscriberOptions lanes(int lanes) throws IllegalArgumentException {
+        if (lanes <= 0) throw new IllegalArgumentException("Number of lanes must be positive");
+        this.lanes = lanes;
+        return this;
+    }
+
+    /**
+     * Bound the number of events waiting in each lane and set what happens to events received while
+     * a lane is full. Mailboxes are unbounded by default.
+     */
+    public @NotNull SubscriberOptions capacity(int capacity, @NotNull OverflowPolicy policy)
+            throws IllegalArgumentException {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        this.capacity = capacity;
+        this.overflowPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Quarantine the subscriber once a lane holds more than the given number of events, or once it
+     * takes longer than the given latency to process a single event. A quarantined subscriber drops
+     * the events it receives until it is reinstated.
+     */
+    public @NotNull SubscriberOptions slowConsumer(int depth, long latency, @NotNull TimeUnit unit)
+            throws IllegalArgumentException {
+        if (depth <= 0 || latency <= 0)
+            throw new IllegalArgumentException("Slow consumer thresholds must be positive");
+        this.slowDepth = depth;
+        this.slowLatencyNanos = unit.toNanos(latency);
+        return this;
+    }
+
+    /**
+     * Register the subscriber in the platform MBean server under the given name, until it is closed.
+     */
+    public @NotNull SubscriberOptions jmx(@NotNull String name) {
+        this.jmxName = name;
+        return this;
+    }
+
+    /**
+     * Record histograms of the time events wait in the mailbox, of their processing time and of
+     * their end-to-end latency, see {@link Subscriber#getMailboxLatency()}, {@link
+     * Subscriber#getProcessingLatency()} and {@link Subscriber#getEndToEndLatency()}. Mailbox and
+     * end-to-end latencies are only recorded for events of routers tracking latencies. Disabled by
+     * default.
+     */
+    public @NotNull SubscriberOptions latency(boolean latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Only process the latest of the events of a same type and partition key received while one of
+     * them waits in the mailbox, for streams where only the newest value of each key matters. A slow
+     * subscriber then processes one event per key however many it falls behind, and a bounded
+     * mailbox bounds the number of keys. Disabled by default, see {@link
+     * Subscriber#getConflatedEvents()}.
+     */
+    public @NotNull SubscriberOptions conflate(boolean conflate) {
+        this.conflate = conflate;
+        return this;
+    }
+
+    @NotNull
+    SubscriberRuntime runtime() {
+        return this.runtime;
+    }
+
+    int lanes() {
+        return this.lanes;
+    }
+
+    int capacity() {
+        return this.capacity;
+    }
+
+    @NotNull
+    OverflowPolicy overflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    int slowDepth() {
+        return this.slowDepth;
+    }
+
+    long slowLatencyNanos() {
+        return this.slowLatencyNanos;
+    }
+
+    boolean latency() {
+        return this.latency;
+    }
+
+    boolean conflate() {
+        return this.conflate;
+    }
+
+    @Nullable
+    String jmxName() {
+        return this.jmxName;
+    }
+}
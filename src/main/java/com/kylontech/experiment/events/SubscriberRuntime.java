@@ -0,0 +1,126 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A subscriber runtime drains subscriber mailboxes. Many subscribers share the threads of a runtime,
+ * a mailbox is only ever drained by one thread at a time, so each subscriber still processes its
+ * events one at a time, in order.
+ */
+public final class SubscriberRuntime implements AutoCloseable {
+
+    /**
+     * Default number of events a mailbox processes before giving its worker back to other mailboxes.
+     */
+    public static final int DEFAULT_THROUGHPUT = 256;
+
+    private final @NotNull ExecutorService executor;
+    private final int throughput;
+    private final boolean closeable;
+
+    private SubscriberRuntime(@NotNull ExecutorService executor, int throughput, boolean closeable) {
+        if (throughput <= 0) throw new IllegalArgumentException("Throughput must be positive");
+        this.executor = executor;
+        this.throughput = throughput;
+        this.closeable = closeable;
+    }
+
+    /**
+     * Return the runtime used by default. It has one daemon worker per available processor and is
+     * never closed. Subscribers that block while processing events should use {@link
+     * #virtualThreads()} instead, so they do not hold shared workers.
+     */
+    @NotNull
+    public static SubscriberRuntime shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Create a runtime with a fixed number of daemon workers.
+     */
+    @NotNull
+    public static SubscriberRuntime fixed(int threads) {
+        return new SubscriberRuntime(
+                Executors.newFixedThreadPool(threads, new SubscriberWorkerFactory()),
+                DEFAULT_THROUGHPUT,
+                true);
+    }
+
+    /**
+     * Create a runtime draining each mailbox on a virtual thread.
+     */
+    @NotNull
+    public static SubscriberRuntime virtualThreads() {
+        return new SubscriberRuntime(Executors.newVirtualThreadPerTaskExecutor(), DEFAULT_THROUGHPUT, true);
+    }
+
+    /**
+     * Create a runtime on top of an executor. The executor is shut down when the runtime is closed.
+     *
+     * @param executor   runs mailbox drains
+     * @param throughput number of events a mailbox processes before giving its worker back
+     */
+    @NotNull
+    public static SubscriberRuntime of(@NotNull ExecutorService executor, int throughput) {
+        return new SubscriberRuntime(executor, throughput, true);
+    }
+
+    /**
+     * Schedule a mailbox drain.
+     */
+    void execute(@NotNull Runnable drain) {
+        this.executor.execute(drain);
+    }
+
+    int throughput() {
+        return this.throughput;
+    }
+
+    /**
+     * Stop the workers of this runtime once scheduled drains are done. Subscribers should be closed
+     * first. This is a no-op for the shared runtime.
+     */
+    @Override
+    public void close() throws TimeoutException, InterruptedException {
+        if (!this.closeable) return;
+        this.executor.shutdown();
+        if (!this.executor.awaitTermination(1, TimeUnit.MINUTES))
+            throw new TimeoutException("subscriber runtime termination timed out");
+    }
+
+    /**
+     * Lazy holder of the shared runtime.
+     */
+    private static class Shared {
+        static final SubscriberRuntime INSTANCE =
+                new SubscriberRuntime(
+                        Executors.newFixedThreadPool(
+                                Runtime.getRuntime().availableProcessors(), new SubscriberWorkerFactory()),
+                        DEFAULT_THROUGHPUT,
+                        false);
+    }
+
+    /**
+     * Custom thread factory for subscriber workers. Workers are daemon threads so that an idle runtime
+     * does not prevent the JVM from exiting.
+     */
+    static class SubscriberWorkerFactory implements ThreadFactory {
+
+        private final @NotNull AtomicLong count = new AtomicLong(0);
+
+        @Override
+        public Thread newThread(@NotNull Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setName("SubscriberWorker #" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel running timeouts on a single daemon thread. Scheduling or cancelling a timeout
+ * is a lock-free enqueue, the timer thread then links the timeout in its bucket or unlinks it, so a
+ * cancelled timeout is released within a tick rather than when it would have expired. Timeouts fire
+ * at most one tick late.
+ *
+ * <p>The timer thread parks until the next tick, or indefinitely while there are no timeouts.
+ */
+final class TimerWheel implements Runnable {
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    /**
+     * Task run when its timeout expires, on the timer thread. Tasks must be short. A timeout is its
+     * own handle: it is scheduled once, and then either expires or is cancelled.
+     */
+    abstract static class Timeout {
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private long deadline;
+        private long rounds;
+        private @Nullable TimerWheel wheel;
+        private volatile int state = PENDING;
+
+        /**
+         * Bucket holding this timeout and neighbours in it, only accessed by the timer thread.
+         */
+        private @Nullable Bucket bucket;
+        private @Nullable Timeout prev;
+        private @Nullable Timeout next;
+
+        abstract void expire();
+
+        /**
+         * Cancel this timeout so that it does not expire, and have the timer thread drop it.
+         *
+         * @return whether it was cancelled, rather than already expired or cancelled
+         */
+        boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) return false;
+            TimerWheel wheel = this.wheel;
+            if (wheel != null) wheel.cancelled.offer(this);
+            return true;
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts of a wheel slot, so that cancelled timeouts are unlinked in
+     * constant time.
+     */
+    private static final class Bucket {
+        private @Nullable Timeout head;
+        private @Nullable Timeout tail;
+
+        void add(@NotNull Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = this.tail;
+            if (this.tail == null) this.head = timeout;
+            else this.tail.next = timeout;
+            this.tail = timeout;
+        }
+
+        void remove(@NotNull Timeout timeout) {
+            if (timeout.prev == null) this.head = timeout.next;
+            else timeout.prev.next = timeout.next;
+            if (timeout.next == null) this.tail = timeout.prev;
+            else timeout.next.prev = timeout.prev;
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+
+    private final long tickNanos;
+    private final @NotNull Bucket @NotNull [] wheel;
+    private final int mask;
+
+    /**
+     * Timeouts scheduled or cancelled since the last tick, handled by the timer thread.
+     */
+    private final @NotNull Queue<@NotNull Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final @NotNull Queue<@NotNull Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final @NotNull Thread thread;
+    private volatile boolean idle = false;
+
+    /**
+     * State of the timer thread: time of tick 0, current tick and number of timeouts in the wheel.
+     */
+    private long start;
+    private long tick = 0;
+    private int size = 0;
+
+    TimerWheel(long tick, @NotNull TimeUnit unit, int buckets, @NotNull String name) {
+        if (buckets <= 0 || Integer.bitCount(buckets) != 1)
+            throw new IllegalArgumentException("Number of buckets must be a power of 2");
+        this.tickNanos = unit.toNanos(tick);
+        this.wheel = new Bucket[buckets];
+        for (int i = 0; i < buckets; i++) this.wheel[i] = new Bucket();
+        this.mask = buckets - 1;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.start = System.nanoTime();
+        this.thread.start();
+    }
+
+    /**
+     * Return the timer wheel shared by all routers, ticking every millisecond.
+     */
+    @NotNull
+    static TimerWheel shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Run a timeout's task once the given delay has elapsed, unless it is cancelled first, see {@link
+     * Timeout#cancel()}.
+     */
+    void schedule(@NotNull Timeout timeout, long delay, @NotNull TimeUnit unit) {
+        timeout.deadline = System.nanoTime() + unit.toNanos(delay);
+        timeout.wheel = this;
+        this.incoming.offer(timeout);
+        if (this.idle) LockSupport.unpark(this.thread);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            this.transfer();
+            this.unlinkCancelled();
+            this.expire(this.wheel[(int) (this.tick & this.mask)]);
+            this.tick++;
+            if (this.size == 0 && this.incoming.isEmpty()) this.sleep();
+            else this.awaitTick();
+        }
+    }
+
+    /**
+     * Move newly scheduled timeouts to their bucket.
+     */
+    private void transfer() {
+        Timeout timeout;
+        while ((timeout = this.incoming.poll()) != null) {
+            if (timeout.state != PENDING) continue;
+            long ticks = Math.max(Math.ceilDiv(timeout.deadline - this.start, this.tickNanos), this.tick);
+            timeout.rounds = (ticks - this.tick) / this.wheel.length;
+            this.wheel[(int) (ticks & this.mask)].add(timeout);
+            this.size++;
+        }
+    }
+
+    /**
+     * Remove cancelled timeouts from their bucket. Those cancelled before their transfer are not in
+     * any bucket.
+     */
+    private void unlinkCancelled() {
+        Timeout timeout;
+        while ((timeout = this.cancelled.poll()) != null) {
+            Bucket bucket = timeout.bucket;
+            if (bucket == null) continue;
+            bucket.remove(timeout);
+            this.size--;
+        }
+    }
+
+    private void expire(@NotNull Bucket bucket) {
+        Timeout next;
+        for (Timeout timeout = bucket.head; timeout != null; timeout = next) {
+            next = timeout.next;
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                continue;
+            }
+            bucket.remove(timeout);
+            this.size--;
+            if (!Timeout.STATE.compareAndSet(timeout, PENDING, EXPIRED)) continue;
+            try {
+                timeout.expire();
+            } catch (RuntimeException ex) {
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+            }
+        }
+    }
+
+    private void awaitTick() {
+        long next = this.start + this.tick * this.tickNanos;
+        long remaining;
+        while ((remaining = next - System.nanoTime()) > 0) LockSupport.parkNanos(remaining);
+    }
+
+    /**
+     * Park until a timeout is scheduled. The wheel is empty, so ticks restart from now.
+     */
+    private void sleep() {
+        this.idle = true;
+        this.cancelled.clear();
+        while (this.incoming.isEmpty()) LockSupport.park(this);
+        this.idle = false;
+        this.start = System.nanoTime();
+        this.tick = 0;
+    }
+
+    private static final class Shared {
+        static final TimerWheel INSTANCE = new TimerWheel(1, TimeUnit.MILLISECONDS, 512, "RequestTimer");
+    }
+}
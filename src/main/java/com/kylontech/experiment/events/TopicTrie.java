@@ -0,0 +1,118 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trie of subscriptions to hierarchical topic patterns. Topics are dot-separated segments, such as
+ * {@code orders.eu.created}. In a pattern, {@code *} matches exactly one segment and {@code >}, only
+ * allowed as last segment, matches one or more trailing segments.
+ *
+ * <p>This class is not thread safe.
+ */
+final class TopicTrie {
+
+    static final String SINGLE_WILDCARD = "*";
+    static final String MULTI_WILDCARD = ">";
+
+    private final @NotNull Node root = new Node();
+
+    /**
+     * Add a subscription to a pattern.
+     */
+    void add(@NotNull String pattern, @NotNull Subscriber sub) throws IllegalArgumentException {
+        String[] segments = split(pattern);
+        Node node = this.root;
+        for (String segment : segments) {
+            if (segment.equals(MULTI_WILDCARD)) {
+                node.multi.add(sub);
+                return;
+            }
+            node = node.children.computeIfAbsent(segment, _ -> new Node());
+        }
+        node.subs.add(sub);
+    }
+
+    /**
+     * Remove a subscription to a pattern.
+     *
+     * @return whether the subscription existed
+     */
+    boolean remove(@NotNull String pattern, @NotNull Subscriber sub) throws IllegalArgumentException {
+        return this.remove(this.root, split(pattern), 0, sub);
+    }
+
+    private boolean remove(@NotNull Node node, @NotNull String[] segments, int i, @NotNull Subscriber sub) {
+        if (i == segments.length) return node.subs.remove(sub);
+        if (segments[i].equals(MULTI_WILDCARD)) return node.multi.remove(sub);
+        Node child = node.children.get(segments[i]);
+        if (child == null || !this.remove(child, segments, i + 1, sub)) return false;
+        if (child.isEmpty()) node.children.remove(segments[i]);
+        return true;
+    }
+
+    /**
+     * Add the subscribers of every pattern matching a topic to a collection.
+     */
+    void match(@NotNull String topic, @NotNull Collection<@NotNull Subscriber> out) {
+        this.match(this.root, topic.split("\\.", -1), 0, out);
+    }
+
+    private void match(
+            @Nullable Node node, @NotNull String[] segments, int i, @NotNull Collection<@NotNull Subscriber> out) {
+        if (node == null) return;
+        if (i == segments.length) {
+            out.addAll(node.subs);
+            return;
+        }
+        out.addAll(node.multi);
+        this.match(node.children.get(segments[i]), segments, i + 1, out);
+        this.match(node.children.get(SINGLE_WILDCARD), segments, i + 1, out);
+    }
+
+    /**
+     * Return whether there is no subscription at all.
+     */
+    boolean isEmpty() {
+        return this.root.isEmpty();
+    }
+
+    /**
+     * Split and validate a pattern.
+     */
+    private static @NotNull String[] split(@NotNull String pattern) throws IllegalArgumentException {
+        String[] segments = pattern.split("\\.", -1);
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].isEmpty())
+                throw new IllegalArgumentException("Pattern '" + pattern + "' has an empty segment");
+            if (segments[i].equals(MULTI_WILDCARD) && i != segments.length - 1)
+                throw new IllegalArgumentException(
+                        "Pattern '" + pattern + "' has '" + MULTI_WILDCARD + "' before its last segment");
+        }
+        return segments;
+    }
+
+    private static class Node {
+        final @NotNull Map<String, Node> children = new HashMap<>();
+
+        /**
+         * Subscribers of patterns ending at this node.
+         */
+        final @NotNull List<Subscriber> subs = new ArrayList<>();
+
+        /**
+         * Subscribers of patterns ending with {@code >} after this node.
+         */
+        final @NotNull List<Subscriber> multi = new ArrayList<>();
+
+        boolean isEmpty() {
+            return this.children.isEmpty() && this.subs.isEmpty() && this.multi.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.kylontech.experiment.events;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventCodecTest {
+
+    static Event event(String type, String from, long timestamp, String payload) {
+        Event e = new Event();
+        e.setType(type);
+        e.setFrom(from);
+        e.setTimestamp(timestamp);
+        e.setPayload(payload != null ? payload.getBytes(StandardCharsets.UTF_8) : null);
+        return e;
+    }
+
+    /**
+     * Test that events are decoded as they were encoded, and that repeated types and senders are
+     * encoded as ids.
+     */
+    @Test
+    void testRoundTrip() {
+        /* Set up */
+        EventCodec.Encoder encoder = EventCodec.encoder();
+        EventCodec.Decoder decoder = EventCodec.decoder();
+        MemorySegment segment = Arena.ofAuto().allocate(1024);
+        Event first = event("PING", "producé", 1_000_000L, "hello");
+        first.setPartitionKey(-42L);
+        first.setCorrelationId(7L);
+        first.setReply(true);
+        Event second = event("PING", "producé", 999_999L, null);
+        Event third = event("PONG", "producé", 1_000_000L, "");
+
+        /* Execute */
+        long p1 = encoder.encode(first, segment, 0);
+        long p2 = encoder.encode(second, segment, p1);
+        long p3 = encoder.encode(third, segment, p2);
+        Event[] decoded = {new Event(), new Event(), new Event()};
+        long q1 = decoder.decode(segment, 0, decoded[0]);
+        long q2 = decoder.decode(segment, q1, decoded[1]);
+        long q3 = decoder.decode(segment, q2, decoded[2]);
+
+        /* Verify */
+        assertEquals(p1, q1);
+        assertEquals(p2, q2);
+        assertEquals(p3, q3);
+        assertEquals("PING", decoded[0].getType());
+        assertEquals("producé", decoded[0].getFrom());
+        assertEquals(1_000_000L, decoded[0].getTimestamp());
+        assertEquals(-42L, decoded[0].getPartitionKey());
+        assertEquals(7L, decoded[0].getCorrelationId());
+        assertTrue(decoded[0].isReply());
+        assertArrayEquals("hello".getBytes(StandardCharsets.UTF_8), decoded[0].getPayload());
+        assertEquals(999_999L, decoded[1].getTimestamp());
+        assertEquals(0L, decoded[1].getPartitionKey());
+        assertFalse(decoded[1].isReply());
+        assertNull(decoded[1].getPayload());
+        assertEquals("PONG", decoded[2].getType());
+        assertArrayEquals(new byte[0], decoded[2].getPayload());
+        // Version, flags, 2 symbol ids, and a timestamp difference of -1
+        assertEquals(5, p2 - p1);
+    }
+
+    /**
+     * Test that self-contained events decode without the events before them, and that a decoder
+     * reuses the strings defined again by the events it reads in order.
+     */
+    @Test
+    void testSelfContainedEvents() {
+        /* Set up */
+        EventCodec.Encoder encoder = EventCodec.selfContainedEncoder();
+        EventCodec.Decoder decoder = EventCodec.decoder();
+        MemorySegment segment = Arena.ofAuto().allocate(1024);
+
+        /* Execute */
+        long p1 = encoder.encode(event("PING", "producer", 1_000L, "first"), segment, 0);
+        long p2 = encoder.encode(event("PING", "producer", 999L, "second"), segment, p1);
+        encoder.encode(event("PONG", "producer", 1_001L, "third"), segment, p2);
+        Event second = new Event();
+        EventCodec.decoder().decode(segment, p1, second);
+        Event[] decoded = {new Event(), new Event(), new Event()};
+        long q1 = decoder.decode(segment, 0, decoded[0]);
+        long q2 = decoder.decode(segment, q1, decoded[1]);
+        decoder.decode(segment, q2, decoded[2]);
+
+        /* Verify */
+        assertEquals("PING", second.getType());
+        assertEquals("producer", second.getFrom());
+        assertEquals(999L, second.getTimestamp());
+        assertArrayEquals("second".getBytes(StandardCharsets.UTF_8), second.getPayload());
+        assertSame(decoded[0].getType(), decoded[1].getType());
+        assertSame(decoded[0].getFrom(), decoded[2].getFrom());
+        assertEquals("PONG", decoded[2].getType());
+        assertEquals(1_001L, decoded[2].getTimestamp());
+    }
+
+    /**
+     * Test that events are encoded at the position of buffers, and that decoding a truncated event
+     * throws.
+     */
+    @Test
+    void testByteBuffer() {
+        /* Set up */
+        EventCodec.Encoder encoder = EventCodec.encoder();
+        EventCodec.Decoder decoder = EventCodec.decoder();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+        Event e = event("PING", "test", 5L, "payload");
+        Event decoded = new Event();
+
+        /* Execute */
+        buffer.position(3);
+        int size = encoder.encode(e, buffer);
+        encoder.encode(e, buffer);
+        buffer.flip().position(3);
+        int decodedSize = decoder.decode(buffer, decoded);
+        ByteBuffer truncated = buffer.limit(buffer.limit() - 1);
+
+        /* Verify */
+        assertEquals(size, decodedSize);
+        assertEquals(3 + size, buffer.position());
+        assertEquals("PING", decoded.getType());
+        assertEquals(5L, decoded.getTimestamp());
+        assertThrows(BufferUnderflowException.class, () -> decoder.decode(truncated, decoded));
+        assertThrows(BufferOverflowException.class, () -> encoder.encode(e, ByteBuffer.allocate(8)));
+    }
+
+    /**
+     * Test that decoding a truncated event changes neither the decoder nor the event, so that the
+     * event decodes once complete.
+     */
+    @Test
+    void testTruncatedEventLeavesDecoderUnchanged() {
+        /* Set up */
+        EventCodec.Encoder encoder = EventCodec.encoder();
+        EventCodec.Decoder decoder = EventCodec.decoder();
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        encoder.encode(event("PING", "test", 5L, "payload"), buffer);
+        int end = buffer.position();
+        Event decoded = event("OLD", "old", 1L, null);
+
+        /* Execute */
+        buffer.flip().limit(end - 1);
+        assertThrows(BufferUnderflowException.class, () -> decoder.decode(buffer, decoded));
+        int positionOnFailure = buffer.position();
+        String typeOnFailure = decoded.getType();
+        buffer.limit(end);
+        decoder.decode(buffer, decoded);
+
+        /* Verify */
+        assertEquals(0, positionOnFailure);
+        assertEquals("OLD", typeOnFailure);
+        assertEquals("PING", decoded.getType());
+        assertEquals(5L, decoded.getTimestamp());
+        assertEquals(end, buffer.position());
+    }
+
+    /**
+     * Test that decoding rejects other versions, unknown flags and references to undefined ids, e.g.
+     * when the decoder was not reset with the encoder.
+     */
+    @Test
+    void testMalformedEvents() {
+        /* Set up */
+        EventCodec.Encoder encoder = EventCodec.encoder();
+        MemorySegment segment = Arena.ofAuto().allocate(1024);
+        Event e = event("PING", "test", 5L, "payload");
+        long p = encoder.encode(e, segment, 0);
+        encoder.encode(e, segment, p);
+
+        /* Execute */
+        EventCodec.Decoder decoder = EventCodec.decoder();
+        IllegalArgumentException undefined =
+                assertThrows(IllegalArgumentException.class, () -> decoder.decode(segment, p, new Event()));
+        segment.set(ValueLayout.JAVA_BYTE, 0, (byte) (EventCodec.VERSION + 1));
+        IllegalArgumentException version =
+                assertThrows(IllegalArgumentException.class, () -> decoder.decode(segment, 0, new Event()));
+        segment.set(ValueLayout.JAVA_BYTE, 0, EventCodec.VERSION);
+        segment.set(ValueLayout.JAVA_BYTE, 1, (byte) 0x40);
+        IllegalArgumentException flags =
+                assertThrows(IllegalArgumentException.class, () -> decoder.decode(segment, 0, new Event()));
+
+        /* Verify */
+        assertTrue(undefined.getMessage().contains("undefined symbol"));
+        assertTrue(version.getMessage().contains("version"));
+        assertTrue(flags.getMessage().contains("unknown flags"));
+    }
+
+    /**
+     * Test that the encoder redefines ids once they are all used, which the decoder follows.
+     */
+    @Test
+    void testSymbolTableWraps() {
+        /* Set up */
+        EventCodec.Encoder encoder = EventCodec.encoder();
+        EventCodec.Decoder decoder = EventCodec.decoder();
+        MemorySegment segment = Arena.ofAuto().allocate(128);
+        Event e = new Event();
+        Event decoded = new Event();
+        e.setFrom("test");
+
+        /* Execute & Verify */
+        for (int i = 0; i < 3 * EventCodec.MAX_SYMBOLS; i++) {
+            e.setType("TYPE_" + (i % (EventCodec.MAX_SYMBOLS + 1)));
+            encoder.encode(e, segment, 0);
+            decoder.decode(segment, 0, decoded);
+            assertEquals(e.getType(), decoded.getType());
+            assertEquals("test", decoded.getFrom());
+        }
+    }
+}
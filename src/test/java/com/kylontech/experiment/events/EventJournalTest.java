@@ -0,0 +1,297 @@
+package com.kylontech.experiment.events;
+
+import com.kylontech.experiment.events.testutil.TestEvent;
+import com.kylontech.experiment.events.testutil.TestSubscriber;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @NotNull EventRouter createRouter(@NotNull JournalOptions options) {
+        EventRouter router = EventRouter.builder(Scope.SCOPE_PRIVATE).journal(options).build();
+        router.registerEventType("PING", Scope.SCOPE_PUBLIC, TestSubscriber.createPublic());
+        return router;
+    }
+
+    static void publish(@NotNull EventRouter router, int from, int to) {
+        for (int i = from; i < to; i++)
+            TestEvent.publish("PING", "test", ("event " + i).getBytes(StandardCharsets.UTF_8), i, router);
+    }
+
+    static @NotNull List<Event> readAll(@NotNull EventJournal journal, long fromSequence) {
+        List<Event> events = new ArrayList<>();
+        EventJournal.Reader reader = journal.read(fromSequence);
+        Event e;
+        while ((e = reader.next()) != null) events.add(e);
+        return events;
+    }
+
+    /**
+     * Test that published events are journaled in order with their sequence, which subscribers see,
+     * and that sequences continue when the journal is reopened.
+     */
+    @Test
+    void testEventsAreJournaled()
+            throws InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        EventRouter router = createRouter(EventJournal.options(directory));
+        TestSubscriber s = TestSubscriber.createPublic();
+        TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, s, router);
+
+        /* Execute */
+        publish(router, 0, 100);
+        router.flush().get(1, TimeUnit.MINUTES);
+        List<Event> journaled = readAll(router.getJournal(), 0);
+        List<Long> delivered = s.getReceived().stream().map(Event::getSequence).toList();
+        router.close();
+        router = createRouter(EventJournal.options(directory));
+        TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, s, router);
+        publish(router, 100, 110);
+        router.flush().get(1, TimeUnit.MINUTES);
+        List<Event> reopened = readAll(router.getJournal(), 95);
+        router.close();
+        s.close();
+
+        /* Verify */
+        assertEquals(100, journaled.size());
+        for (int i = 0; i < 100; i++) {
+            Event e = journaled.get(i);
+            assertEquals(i, e.getSequence());
+            assertEquals("PING", e.getType());
+            assertEquals("test", e.getFrom());
+            assertEquals("event " + i, new String(e.getPayload(), StandardCharsets.UTF_8));
+            assertTrue(e.getPayloadSegment().isReadOnly());
+            assertEquals(i, e.getTimestamp());
+            assertEquals(i, (long) delivered.get(i));
+        }
+        assertEquals(15, reopened.size());
+        for (int i = 0; i < 15; i++) assertEquals(95 + i, reopened.get(i).getSequence());
+    }
+
+    /**
+     * Test that small segments roll, and that readers follow them while the router writes.
+     */
+    @Test
+    void testSegmentsRoll()
+            throws InterruptedException, TimeoutException, ExecutionException, IOException {
+        /* Set up */
+        EventRouter router = createRouter(EventJournal.options(directory).segmentSize(1024));
+        EventJournal.Reader reader = router.getJournal().read(0);
+        List<Event> events = new ArrayList<>();
+
+        /* Execute */
+        for (int i = 0; i < 10; i++) {
+            publish(router, i * 50, (i + 1) * 50);
+            router.flush().get(1, TimeUnit.MINUTES);
+            Event e;
+            while ((e = reader.next()) != null) events.add(e);
+        }
+        List<Event> middle = readAll(router.getJournal(), 321);
+        router.close();
+        long segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.count();
+        }
+
+        /* Verify */
+        assertEquals(500, events.size());
+        for (int i = 0; i < 500; i++) assertEquals(i, events.get(i).getSequence());
+        assertEquals(179, middle.size());
+        for (int i = 0; i < 179; i++) {
+            Event e = middle.get(i);
+            assertEquals(321 + i, e.getSequence());
+            assertEquals(321 + i, e.getTimestamp());
+            assertEquals("test", e.getFrom());
+            assertEquals("event " + (321 + i), new String(e.getPayload(), StandardCharsets.UTF_8));
+        }
+        assertTrue(segments > 10);
+    }
+
+    /**
+     * Test that a torn record at the end of the journal is discarded with the following ones when it
+     * is reopened.
+     */
+    @Test
+    void testTornRecordIsDiscarded()
+            throws InterruptedException, TimeoutException, ExecutionException, IOException {
+        /* Set up */
+        EventRouter router = createRouter(EventJournal.options(directory));
+        publish(router, 0, 10);
+        router.flush().get(1, TimeUnit.MINUTES);
+        router.close();
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        // Change the last byte of the payload of the 8th record
+        try (FileChannel channel =
+                FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long p = 0;
+            for (int i = 0; i < 8; i++) {
+                channel.read(length.clear(), p);
+                long end = p + 16 + length.getInt(0);
+                if (i == 7) channel.write(ByteBuffer.wrap(new byte[] {'X'}), end - 1);
+                p = (end + 7) & ~7;
+            }
+        }
+
+        /* Execute */
+        router = createRouter(EventJournal.options(directory));
+        long last = router.getJournal().getLastSequence();
+        publish(router, 10, 12);
+        router.flush().get(1, TimeUnit.MINUTES);
+        List<Event> events = readAll(router.getJournal(), 0);
+        router.close();
+
+        /* Verify */
+        assertEquals(6, last);
+        assertEquals(9, events.size());
+        assertEquals("event 10", new String(events.get(7).getPayload(), StandardCharsets.UTF_8));
+        assertEquals(8, events.get(8).getSequence());
+    }
+
+    /**
+     * Test that garbage past the last valid record, e.g. a partly flushed record, is zeroed when the
+     * journal is reopened, while valid records are kept.
+     */
+    @Test
+    void testTornTailIsZeroed()
+            throws InterruptedException, TimeoutException, ExecutionException, IOException {
+        /* Set up */
+        JournalOptions options = EventJournal.options(directory).segmentSize(1024 * 1024);
+        EventRouter router = createRouter(options);
+        publish(router, 0, 10);
+        router.flush().get(1, TimeUnit.MINUTES);
+        router.close();
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        long garbage = 1024 * 1024 - 100;
+        try (FileChannel channel =
+                FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {'X'}), garbage);
+        }
+
+        /* Execute */
+        router = createRouter(options);
+        long last = router.getJournal().getLastSequence();
+        router.close();
+        ByteBuffer zeroed = ByteBuffer.allocate(1);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            channel.read(zeroed, garbage);
+        }
+
+        /* Verify */
+        assertEquals(9, last);
+        assertEquals(0, zeroed.get(0));
+    }
+
+    /**
+     * Test that off-heap payloads are journaled.
+     */
+    @Test
+    void testOffHeapPayloadIsJournaled()
+            throws InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        EventRouter router = createRouter(EventJournal.options(directory));
+        byte[] bytes = "off-heap".getBytes(StandardCharsets.UTF_8);
+        Event e = new Event();
+        e.setType("PING");
+
+        /* Execute */
+        MemorySegment payload = router.allocatePayload(e, bytes.length);
+        MemorySegment.copy(bytes, 0, payload, ValueLayout.JAVA_BYTE, 0, bytes.length);
+        router.publish(e);
+        router.flush().get(1, TimeUnit.MINUTES);
+        List<Event> events = readAll(router.getJournal(), 0);
+        router.close();
+
+        /* Verify */
+        assertEquals(1, events.size());
+        assertArrayEquals(bytes, events.getFirst().getPayload());
+    }
+
+    /**
+     * Test that a catch-up subscriber receives every event from its sequence once and in order,
+     * while events keep being published during the replay and the handover.
+     */
+    @Test
+    void testCatchUpSubscribe()
+            throws InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        EventRouter router = createRouter(EventJournal.options(directory));
+        TestEvent.subscribe("PONG", Scope.SCOPE_PUBLIC, TestSubscriber.createPublic(), router);
+        TestSubscriber s = TestSubscriber.createPublic();
+        for (int i = 0; i < 2000; i++) {
+            publish(router, i, i + 1);
+            TestEvent.publish("PONG", "test", new byte[0], i, router);
+        }
+        Thread producer = Thread.ofPlatform().start(() -> publish(router, 2000, 6000));
+
+        /* Execute */
+        CompletableFuture<Void> live = router.subscribe("PING", s, 100);
+        live.get(1, TimeUnit.MINUTES);
+        producer.join();
+        publish(router, 6000, 6010);
+        router.flush().get(1, TimeUnit.MINUTES);
+        List<Event> received = List.copyOf(s.getReceived());
+        router.close();
+        s.close();
+
+        /* Verify */
+        assertEquals(5960, received.size());
+        for (int i = 0; i < received.size(); i++) {
+            Event e = received.get(i);
+            assertEquals("PING", e.getType());
+            assertNotNull(e.getEventType());
+            assertEquals("PING", e.getEventType().getName());
+            assertEquals(50 + i, e.getTimestamp());
+        }
+    }
+
+    /**
+     * Test that catch-up subscriptions need a journal.
+     */
+    @Test
+    void testCatchUpSubscribeWithoutJournal() throws InterruptedException, TimeoutException {
+        /* Set up */
+        EventRouter router = new EventRouter(Scope.SCOPE_PRIVATE);
+        TestSubscriber s = TestSubscriber.createPublic();
+        router.registerEventType("PING", Scope.SCOPE_PUBLIC, s);
+
+        /* Execute */
+        IllegalStateException ex =
+                assertThrows(IllegalStateException.class, () -> router.subscribe("PING", s, 0));
+        router.close();
+        s.close();
+
+        /* Verify */
+        assertEquals("Events are not journaled", ex.getMessage());
+    }
+}
@@ -0,0 +1,271 @@
+package com.kylontech.experiment.events;
+
+import com.kylontech.experiment.events.testutil.TestEvent;
+import com.kylontech.experiment.events.testutil.TestSubscriber;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventRouterBuilderTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Test that routers built with every profile deliver events.
+     */
+    @ParameterizedTest
+    @EnumSource(EventRouterBuilder.Profile.class)
+    void testProfileDeliversEvents(EventRouterBuilder.Profile profile)
+            throws TimeoutException, InterruptedException {
+        /* Set up */
+        TestSubscriber s = TestSubscriber.createPublic();
+        try (EventRouter router = EventRouter.builder(Scope.SCOPE_PRIVATE).profile(profile).build()) {
+            TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, s, router);
+
+            /* Execute */
+            for (int i = 0; i < 100; i++) TestEvent.publish("PING", "", null, i, router);
+            assertFalse(router.awaitEmptyTimedOut(1, TimeUnit.MINUTES));
+        }
+        s.close();
+
+        /* Verify */
+        assertEquals(100, s.getReceived().size());
+    }
+
+    /**
+     * Test that explicit settings override the profile.
+     */
+    @Test
+    void testExplicitOverrides() throws TimeoutException, InterruptedException {
+        /* Set up */
+        TestSubscriber s = TestSubscriber.createPublic();
+        try (EventRouter router =
+                EventRouter.builder(Scope.SCOPE_PRIVATE)
+                        .profile(EventRouterBuilder.Profile.LOW_LATENCY)
+                        .producerType(ProducerType.SINGLE)
+                        .waitStrategy(BlockingWaitStrategy::new)
+                        .bufferSize(64)
+                        .build()) {
+            TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, s, router);
+
+            /* Execute */
+            for (int i = 0; i < 1000; i++) TestEvent.publish("PING", "", null, i, router);
+            assertFalse(router.awaitEmptyTimedOut(1, TimeUnit.MINUTES));
+        }
+        s.close();
+
+        /* Verify */
+        assertEquals(1000, s.getReceived().size());
+    }
+
+    /**
+     * Test that features publishing from threads of their own are rejected by single producer
+     * routers, whose ring buffer they would corrupt.
+     */
+    @Test
+    void testSingleProducerRejectsInternalPublishers() throws TimeoutException, InterruptedException {
+        /* Set up */
+        EventRouter router =
+                EventRouter.builder(Scope.SCOPE_PRIVATE)
+                        .producerType(ProducerType.SINGLE)
+                        .journal(EventJournal.options(directory))
+                        .build();
+        TestSubscriber s = TestSubscriber.createPublic();
+        TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, s, router);
+        Event e = new Event();
+        e.setType("PING");
+
+        /* Execute & Verify */
+        assertThrows(IllegalStateException.class, () -> router.publishAsync(e));
+        assertThrows(IllegalStateException.class, () -> router.subscribe("PING", s, 0L));
+        assertThrows(
+                IllegalStateException.class,
+                () -> SharedMemoryBridge.open(router, directory.resolve("events.ring")));
+        assertThrows(
+                IllegalStateException.class,
+                () -> SocketBridge.connect(router, new InetSocketAddress(0), Scope.SCOPE_PUBLIC));
+        router.publish(e);
+        assertFalse(router.awaitEmptyTimedOut(1, TimeUnit.MINUTES));
+        router.close();
+        s.close();
+        assertEquals(1, s.getReceived().size());
+    }
+
+    /**
+     * Test that a buffer size that is not a power of 2 is rejected.
+     */
+    @Test
+    void testExceptionOnInvalidBufferSize() {
+        EventRouterBuilder builder = EventRouter.builder(Scope.SCOPE_PRIVATE);
+
+        assertThrows(IllegalArgumentException.class, () -> builder.bufferSize(1000));
+        assertThrows(IllegalArgumentException.class, () -> builder.bufferSize(0));
+    }
+
+    /**
+     * Test that routers built with metrics count events and are exposed over JMX until closed.
+     */
+    @Test
+    void testMetricsOverJmx() throws Exception {
+        /* Set up */
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName routerName =
+                new ObjectName("com.kylontech.experiment.events:type=EventRouter,name=\"metrics\"");
+        ObjectName subscriberName =
+                new ObjectName("com.kylontech.experiment.events:type=Subscriber,name=\"metrics\"");
+        EventRouter router = EventRouter.builder(Scope.SCOPE_PRIVATE).jmx("metrics").build();
+        Subscriber s =
+                new Subscriber(Subscriber.options().jmx("metrics")) {
+                    @Override
+                    public @NotNull Scope scope() {
+                        return Scope.SCOPE_PUBLIC;
+                    }
+
+                    @Override
+                    protected void processEvent(@NotNull Event e) {}
+                };
+        router.registerEventType("PING", Scope.SCOPE_PUBLIC, s);
+        router.subscribe("PING", s);
+
+        /* Execute */
+        for (int i = 0; i < 10; i++) TestEvent.publish("PING", "", null, i, router);
+        assertFalse(router.awaitEmptyTimedOut(1, TimeUnit.MINUTES));
+        while (s.getProcessedEvents() < 10) Thread.sleep(1);
+
+        /* Verify */
+        assertEquals(10L, server.getAttribute(routerName, "PublishedEvents"));
+        assertEquals(10L, server.getAttribute(routerName, "DispatchedEvents"));
+        assertEquals(0L, server.getAttribute(routerName, "RingOccupancy"));
+        assertEquals(10L, router.getDispatchCounts().get("PING"));
+        assertEquals(0L, router.getDispatchCounts().get("*"));
+        assertEquals(10L, server.getAttribute(subscriberName, "ProcessedEvents"));
+        assertEquals(0, server.getAttribute(subscriberName, "Backlog"));
+
+        router.close();
+        s.close();
+        assertFalse(server.isRegistered(routerName));
+        assertFalse(server.isRegistered(subscriberName));
+    }
+
+    /**
+     * Test that a builder with a JMX name builds a single router and that a taken name fails the build.
+     */
+    @Test
+    void testJmxNameBuildsOnce() throws TimeoutException, InterruptedException {
+        /* Set up */
+        EventRouterBuilder builder = EventRouter.builder(Scope.SCOPE_PRIVATE).jmx("once");
+
+        try (EventRouter router = builder.build()) {
+            /* Execute & Verify */
+            assertNotNull(router);
+            assertThrows(IllegalStateException.class, builder::build);
+            assertThrows(IllegalStateException.class, () -> new ShardedEventRouter(builder, 2));
+            assertThrows(IllegalStateException.class,
+                    () -> EventRouter.builder(Scope.SCOPE_PRIVATE).jmx("once").build());
+        }
+    }
+
+    /**
+     * Test that per event type metrics are disabled by default.
+     */
+    @Test
+    void testMetricsDisabledByDefault() throws TimeoutException, InterruptedException {
+        TestSubscriber s = TestSubscriber.createPublic();
+        try (EventRouter router = EventRouter.builder(Scope.SCOPE_PRIVATE).build()) {
+            TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, s, router);
+            TestEvent.publish("PING", "", null, 1L, router);
+            assertFalse(router.awaitEmptyTimedOut(1, TimeUnit.MINUTES));
+
+            assertEquals(1, router.getPublishedEvents());
+            assertTrue(router.getDispatchCounts().isEmpty());
+        }
+        s.close();
+    }
+
+    /**
+     * Test that routers and subscribers tracking latencies record one latency per event and stage,
+     * and that end-to-end latencies tell a slow subscriber apart from the others of its event type.
+     */
+    @Test
+    void testLatencyHistograms() throws TimeoutException, InterruptedException {
+        /* Set up */
+        EventRouter router = EventRouter.builder(Scope.SCOPE_PRIVATE).latency(true).build();
+        Subscriber s =
+                new Subscriber(Subscriber.options().latency(true)) {
+                    @Override
+                    public @NotNull Scope scope() {
+                        return Scope.SCOPE_PUBLIC;
+                    }
+
+                    @Override
+                    protected void processEvent(@NotNull Event e) {
+                        assertTrue(e.getPublishNanos() <= e.getDispatchNanos());
+                    }
+                };
+        Subscriber slow =
+                new Subscriber(Subscriber.options().latency(true)) {
+                    @Override
+                    public @NotNull Scope scope() {
+                        return Scope.SCOPE_PUBLIC;
+                    }
+
+                    @Override
+                    protected void processEvent(@NotNull Event e) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    }
+                };
+        router.registerEventType("PING", Scope.SCOPE_PUBLIC, s);
+        router.subscribe("PING", s);
+        router.subscribe("PING", slow);
+
+        /* Execute */
+        for (int i = 0; i < 100; i++) TestEvent.publish("PING", "", null, i, router);
+        assertFalse(router.awaitEmptyTimedOut(1, TimeUnit.MINUTES));
+        router.close();
+        s.close();
+        slow.close();
+
+        /* Verify */
+        assertEquals(100, router.getDispatchLatency("PING").snapshot().count());
+        assertEquals(200, router.getEndToEndLatency("PING").snapshot().count());
+        assertEquals(100, s.getMailboxLatency().snapshot().count());
+        assertEquals(100, s.getProcessingLatency().snapshot().count());
+        assertEquals(100, s.getEndToEndLatency().snapshot().count());
+        assertEquals(100, slow.getEndToEndLatency().snapshot().count());
+        assertTrue(slow.getEndToEndLatency().snapshot().p50() >= TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(
+                router.getEndToEndLatency("PING").snapshot().max()
+                        >= router.getDispatchLatency("PING").snapshot().max());
+    }
+
+    /**
+     * Test that latency histograms are not available unless enabled.
+     */
+    @Test
+    void testLatencyDisabledByDefault() throws TimeoutException, InterruptedException {
+        TestSubscriber s = TestSubscriber.createPublic();
+        try (EventRouter router = EventRouter.builder(Scope.SCOPE_PRIVATE).build()) {
+            TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, s, router);
+
+            assertThrows(IllegalStateException.class, () -> router.getDispatchLatency("PING"));
+            assertThrows(IllegalStateException.class, s::getProcessingLatency);
+        }
+        s.close();
+    }
+}
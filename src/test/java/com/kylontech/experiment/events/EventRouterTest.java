@@ -2,19 +2,31 @@ package com.kylontech.experiment.events;
 
 import com.kylontech.experiment.events.testutil.TestEvent;
 import com.kylontech.experiment.events.testutil.TestSubscriber;
+import com.lmax.disruptor.EventTranslatorOneArg;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
+import static com.kylontech.experiment.events.SharedMemoryBridgeTest.await;
 import static org.junit.jupiter.api.Assertions.*;
 
 class EventRouterTest {
@@ -339,6 +351,53 @@ class EventRouterTest {
         closeSubscriber(sPrivate2);
     }
 
+    /**
+     * Test that unsubscribing removes the given subscriber, not another one it equals.
+     */
+    @Test
+    void testUnsubscribeComparesIdentity() {
+        /* Set up */
+        TestSubscriber kept = equalSubscriber();
+        TestSubscriber removed = equalSubscriber();
+        TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, kept, router);
+        router.subscribe("PING", removed);
+
+        /* Execute */
+        router.unsubscribe("PING", removed);
+        TestEvent.publish("PING", "test", new byte[0], 0, router);
+        if (awaitRouterEmptyTimedOut()) {
+            fail("wait for event router to be empty timed out");
+        }
+        closeSubscriber(kept);
+        closeSubscriber(removed);
+
+        /* Verify */
+        assertEquals(1, kept.getReceived().size());
+        assertEquals(0, removed.getReceived().size());
+    }
+
+    /**
+     * Subscriber equal to every other one.
+     */
+    static @NotNull TestSubscriber equalSubscriber() {
+        return new TestSubscriber() {
+            @Override
+            public @NotNull Scope scope() {
+                return Scope.SCOPE_PUBLIC;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof TestSubscriber;
+            }
+
+            @Override
+            public int hashCode() {
+                return 0;
+            }
+        };
+    }
+
     /**
      * Test that an exception is raised when trying to unregister to an event type that is not
      * registered.
@@ -381,4 +440,775 @@ class EventRouterTest {
         /* Verify */
         assertTrue(ex.getMessage().contains("'" + eventType + "'" + " is not registered"));
     }
+
+    /**
+     * Test that events published with an event type handle are received.
+     */
+    @Test
+    void testPublishWithEventTypeHandle() {
+        /* Set up */
+        TestSubscriber s = TestSubscriber.createPublic();
+        EventType eventType = router.registerEventType("PING", Scope.SCOPE_PUBLIC, s);
+        router.subscribe(eventType, s);
+
+        /* Execute */
+        Event e = new Event();
+        e.setType(eventType);
+        router.publish(e);
+        if (awaitRouterEmptyTimedOut()) {
+            fail("wait for event router to be empty timed out");
+        }
+        closeSubscriber(s);
+
+        /* Verify */
+        assertEquals(1, s.getReceived().size());
+        assertEquals("PING", s.getReceived().getFirst().getType());
+    }
+
+    /**
+     * Test that a handle of an unregistered event type is rejected, even if its id was reused.
+     */
+    @Test
+    void testExceptionOnPublishWithStaleEventTypeHandle() {
+        /* Set up */
+        TestSubscriber s = TestSubscriber.createPrivate();
+        EventType stale = router.registerEventType("EVENT", Scope.SCOPE_PRIVATE, s);
+        router.unregisterEventType(stale, s);
+        EventType other = router.registerEventType("OTHER", Scope.SCOPE_PRIVATE, s);
+        router.subscribe(other, s);
+
+        /* Execute */
+        Event e = new Event();
+        e.setType(stale);
+        NoSuchElementException ex = assertThrows(NoSuchElementException.class, () -> router.publish(e));
+        if (awaitRouterEmptyTimedOut()) {
+            fail("wait for event router to be empty timed out");
+        }
+        closeSubscriber(s);
+
+        /* Verify */
+        assertEquals(stale.getId(), other.getId());
+        assertTrue(ex.getMessage().contains("'EVENT' is not registered"));
+        assertTrue(s.getReceived().isEmpty());
+    }
+
+    /**
+     * Test that events filled in place by a translator are received.
+     */
+    @Test
+    void testPublishWithTranslator() {
+        /* Set up */
+        TestSubscriber s = TestSubscriber.createPublic();
+        EventType eventType = router.registerEventType("PING", Scope.SCOPE_PUBLIC, s);
+        router.subscribe(eventType, s);
+        byte[] payload = "test".getBytes(StandardCharsets.UTF_8);
+
+        /* Execute */
+        router.publish(
+                eventType,
+                (slot, _, p) -> {
+                    slot.setFrom("producer");
+                    slot.setPayload(p);
+                    slot.setTimestamp(42L);
+                },
+                payload);
+        if (awaitRouterEmptyTimedOut()) {
+            fail("wait for event router to be empty timed out");
+        }
+        closeSubscriber(s);
+
+        /* Verify */
+        assertEquals(1, s.getReceived().size());
+        Event received = s.getReceived().getFirst();
+        assertEquals("PING", received.getType());
+        assertEquals("producer", received.getFrom());
+        assertArrayEquals(payload, received.getPayload());
+        assertEquals(42L, received.getTimestamp());
+    }
+
+    /**
+     * Test that publishing with a non-capturing translator does not allocate on the producer
+     * thread once warmed up.
+     */
+    @Test
+    void testPublishWithTranslatorDoesNotAllocate() {
+        /* Set up */
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        TestSubscriber s = TestSubscriber.createPublic();
+        EventType eventType = router.registerEventType("PING", Scope.SCOPE_PUBLIC, s);
+        EventTranslatorOneArg<Event, String> translator = (slot, _, from) -> slot.setFrom(from);
+        for (int i = 0; i < 100_000; i++) router.publish(eventType, translator, "producer");
+
+        /* Execute */
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) router.publish(eventType, translator, "producer");
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        closeSubscriber(s);
+
+        /* Verify */
+        assertTrue(allocated < 1024, "allocated " + allocated + " bytes");
+    }
+
+    /**
+     * Test that a batch of events larger than the ring buffer is received in order.
+     */
+    @Test
+    void testPublishBatch() {
+        /* Set up */
+        TestSubscriber s = TestSubscriber.createPublic();
+        String eventType = "PING";
+        TestEvent.subscribe(eventType, Scope.SCOPE_PUBLIC, s, router);
+        int size = EventRouter.BUFFER_SIZE + 100;
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Event e = new Event();
+            e.setType(eventType);
+            e.setTimestamp(i);
+            events.add(e);
+        }
+
+        /* Execute */
+        router.publishBatch(events);
+        if (awaitRouterEmptyTimedOut()) {
+            fail("wait for event router to be empty timed out");
+        }
+        closeSubscriber(s);
+
+        /* Verify */
+        assertEquals(size, s.getReceived().size());
+        for (int i = 0; i < size; i++) assertEquals(i, s.getReceived().get(i).getTimestamp());
+    }
+
+    /**
+     * Test that publishes fail fast or time out while the ring buffer is full, and that async
+     * publishes complete once it has room again.
+     */
+    @Test
+    void testPublishWhenRingBufferIsFull()
+            throws InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        CountDownLatch gate = new CountDownLatch(1);
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        Subscriber s =
+                new Subscriber(Subscriber.options().capacity(1, SubscriberOptions.OverflowPolicy.BLOCK)) {
+                    @Override
+                    public @NotNull Scope scope() {
+                        return Scope.SCOPE_PUBLIC;
+                    }
+
+                    @Override
+                    protected void processEvent(@NotNull Event e) {
+                        try {
+                            gate.await();
+                        } catch (InterruptedException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                        received.add(e.getTimestamp());
+                    }
+                };
+        EventRouter small = EventRouter.builder(Scope.SCOPE_PRIVATE).bufferSize(4).build();
+        small.registerEventType("PING", Scope.SCOPE_PUBLIC, s);
+        small.subscribe("PING", s);
+        Event e = new Event();
+        e.setType("PING");
+
+        /* Execute */
+        long published = 0;
+        while (published < 100) {
+            e.setTimestamp(published);
+            if (!small.tryPublish(e)) break;
+            published++;
+        }
+        e.setTimestamp(published);
+        boolean timedPublished = small.publish(e, 10, TimeUnit.MILLISECONDS);
+        CompletableFuture<Void> future = small.publishAsync(e);
+        e.setTimestamp(-1);
+        boolean doneWhileFull = future.isDone();
+        gate.countDown();
+        future.get(1, TimeUnit.MINUTES);
+        assertFalse(small.awaitEmptyTimedOut(1, TimeUnit.MINUTES));
+        small.close();
+        s.close();
+
+        /* Verify */
+        assertTrue(published < 100);
+        assertFalse(timedPublished);
+        assertFalse(doneWhileFull);
+        assertEquals(2, small.getRejectedPublishes());
+        assertEquals(1, small.getDelayedPublishes());
+        assertEquals(LongStream.rangeClosed(0, published).boxed().toList(), received);
+    }
+
+    /**
+     * Test that async publishes waiting for room complete or fail once the router closes, and that
+     * async publishes to a closed router fail.
+     */
+    @Test
+    void testPublishAsyncFailsOnClose() throws InterruptedException, TimeoutException {
+        /* Set up */
+        CountDownLatch gate = new CountDownLatch(1);
+        Subscriber s =
+                new Subscriber(Subscriber.options().capacity(1, SubscriberOptions.OverflowPolicy.BLOCK)) {
+                    @Override
+                    public @NotNull Scope scope() {
+                        return Scope.SCOPE_PUBLIC;
+                    }
+
+                    @Override
+                    protected void processEvent(@NotNull Event e) {
+                        try {
+                            gate.await();
+                        } catch (InterruptedException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    }
+                };
+        EventRouter small = EventRouter.builder(Scope.SCOPE_PRIVATE).bufferSize(4).build();
+        small.registerEventType("PING", Scope.SCOPE_PUBLIC, s);
+        small.subscribe("PING", s);
+        Event e = new Event();
+        e.setType("PING");
+        while (small.tryPublish(e)) Thread.onSpinWait();
+
+        /* Execute */
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 64; i++) futures.add(small.publishAsync(e));
+        gate.countDown();
+        small.close();
+        s.close();
+        CompletableFuture<Void> afterClose = small.publishAsync(e);
+
+        /* Verify */
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.get(1, TimeUnit.MINUTES);
+            } catch (ExecutionException ex) {
+                assertInstanceOf(IllegalStateException.class, ex.getCause());
+            }
+        }
+        ExecutionException ex = assertThrows(ExecutionException.class, afterClose::get);
+        assertInstanceOf(IllegalStateException.class, ex.getCause());
+    }
+
+    /**
+     * Test that a flush completes once subscribers, including every lane of a subscriber, have
+     * processed the events published before it.
+     */
+    @Test
+    void testFlushWaitsForSubscribers() throws InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        CountDownLatch gate = new CountDownLatch(1);
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        try (SubscriberRuntime runtime = SubscriberRuntime.fixed(2)) {
+            Subscriber s =
+                    new Subscriber(runtime, 4) {
+                        @Override
+                        public @NotNull Scope scope() {
+                            return Scope.SCOPE_PUBLIC;
+                        }
+
+                        @Override
+                        protected void processEvent(@NotNull Event e) {
+                            try {
+                                gate.await();
+                            } catch (InterruptedException ex) {
+                                throw new IllegalStateException(ex);
+                            }
+                            received.add(e.getTimestamp());
+                        }
+                    };
+            TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, TestSubscriber.createPublic(), router);
+            router.subscribe("PING", s);
+            Event e = new Event();
+            e.setType("PING");
+
+            /* Execute */
+            for (long i = 0; i < 100; i++) {
+                e.setTimestamp(i);
+                e.setPartitionKey(i);
+                router.publish(e);
+            }
+            CompletableFuture<Void> flush = router.flush();
+            Thread.sleep(50);
+            boolean doneWhileBlocked = flush.isDone();
+            gate.countDown();
+            flush.get(1, TimeUnit.MINUTES);
+            int receivedOnFlush = received.size();
+            s.close();
+
+            /* Verify */
+            assertFalse(doneWhileBlocked);
+            assertEquals(100, receivedOnFlush);
+        }
+    }
+
+    /**
+     * Test that a flush waits for a subscriber which unsubscribed with events still queued.
+     */
+    @Test
+    void testFlushWaitsForUnsubscribedSubscribers()
+            throws InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        CountDownLatch gate = new CountDownLatch(1);
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        try (SubscriberRuntime runtime = SubscriberRuntime.fixed(1)) {
+            Subscriber s =
+                    new Subscriber(runtime) {
+                        @Override
+                        public @NotNull Scope scope() {
+                            return Scope.SCOPE_PUBLIC;
+                        }
+
+                        @Override
+                        protected void processEvent(@NotNull Event e) {
+                            try {
+                                gate.await();
+                            } catch (InterruptedException ex) {
+                                throw new IllegalStateException(ex);
+                            }
+                            received.add(e.getTimestamp());
+                        }
+                    };
+            TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, TestSubscriber.createPublic(), router);
+            router.subscribe("PING", s);
+            Event e = new Event();
+            e.setType("PING");
+
+            /* Execute */
+            for (long i = 0; i < 100; i++) {
+                e.setTimestamp(i);
+                router.publish(e);
+            }
+            await(() -> router.getDispatchedEvents() == 100);
+            router.unsubscribe("PING", s);
+            CompletableFuture<Void> flush = router.flush();
+            Thread.sleep(50);
+            boolean doneWhileBlocked = flush.isDone();
+            gate.countDown();
+            flush.get(1, TimeUnit.MINUTES);
+            int receivedOnFlush = received.size();
+            router.flush().get(1, TimeUnit.MINUTES);
+            s.close();
+
+            /* Verify */
+            assertFalse(doneWhileBlocked);
+            assertEquals(100, receivedOnFlush);
+        }
+    }
+
+    /**
+     * Test that acknowledgements complete once all subscribers have processed the event, or right
+     * away without subscribers.
+     */
+    @Test
+    void testPublishAcked() throws InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        TestSubscriber s0 = TestSubscriber.createPublic();
+        TestSubscriber s1 = TestSubscriber.createPublic();
+        TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, s0, router);
+        TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, s1, router);
+        router.registerEventType("PONG", Scope.SCOPE_PUBLIC, s0);
+        Event ping = new Event();
+        ping.setType("PING");
+        Event pong = new Event();
+        pong.setType("PONG");
+
+        /* Execute */
+        router.publishAcked(ping).get(1, TimeUnit.MINUTES);
+        int s0Received = s0.getReceived().size();
+        int s1Received = s1.getReceived().size();
+        router.publishAcked(pong).get(1, TimeUnit.MINUTES);
+        closeSubscriber(s0);
+        closeSubscriber(s1);
+
+        /* Verify */
+        assertEquals(1, s0Received);
+        assertEquals(1, s1Received);
+    }
+
+    /**
+     * Test that a request completes with the reply of its responder, which is also delivered to the
+     * subscribers of its type.
+     */
+    @Test
+    void testRequestReply() throws InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        Subscriber responder = new Subscriber() {
+            @Override
+            public @NotNull Scope scope() {
+                return Scope.SCOPE_PUBLIC;
+            }
+
+            @Override
+            protected void processEvent(@NotNull Event e) {
+                Event answer = new Event();
+                answer.setType("ANSWER");
+                answer.setPayload(e.getPayload());
+                router.reply(e, answer);
+            }
+        };
+        TestSubscriber s = TestSubscriber.createPublic();
+        router.registerEventType("QUERY", Scope.SCOPE_PUBLIC, responder);
+        router.subscribe("QUERY", responder);
+        TestEvent.subscribe("ANSWER", Scope.SCOPE_PUBLIC, s, router);
+        Event query = new Event();
+        query.setType("QUERY");
+        query.setPayload("42".getBytes(StandardCharsets.UTF_8));
+
+        /* Execute */
+        Event answer = router.request(query, 1, TimeUnit.MINUTES).get(1, TimeUnit.MINUTES);
+        Event other = router.request(query, 1, TimeUnit.MINUTES).get(1, TimeUnit.MINUTES);
+        router.flush().get(1, TimeUnit.MINUTES);
+        responder.close();
+        closeSubscriber(s);
+
+        /* Verify */
+        assertEquals("ANSWER", answer.getType());
+        assertEquals("42", new String(answer.getPayload(), StandardCharsets.UTF_8));
+        assertTrue(answer.isReply());
+        assertNotEquals(answer.getCorrelationId(), other.getCorrelationId());
+        assertEquals(2, s.getReceived().size());
+    }
+
+    /**
+     * Test that a request without reply times out, and that requests fail when the pending request
+     * table is full.
+     */
+    @Test
+    void testRequestTimeout() throws InterruptedException, TimeoutException {
+        /* Set up */
+        EventRouter small = EventRouter.builder(Scope.SCOPE_PRIVATE).maxPendingRequests(1).build();
+        TestSubscriber s = TestSubscriber.createPublic();
+        TestEvent.subscribe("QUERY", Scope.SCOPE_PUBLIC, s, small);
+        Event query = new Event();
+        query.setType("QUERY");
+
+        /* Execute */
+        long start = System.nanoTime();
+        CompletableFuture<Event> pending = small.request(query, 50, TimeUnit.MILLISECONDS);
+        CompletableFuture<Event> rejected = small.request(query, 50, TimeUnit.MILLISECONDS);
+        ExecutionException timeout =
+                assertThrows(ExecutionException.class, () -> pending.get(1, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - start;
+        ExecutionException full = assertThrows(ExecutionException.class, rejected::get);
+        small.close();
+        closeSubscriber(s);
+
+        /* Verify */
+        assertInstanceOf(TimeoutException.class, timeout.getCause());
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertInstanceOf(IllegalStateException.class, full.getCause());
+    }
+
+    /**
+     * Test that requests still waiting for a reply fail when the router closes, instead of waiting
+     * for their timeout.
+     */
+    @Test
+    void testPendingRequestsFailOnClose() throws InterruptedException, TimeoutException {
+        /* Set up */
+        EventRouter other = new EventRouter(Scope.SCOPE_PRIVATE);
+        TestSubscriber s = TestSubscriber.createPublic();
+        TestEvent.subscribe("QUERY", Scope.SCOPE_PUBLIC, s, other);
+        Event query = new Event();
+        query.setType("QUERY");
+
+        /* Execute */
+        CompletableFuture<Event> pending = other.request(query, 1, TimeUnit.HOURS);
+        other.close();
+        ExecutionException closed =
+                assertThrows(ExecutionException.class, () -> pending.get(1, TimeUnit.MINUTES));
+        closeSubscriber(s);
+
+        /* Verify */
+        assertInstanceOf(IllegalStateException.class, closed.getCause());
+    }
+
+    /**
+     * Test that an off-heap payload reaches every subscriber and is recycled once they processed it,
+     * or right away if the event has no subscriber.
+     */
+    @Test
+    void testOffHeapPayload() throws InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        TestSubscriber s0 = TestSubscriber.createPublic();
+        TestSubscriber s1 = TestSubscriber.createPublic();
+        TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, s0, router);
+        TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, s1, router);
+        router.registerEventType("PONG", Scope.SCOPE_PUBLIC, s0);
+        byte[] bytes = new byte[40_000];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) i;
+        Event ping = new Event();
+        ping.setType("PING");
+        Event pong = new Event();
+        pong.setType("PONG");
+
+        /* Execute */
+        MemorySegment first = router.allocatePayload(ping, bytes.length);
+        MemorySegment.copy(bytes, 0, first, ValueLayout.JAVA_BYTE, 0, bytes.length);
+        router.publishAcked(ping).get(1, TimeUnit.MINUTES);
+        boolean moved = ping.isPayloadOffHeap();
+        MemorySegment second = router.allocatePayload(pong, 35_000);
+        router.publish(pong);
+        router.flush().get(1, TimeUnit.MINUTES);
+        MemorySegment third = router.allocatePayload(ping, 50);
+        closeSubscriber(s0);
+        closeSubscriber(s1);
+
+        /* Verify */
+        assertFalse(moved);
+        assertArrayEquals(bytes, s0.getReceived().getFirst().getPayload());
+        assertArrayEquals(bytes, s1.getReceived().getFirst().getPayload());
+        assertEquals(first.address(), second.address());
+        assertEquals(first.address(), router.allocatePayload(pong, 60_000).address());
+        assertNotEquals(first.address(), third.address());
+    }
+
+    /**
+     * Test that the partition key of published events reaches subscribers.
+     */
+    @Test
+    void testPartitionKeyIsDelivered() {
+        /* Set up */
+        TestSubscriber s = TestSubscriber.createPublic();
+        TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, s, router);
+        Event e = new Event();
+        e.setType("PING");
+        e.setPartitionKey(42L);
+
+        /* Execute */
+        router.publish(e);
+        router.publishBatch(List.of(e));
+        if (awaitRouterEmptyTimedOut()) {
+            fail("wait for event router to be empty timed out");
+        }
+        closeSubscriber(s);
+
+        /* Verify */
+        assertEquals(List.of(42L, 42L), s.getReceived().stream().map(Event::getPartitionKey).toList());
+    }
+
+    /**
+     * Test that a batch of events filled by a translator is received.
+     */
+    @Test
+    void testPublishBatchWithTranslator() {
+        /* Set up */
+        TestSubscriber s = TestSubscriber.createPublic();
+        EventType eventType = router.registerEventType("PING", Scope.SCOPE_PUBLIC, s);
+        router.subscribe(eventType, s);
+        String[] senders = {"a", "b", "c"};
+
+        /* Execute */
+        router.publishBatch(eventType, (slot, _, from) -> slot.setFrom(from), senders);
+        if (awaitRouterEmptyTimedOut()) {
+            fail("wait for event router to be empty timed out");
+        }
+        closeSubscriber(s);
+
+        /* Verify */
+        assertEquals(3, s.getReceived().size());
+        assertEquals(List.of("PING", "PING", "PING"), s.getReceived().stream().map(Event::getType).toList());
+    }
+
+    /**
+     * Test that nothing is published when a batch contains an event type that is not registered.
+     */
+    @Test
+    void testExceptionOnPublishBatchWithEventNotRegistered() {
+        /* Set up */
+        TestSubscriber s = TestSubscriber.createPublic();
+        String eventType = "PING";
+        TestEvent.subscribe(eventType, Scope.SCOPE_PUBLIC, s, router);
+        Event registered = new Event();
+        registered.setType(eventType);
+        Event notRegistered = new Event();
+        notRegistered.setType("EVENT");
+
+        /* Execute */
+        NoSuchElementException ex =
+                assertThrows(
+                        NoSuchElementException.class,
+                        () -> router.publishBatch(new Event[] {registered, notRegistered}));
+        if (awaitRouterEmptyTimedOut()) {
+            fail("wait for event router to be empty timed out");
+        }
+        closeSubscriber(s);
+
+        /* Verify */
+        assertTrue(ex.getMessage().contains("'EVENT' is not registered"));
+        assertTrue(s.getReceived().isEmpty());
+    }
+
+    /**
+     * Test that a slow subscriber still reads the original content of an event after the ring
+     * buffer slot it was published in has been overwritten.
+     */
+    @Test
+    void testEventStaysValidAfterRingBufferWraps()
+            throws InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<Long> timestamps = Collections.synchronizedList(new ArrayList<>());
+        SubscriberRuntime slowRuntime = SubscriberRuntime.fixed(1);
+        Subscriber slow =
+                new Subscriber(slowRuntime) {
+                    @Override
+                    public @NotNull Scope scope() {
+                        return Scope.SCOPE_PUBLIC;
+                    }
+
+                    @Override
+                    protected void processEvent(@NotNull Event e) {
+                        try {
+                            blocked.await();
+                        } catch (InterruptedException ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                        timestamps.add(e.getTimestamp());
+                    }
+                };
+        TestSubscriber fast = TestSubscriber.createPublic();
+        EventType slowType = router.registerEventType("SLOW", Scope.SCOPE_PUBLIC, slow);
+        router.subscribe(slowType, slow);
+        TestEvent.subscribe("FAST", Scope.SCOPE_PUBLIC, fast, router);
+
+        /* Execute */
+        router.publish(slowType, (slot, _) -> slot.setTimestamp(-1L));
+        for (int i = 0; i < 2 * EventRouter.BUFFER_SIZE - 1; i++)
+            TestEvent.publish("FAST", "", null, i, router);
+        Event last = new Event();
+        last.setType("FAST");
+        router.publishAcked(last).get(1, TimeUnit.MINUTES);
+        blocked.countDown();
+        slow.close();
+        slowRuntime.close();
+        closeSubscriber(fast);
+
+        /* Verify */
+        assertEquals(List.of(-1L), timestamps);
+        assertEquals(2 * EventRouter.BUFFER_SIZE, fast.getReceived().size());
+    }
+
+    /**
+     * Test that subscribers of the {@code *} channel receive events of every type, including types
+     * registered after they subscribed.
+     */
+    @Test
+    void testWildcardSubscriberReceivesAllEvents() {
+        /* Set up */
+        TestSubscriber s = TestSubscriber.createPrivate();
+        router.subscribe("*", s);
+        TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, TestSubscriber.createPublic(), router);
+        router.registerEventType("EVENT", Scope.SCOPE_PRIVATE, s);
+
+        /* Execute */
+        TestEvent.publish("PING", "", null, 1L, router);
+        TestEvent.publish("EVENT", "", null, 2L, router);
+        if (awaitRouterEmptyTimedOut()) {
+            fail("wait for event router to be empty timed out");
+        }
+        closeSubscriber(s);
+
+        /* Verify */
+        assertEquals(List.of("PING", "EVENT"), s.getReceived().stream().map(Event::getType).toList());
+    }
+
+    /**
+     * Test that subscribers of a scope channel only receive events at or below that scope.
+     */
+    @Test
+    void testScopeWildcardSubscriberReceivesEventsAtOrBelowScope() {
+        /* Set up */
+        TestSubscriber sPublic = TestSubscriber.createPublic();
+        TestSubscriber sPrivate = TestSubscriber.createPrivate();
+        router.subscribe("*" + Scope.SCOPE_PUBLIC, sPublic);
+        router.subscribe("*" + Scope.SCOPE_PRIVATE, sPrivate);
+        router.registerEventType("PING", Scope.SCOPE_PUBLIC, sPublic);
+        router.registerEventType("EVENT", Scope.SCOPE_PRIVATE, sPrivate);
+
+        /* Execute */
+        TestEvent.publish("PING", "", null, 1L, router);
+        TestEvent.publish("EVENT", "", null, 2L, router);
+        if (awaitRouterEmptyTimedOut()) {
+            fail("wait for event router to be empty timed out");
+        }
+        closeSubscriber(sPublic);
+        closeSubscriber(sPrivate);
+
+        /* Verify */
+        assertEquals(List.of("PING"), sPublic.getReceived().stream().map(Event::getType).toList());
+        assertEquals(
+                List.of("PING", "EVENT"), sPrivate.getReceived().stream().map(Event::getType).toList());
+    }
+
+    /**
+     * Test that a subscriber of both an event type and a wildcard channel receives events once, and
+     * stops receiving them from the channel once unsubscribed.
+     */
+    @Test
+    void testWildcardAndDirectSubscriberReceivesOnce() {
+        /* Set up */
+        TestSubscriber s = TestSubscriber.createPrivate();
+        TestEvent.subscribe("PING", Scope.SCOPE_PUBLIC, s, router);
+        router.subscribe("*", s);
+
+        /* Execute */
+        TestEvent.publish("PING", "", null, 1L, router);
+        if (awaitRouterEmptyTimedOut()) {
+            fail("wait for event router to be empty timed out");
+        }
+        router.unsubscribe("*", s);
+        router.unsubscribe("PING", s);
+        TestEvent.publish("PING", "", null, 2L, router);
+        if (awaitRouterEmptyTimedOut()) {
+            fail("wait for event router to be empty timed out");
+        }
+        closeSubscriber(s);
+
+        /* Verify */
+        assertEquals(1, s.getReceived().size());
+        assertEquals(1L, s.getReceived().getFirst().getTimestamp());
+    }
+
+    /**
+     * Test that pattern subscribers receive events of matching types their scope gives access to,
+     * including types registered after they subscribed.
+     */
+    @Test
+    void testPatternSubscriberReceivesMatchingEvents() {
+        /* Set up */
+        TestSubscriber sCreated = TestSubscriber.createPublic();
+        TestSubscriber sOrders = TestSubscriber.createPublic();
+        router.subscribePattern("orders.*.created", sCreated);
+        router.subscribePattern("orders.>", sOrders);
+        router.registerEventType("orders.eu.created", Scope.SCOPE_PUBLIC, sCreated);
+        router.registerEventType("orders.eu.deleted", Scope.SCOPE_PUBLIC, sCreated);
+        router.registerEventType(
+                "orders.us.created", Scope.SCOPE_PRIVATE, TestSubscriber.createPrivate());
+        router.registerEventType("payments.eu.created", Scope.SCOPE_PUBLIC, sCreated);
+
+        /* Execute */
+        List<String> types =
+                List.of("orders.eu.created", "orders.eu.deleted", "orders.us.created", "payments.eu.created");
+        for (String type : types) TestEvent.publish(type, "", null, 1L, router);
+        if (awaitRouterEmptyTimedOut()) {
+            fail("wait for event router to be empty timed out");
+        }
+        router.unsubscribePattern("orders.>", sOrders);
+        TestEvent.publish("orders.eu.deleted", "", null, 2L, router);
+        if (awaitRouterEmptyTimedOut()) {
+            fail("wait for event router to be empty timed out");
+        }
+        closeSubscriber(sCreated);
+        closeSubscriber(sOrders);
+
+        /* Verify */
+        assertEquals(
+                List.of("orders.eu.created"), sCreated.getReceived().stream().map(Event::getType).toList());
+        assertEquals(
+                List.of("orders.eu.created", "orders.eu.deleted"),
+                sOrders.getReceived().stream().map(Event::getType).toList());
+    }
 }
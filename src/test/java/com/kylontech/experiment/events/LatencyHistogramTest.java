@@ -0,0 +1,90 @@
+package com.kylontech.experiment.events;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    /**
+     * Test that every value falls in a bucket whose bounds hold it, within 1/32 of the value.
+     */
+    @Test
+    void testBucketBounds() {
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 1000, 1 << 20, Long.MAX_VALUE};
+        for (long value : values) assertBucketHolds(value);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 100_000; i++) assertBucketHolds(random.nextLong(Long.MAX_VALUE));
+    }
+
+    private static void assertBucketHolds(long value) {
+        int bucket = LatencyHistogram.bucketOf(value);
+        long lowest = LatencyHistogram.lowestValueOf(bucket);
+        long highest = LatencyHistogram.highestValueOf(bucket);
+
+        assertTrue(lowest <= value && value <= highest, value + " is out of its bucket");
+        assertTrue(highest - lowest <= Math.max(value / 32, 0), "bucket of " + value + " is too wide");
+    }
+
+    /**
+     * Test percentiles of a uniform distribution.
+     */
+    @Test
+    void testSnapshot() {
+        /* Set up */
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        /* Execute */
+        for (long i = 1; i <= 10_000; i++) histogram.record(i * 1000);
+        histogram.record(-1);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        /* Verify */
+        assertEquals(10_001, snapshot.count());
+        assertEquals(5_000_000, snapshot.p50(), 5_000_000 / 32.0);
+        assertEquals(9_900_000, snapshot.p99(), 9_900_000 / 32.0);
+        assertEquals(9_990_000, snapshot.p999(), 9_990_000 / 32.0);
+        assertEquals(10_000_000, snapshot.max());
+        assertEquals(5_000_000, snapshot.mean(), 1000);
+    }
+
+    /**
+     * Test that a reset histogram is empty.
+     */
+    @Test
+    void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+
+        histogram.reset();
+
+        assertEquals(new LatencyHistogram.Snapshot(0, 0, 0, 0, 0, 0), histogram.snapshot());
+    }
+
+    /**
+     * Test that recording from several threads does not allocate once the histogram is created.
+     */
+    @Test
+    void testRecordDoesNotAllocate() throws InterruptedException {
+        /* Set up */
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread other = Thread.ofPlatform().start(() -> {
+            for (int i = 0; i < 1_000_000; i++) histogram.record(i);
+        });
+
+        /* Execute */
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1_000_000; i++) histogram.record(i);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        other.join();
+
+        /* Verify */
+        assertTrue(allocated < 1024, "allocated " + allocated + " bytes");
+        assertEquals(2_000_000, histogram.snapshot().count());
+    }
+}
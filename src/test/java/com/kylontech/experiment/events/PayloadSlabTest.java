@@ -0,0 +1,44 @@
+package com.kylontech.experiment.events;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayloadSlabTest {
+
+    /**
+     * Test that payload sizes map to the smallest size class holding them.
+     */
+    @Test
+    void testSizeClasses() {
+        /* Verify */
+        assertEquals(0, PayloadSlab.classOf(0));
+        assertEquals(0, PayloadSlab.classOf(256));
+        assertEquals(1, PayloadSlab.classOf(257));
+        assertEquals(1, PayloadSlab.classOf(512));
+        assertEquals(8, PayloadSlab.classOf(40_000));
+        assertEquals(
+                PayloadSlab.MAX_SHIFT - PayloadSlab.MIN_SHIFT, PayloadSlab.classOf(PayloadSlab.MAX_BLOCK));
+    }
+
+    /**
+     * Test that released blocks are reused by allocations of their size class only.
+     */
+    @Test
+    void testBlocksAreRecycled() {
+        /* Set up */
+        PayloadSlab slab = new PayloadSlab();
+
+        /* Execute */
+        PayloadSlab.Block first = slab.allocate(1000);
+        first.release();
+        PayloadSlab.Block other = slab.allocate(100);
+        PayloadSlab.Block second = slab.allocate(600);
+
+        /* Verify */
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(1024, second.segment.byteSize());
+        assertThrows(IllegalArgumentException.class, () -> slab.allocate(PayloadSlab.MAX_BLOCK + 1));
+    }
+}
@@ -0,0 +1,172 @@
+package com.kylontech.experiment.events;
+
+import com.kylontech.experiment.events.testutil.TestSubscriber;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedEventRouterTest {
+
+    private static final int SHARDS = 4;
+
+    private ShardedEventRouter router;
+
+    @BeforeEach
+    void setUp() {
+        router = new ShardedEventRouter(Scope.SCOPE_PRIVATE, SHARDS);
+    }
+
+    @AfterEach
+    void tearDown() throws TimeoutException, InterruptedException {
+        router.close();
+    }
+
+    private static Event event(String type, long timestamp) {
+        Event e = new Event();
+        e.setType(type);
+        e.setFrom("");
+        e.setTimestamp(timestamp);
+        return e;
+    }
+
+    /**
+     * Test that event types are spread over shards and each keeps its order.
+     */
+    @Test
+    void testEventsKeepOrderPerType() throws TimeoutException, InterruptedException {
+        /* Set up */
+        TestSubscriber s = TestSubscriber.createPublic();
+        List<String> types = new ArrayList<>();
+        Set<Integer> shards = new HashSet<>();
+        for (int i = 0; i < 16; i++) {
+            String type = "TYPE_" + i;
+            types.add(type);
+            shards.add(router.shardOf(type));
+            router.registerEventType(type, Scope.SCOPE_PUBLIC, s);
+            router.subscribe(type, s);
+        }
+
+        /* Execute */
+        List<Event> batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            for (String type : types) {
+                if (i % 2 == 0) router.publish(event(type, i));
+                else batch.add(event(type, i));
+            }
+            if (!batch.isEmpty()) {
+                router.publishBatch(batch);
+                batch.clear();
+            }
+        }
+        assertFalse(router.awaitEmptyTimedOut(1, TimeUnit.MINUTES));
+        s.close();
+
+        /* Verify */
+        assertTrue(shards.size() > 1);
+        assertEquals(100 * types.size(), s.getReceived().size());
+        for (String type : types) {
+            List<Long> timestamps =
+                    s.getReceived().stream()
+                            .filter(e -> e.getType().equals(type))
+                            .map(Event::getTimestamp)
+                            .toList();
+            for (int i = 0; i < timestamps.size(); i++) assertEquals(i, timestamps.get(i));
+        }
+    }
+
+    /**
+     * Test that an event type can be placed in a given shard before it is registered only.
+     */
+    @Test
+    void testPlacement() {
+        /* Set up */
+        TestSubscriber s = TestSubscriber.createPublic();
+        int shard = (router.shardOf("PING") + 1) % SHARDS;
+
+        /* Execute */
+        router.place("PING", shard);
+        router.registerEventType("PING", Scope.SCOPE_PUBLIC, s);
+
+        /* Verify */
+        assertEquals(shard, router.shardOf("PING"));
+        assertEquals("PING", router.getEventType("PING").getName());
+        assertThrows(IllegalStateException.class, () -> router.place("PING", 0));
+        assertThrows(IllegalStateException.class, () -> router.place("*", 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> router.place("PONG", SHARDS));
+    }
+
+    /**
+     * Test that wildcard channel and pattern subscribers receive events from all shards.
+     */
+    @Test
+    void testWildcardAndPatternSpanShards() throws TimeoutException, InterruptedException {
+        /* Set up */
+        TestSubscriber sAll = TestSubscriber.createPrivate();
+        TestSubscriber sOrders = TestSubscriber.createPublic();
+        router.subscribe("*", sAll);
+        router.subscribePattern("orders.>", sOrders);
+        for (int i = 0; i < SHARDS; i++) {
+            router.place("orders." + i, i);
+            router.registerEventType("orders." + i, Scope.SCOPE_PUBLIC, sOrders);
+        }
+
+        /* Execute */
+        for (int i = 0; i < SHARDS; i++) router.publish(event("orders." + i, i));
+        assertFalse(router.awaitEmptyTimedOut(1, TimeUnit.MINUTES));
+        router.unsubscribe("*", sAll);
+        router.unsubscribePattern("orders.>", sOrders);
+        for (int i = 0; i < SHARDS; i++) router.publish(event("orders." + i, i));
+        assertFalse(router.awaitEmptyTimedOut(1, TimeUnit.MINUTES));
+        sAll.close();
+        sOrders.close();
+
+        /* Verify */
+        assertEquals(SHARDS, sAll.getReceived().size());
+        assertEquals(SHARDS, sOrders.getReceived().size());
+    }
+
+    /**
+     * Test that batches of events, flushes and metrics span all shards like in a single router.
+     */
+    @Test
+    void testEventRouterMethodsSpanShards()
+            throws TimeoutException, InterruptedException, ExecutionException {
+        /* Set up */
+        ShardedEventRouter metered =
+                new ShardedEventRouter(EventRouter.builder(Scope.SCOPE_PRIVATE).metrics(true), SHARDS);
+        TestSubscriber s = TestSubscriber.createPublic();
+        Event[] events = new Event[SHARDS * 2];
+        for (int i = 0; i < SHARDS; i++) {
+            metered.place("TYPE_" + i, i);
+            metered.registerEventType("TYPE_" + i, Scope.SCOPE_PUBLIC, s);
+            metered.subscribe("TYPE_" + i, s);
+            events[2 * i] = event("TYPE_" + i, 2 * i);
+            events[2 * i + 1] = event("TYPE_" + i, 2 * i + 1);
+        }
+
+        /* Execute */
+        metered.publishBatch(events);
+        metered.flush().get(1, TimeUnit.MINUTES);
+        metered.close();
+        s.close();
+
+        /* Verify */
+        assertEquals(SHARDS * 2, s.getReceived().size());
+        assertEquals(SHARDS * 2, metered.getPublishedEvents());
+        assertEquals(SHARDS * 2, metered.getDispatchedEvents());
+        assertEquals(SHARDS * EventRouter.BUFFER_SIZE, metered.getBufferSize());
+        for (int i = 0; i < SHARDS; i++) assertEquals(2L, metered.getDispatchCounts().get("TYPE_" + i));
+        assertEquals(0L, metered.getDispatchCounts().get("*"));
+        assertNull(metered.getJournal("TYPE_0"));
+    }
+}
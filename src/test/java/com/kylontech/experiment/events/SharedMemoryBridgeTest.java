@@ -0,0 +1,260 @@
+package com.kylontech.experiment.events;
+
+import com.kylontech.experiment.events.testutil.TestEvent;
+import com.kylontech.experiment.events.testutil.TestSubscriber;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedMemoryBridgeTest {
+
+    @TempDir
+    Path directory;
+
+    static @NotNull EventRouter createRouter() {
+        EventRouter router = new EventRouter(Scope.SCOPE_PRIVATE);
+        router.registerEventType("PING", Scope.SCOPE_PUBLIC, TestSubscriber.createPublic());
+        router.registerEventType("LOCAL", Scope.SCOPE_PRIVATE, TestSubscriber.createPrivate());
+        return router;
+    }
+
+    static void await(@NotNull BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() - deadline < 0, "Timed out");
+            Thread.sleep(1);
+        }
+    }
+
+    static @NotNull List<String> payloads(@NotNull TestSubscriber s, @NotNull String type) {
+        return s.getReceived().stream()
+                .filter(e -> e.getType().equals(type))
+                .map(e -> new String(e.getPayload(), StandardCharsets.UTF_8))
+                .toList();
+    }
+
+    /**
+     * Test that events within the bridges' scope cross routers sharing a ring, in order, and are not
+     * echoed back to the router that published them. Each router stands for a process.
+     */
+    @Test
+    void testEventsCrossRouters()
+            throws IOException, InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        Path file = directory.resolve("events.ring");
+        EventRouter a = createRouter();
+        EventRouter b = createRouter();
+        SharedMemoryBridge bridgeA = SharedMemoryBridge.open(a, file, Scope.SCOPE_FEDERATED, 1024, 256);
+        SharedMemoryBridge bridgeB = SharedMemoryBridge.open(b, file, Scope.SCOPE_FEDERATED, 1024, 256);
+        TestSubscriber sA = TestSubscriber.createPrivate();
+        TestSubscriber sB = TestSubscriber.createPrivate();
+        for (String type : List.of("PING", "LOCAL")) {
+            a.subscribe(type, sA);
+            b.subscribe(type, sB);
+        }
+
+        /* Execute */
+        for (int i = 0; i < 200; i++) {
+            TestEvent.publish("PING", "a", ("a" + i).getBytes(StandardCharsets.UTF_8), i, a);
+            if (i % 20 == 0) TestEvent.publish("LOCAL", "a", new byte[0], i, a);
+            if (i % 4 == 0)
+                TestEvent.publish("PING", "b", ("b" + i).getBytes(StandardCharsets.UTF_8), i, b);
+        }
+        await(() -> bridgeB.getReceivedEvents() == 200 && bridgeA.getReceivedEvents() == 50);
+        a.flush().get(1, TimeUnit.MINUTES);
+        b.flush().get(1, TimeUnit.MINUTES);
+        bridgeA.close();
+        bridgeB.close();
+        a.close();
+        b.close();
+        sA.close();
+        sB.close();
+
+        /* Verify */
+        assertEquals(200, bridgeA.getForwardedEvents());
+        assertEquals(50, bridgeB.getForwardedEvents());
+        assertEquals(0, bridgeA.getDroppedEvents() + bridgeB.getDroppedEvents());
+        assertEquals(250, payloads(sA, "PING").size());
+        assertEquals(250, payloads(sB, "PING").size());
+        assertEquals(10, payloads(sA, "LOCAL").size());
+        assertEquals(0, payloads(sB, "LOCAL").size());
+        List<String> fromA = payloads(sB, "PING").stream().filter(p -> p.startsWith("a")).toList();
+        for (int i = 0; i < 200; i++) assertEquals("a" + i, fromA.get(i));
+        Event last = sB.getReceived().stream().filter(e -> e.getFrom().equals("a")).toList().getLast();
+        assertEquals(199, last.getTimestamp());
+    }
+
+    /**
+     * Process sharing a ring with a test: it publishes events once it received a given number of
+     * events from the test, then prints the counters of its bridge.
+     */
+    static final class Peer {
+        public static void main(String[] args) throws Exception {
+            Path file = Path.of(args[0]);
+            int expected = Integer.parseInt(args[1]);
+            int published = Integer.parseInt(args[2]);
+            EventRouter router = createRouter();
+            TestSubscriber s = TestSubscriber.createPrivate();
+            router.subscribe("PING", s);
+            SharedMemoryBridge bridge = SharedMemoryBridge.open(router, file, Scope.SCOPE_FEDERATED, 1024, 128);
+            System.out.println("ready");
+            await(() -> bridge.getReceivedEvents() == expected);
+            for (int i = 0; i < published; i++)
+                TestEvent.publish("PING", "peer", ("peer" + i).getBytes(StandardCharsets.UTF_8), i, router);
+            router.flush().get(1, TimeUnit.MINUTES);
+            bridge.close();
+            router.close();
+            s.close();
+            System.out.println(bridge.getForwardedEvents() + " " + payloads(s, "PING").size());
+        }
+    }
+
+    /**
+     * Test that events cross processes mapping the same ring, both ways and in order.
+     */
+    @Test
+    void testEventsCrossProcesses()
+            throws IOException, InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        Path file = directory.resolve("events.ring");
+        EventRouter router = createRouter();
+        TestSubscriber s = TestSubscriber.createPrivate();
+        router.subscribe("PING", s);
+        SharedMemoryBridge bridge = SharedMemoryBridge.open(router, file, Scope.SCOPE_FEDERATED, 1024, 128);
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+        Process peer =
+                new ProcessBuilder(
+                                java.toString(), "--enable-preview",
+                                "-cp", System.getProperty("java.class.path"),
+                                Peer.class.getName(), file.toString(), "20", "500")
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+        BufferedReader output =
+                new BufferedReader(new InputStreamReader(peer.getInputStream(), StandardCharsets.UTF_8));
+
+        /* Execute */
+        String ready = output.readLine();
+        for (int i = 0; i < 20; i++)
+            TestEvent.publish("PING", "test", ("test" + i).getBytes(StandardCharsets.UTF_8), i, router);
+        String counters = output.readLine();
+        boolean exited = peer.waitFor(1, TimeUnit.MINUTES);
+        await(() -> bridge.getReceivedEvents() == 500);
+        router.flush().get(1, TimeUnit.MINUTES);
+        bridge.close();
+        router.close();
+        s.close();
+
+        /* Verify */
+        assertEquals("ready", ready);
+        assertEquals("500 520", counters);
+        assertTrue(exited);
+        assertEquals(0, peer.exitValue());
+        assertEquals(0, bridge.getDroppedEvents());
+        List<String> fromPeer = payloads(s, "PING").stream().filter(p -> p.startsWith("peer")).toList();
+        assertEquals(500, fromPeer.size());
+        for (int i = 0; i < 500; i++) assertEquals("peer" + i, fromPeer.get(i));
+    }
+
+    /**
+     * Test that events too large for a slot are dropped, and that events of types the receiving
+     * router did not register are rejected.
+     */
+    @Test
+    void testDroppedAndRejectedEvents()
+            throws IOException, InterruptedException, TimeoutException {
+        /* Set up */
+        Path file = directory.resolve("events.ring");
+        EventRouter a = createRouter();
+        EventRouter b = createRouter();
+        a.registerEventType("OTHER", Scope.SCOPE_PUBLIC, TestSubscriber.createPublic());
+        SharedMemoryBridge bridgeA = SharedMemoryBridge.open(a, file, Scope.SCOPE_FEDERATED, 1024, 256);
+        SharedMemoryBridge bridgeB = SharedMemoryBridge.open(b, file, Scope.SCOPE_FEDERATED, 1024, 256);
+
+        /* Execute */
+        TestEvent.publish("PING", "a", new byte[1024], 0, a);
+        TestEvent.publish("OTHER", "a", new byte[0], 0, a);
+        await(() -> bridgeB.getRejectedEvents() == 1);
+        bridgeA.close();
+        bridgeB.close();
+        a.close();
+        b.close();
+
+        /* Verify */
+        assertEquals(1, bridgeA.getDroppedEvents());
+        assertEquals(1, bridgeA.getForwardedEvents());
+        assertEquals(0, bridgeB.getReceivedEvents());
+    }
+
+    /**
+     * Test that a writer drops its event rather than wait for a stalled previous writer of its slot,
+     * and takes the slot over once that writer has stalled for long enough.
+     */
+    @Test
+    void testStalledWriterIsNotWaitedFor()
+            throws IOException, InterruptedException, TimeoutException {
+        /* Set up */
+        Path file = directory.resolve("events.ring");
+        EventRouter router = createRouter();
+        SharedMemoryBridge.open(router, file, Scope.SCOPE_FEDERATED, 4, 128).close();
+        try (FileChannel channel =
+                FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // A writer of another process claimed sequence 0 of a ring lapped once, and stalled
+            MappedByteBuffer ring = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            ring.order(ByteOrder.LITTLE_ENDIAN);
+            ring.putLong(64, 4L);
+            ring.putLong(128, 1L);
+        }
+        SharedMemoryBridge bridge = SharedMemoryBridge.open(router, file, Scope.SCOPE_FEDERATED, 4, 128);
+
+        /* Execute */
+        TestEvent.publish("PING", "a", new byte[0], 0, router);
+        assertFalse(router.awaitEmptyTimedOut(1, TimeUnit.MINUTES));
+        long droppedWhileStalled = bridge.getDroppedEvents();
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(SharedMemoryBridge.TAKEOVER_NANOS) + 100);
+        TestEvent.publish("PING", "a", new byte[0], 1, router);
+        assertFalse(router.awaitEmptyTimedOut(1, TimeUnit.MINUTES));
+        bridge.close();
+        router.close();
+
+        /* Verify */
+        assertEquals(1, droppedWhileStalled);
+        assertEquals(1, bridge.getForwardedEvents());
+    }
+
+    /**
+     * Test that a file which is not a ring is not mapped.
+     */
+    @Test
+    void testInvalidRing() throws IOException, InterruptedException, TimeoutException {
+        /* Set up */
+        Path file = directory.resolve("events.ring");
+        Files.write(file, new byte[4096]);
+        EventRouter router = createRouter();
+
+        /* Execute & Verify */
+        assertThrows(IOException.class, () -> SharedMemoryBridge.open(router, file));
+        Path other = directory.resolve("other.ring");
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> SharedMemoryBridge.open(router, other, Scope.SCOPE_PUBLIC, 3, 64));
+        router.close();
+    }
+}
@@ -0,0 +1,212 @@
+package com.kylontech.experiment.events;
+
+import com.kylontech.experiment.events.testutil.TestEvent;
+import com.kylontech.experiment.events.testutil.TestSubscriber;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.kylontech.experiment.events.SharedMemoryBridgeTest.await;
+import static com.kylontech.experiment.events.SharedMemoryBridgeTest.payloads;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SocketBridgeTest {
+
+    static @NotNull EventRouter createRouter(int bufferSize) {
+        EventRouter router = EventRouter.builder(Scope.SCOPE_PRIVATE).bufferSize(bufferSize).build();
+        router.registerEventType("PING", Scope.SCOPE_PUBLIC, TestSubscriber.createPublic());
+        router.registerEventType("FED", Scope.SCOPE_FEDERATED, TestSubscriber.createPrivate());
+        router.registerEventType("LOCAL", Scope.SCOPE_PRIVATE, TestSubscriber.createPrivate());
+        return router;
+    }
+
+    /**
+     * Connect two routers through a loopback connection.
+     */
+    static @NotNull List<SocketBridge> bridge(@NotNull EventRouter a, @NotNull EventRouter b)
+            throws IOException, InterruptedException, ExecutionException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            CompletableFuture<SocketBridge> accepted = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return SocketBridge.accept(b, server, Scope.SCOPE_FEDERATED);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            SocketBridge connected = SocketBridge.connect(a, server.getLocalAddress(), Scope.SCOPE_FEDERATED);
+            return List.of(connected, accepted.get());
+        }
+    }
+
+    /**
+     * Test that federated and public events cross the connection both ways, in order, and are not
+     * echoed back, while private events stay in their router.
+     */
+    @Test
+    void testEventsCrossRouters()
+            throws IOException, InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        EventRouter a = createRouter(EventRouter.BUFFER_SIZE);
+        EventRouter b = createRouter(EventRouter.BUFFER_SIZE);
+        List<SocketBridge> bridges = bridge(a, b);
+        SocketBridge bridgeA = bridges.get(0);
+        SocketBridge bridgeB = bridges.get(1);
+        TestSubscriber sA = TestSubscriber.createPrivate();
+        TestSubscriber sB = TestSubscriber.createPrivate();
+        for (String type : List.of("PING", "FED", "LOCAL")) {
+            a.subscribe(type, sA);
+            b.subscribe(type, sB);
+        }
+
+        /* Execute */
+        for (int i = 0; i < 200; i++) {
+            TestEvent.publish("PING", "a", ("a" + i).getBytes(StandardCharsets.UTF_8), i, a);
+            if (i % 10 == 0) TestEvent.publish("FED", "a", new byte[0], i, a);
+            if (i % 20 == 0) TestEvent.publish("LOCAL", "a", new byte[0], i, a);
+            if (i % 4 == 0)
+                TestEvent.publish("PING", "b", ("b" + i).getBytes(StandardCharsets.UTF_8), i, b);
+        }
+        await(() -> bridgeB.getReceivedEvents() == 220 && bridgeA.getReceivedEvents() == 50);
+        a.flush().get(1, TimeUnit.MINUTES);
+        b.flush().get(1, TimeUnit.MINUTES);
+        bridgeA.close();
+        bridgeB.close();
+        a.close();
+        b.close();
+        sA.close();
+        sB.close();
+
+        /* Verify */
+        assertEquals(220, bridgeA.getForwardedEvents());
+        assertEquals(50, bridgeB.getForwardedEvents());
+        assertEquals(0, bridgeA.getDroppedEvents() + bridgeB.getDroppedEvents());
+        assertEquals(250, payloads(sA, "PING").size());
+        assertEquals(250, payloads(sB, "PING").size());
+        assertEquals(20, payloads(sB, "FED").size());
+        assertEquals(10, payloads(sA, "LOCAL").size());
+        assertEquals(0, payloads(sB, "LOCAL").size());
+        List<String> fromA = payloads(sB, "PING").stream().filter(p -> p.startsWith("a")).toList();
+        for (int i = 0; i < 200; i++) assertEquals("a" + i, fromA.get(i));
+        Event last = sB.getReceived().stream().filter(e -> e.getFrom().equals("a")).toList().getLast();
+        assertEquals(199, last.getTimestamp());
+    }
+
+    static void flood(@NotNull EventRouter router, @NotNull String from) {
+        for (int i = 0; i < 50_000; i++) TestEvent.publish("PING", from, new byte[256], i, router);
+    }
+
+    /**
+     * Test that a receiving router with a small ring buffer holds the sender back rather than make it
+     * drop events, and that the events which cross keep their order.
+     */
+    @Test
+    void testFlowControl()
+            throws IOException, InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        EventRouter a = createRouter(EventRouter.BUFFER_SIZE);
+        EventRouter b = createRouter(64);
+        List<SocketBridge> bridges = bridge(a, b);
+        TestSubscriber s = TestSubscriber.createPrivate();
+        b.subscribe("PING", s);
+
+        /* Execute */
+        flood(a, "a");
+        a.flush().get(1, TimeUnit.MINUTES);
+        long forwarded = bridges.get(0).getForwardedEvents();
+        await(() -> bridges.get(1).getReceivedEvents() == forwarded);
+        b.flush().get(1, TimeUnit.MINUTES);
+        bridges.forEach(SocketBridge::close);
+        a.close();
+        b.close();
+        s.close();
+
+        /* Verify */
+        assertEquals(50_000, forwarded);
+        assertEquals(0, bridges.get(0).getDroppedEvents());
+        assertEquals(50_000, s.getReceived().size());
+        for (int i = 1; i < s.getReceived().size(); i++)
+            assertTrue(s.getReceived().get(i - 1).getTimestamp() < s.getReceived().get(i).getTimestamp());
+    }
+
+    /**
+     * Test that two routers with small ring buffers flooding each other through a connection both
+     * keep dispatching, instead of waiting for each other to take their events.
+     */
+    @Test
+    void testMutualFlood()
+            throws IOException, InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        EventRouter a = createRouter(64);
+        EventRouter b = createRouter(64);
+        List<SocketBridge> bridges = bridge(a, b);
+        SocketBridge bridgeA = bridges.get(0);
+        SocketBridge bridgeB = bridges.get(1);
+        TestSubscriber sA = TestSubscriber.createPrivate();
+        TestSubscriber sB = TestSubscriber.createPrivate();
+        a.subscribe("PING", sA);
+        b.subscribe("PING", sB);
+
+        /* Execute */
+        CompletableFuture<Void> floodA = CompletableFuture.runAsync(() -> flood(a, "a"));
+        CompletableFuture<Void> floodB = CompletableFuture.runAsync(() -> flood(b, "b"));
+        CompletableFuture.allOf(floodA, floodB).get(1, TimeUnit.MINUTES);
+        a.flush().get(1, TimeUnit.MINUTES);
+        b.flush().get(1, TimeUnit.MINUTES);
+        await(() -> bridgeB.getReceivedEvents() == bridgeA.getForwardedEvents()
+                && bridgeA.getReceivedEvents() == bridgeB.getForwardedEvents());
+        a.flush().get(1, TimeUnit.MINUTES);
+        b.flush().get(1, TimeUnit.MINUTES);
+        bridges.forEach(SocketBridge::close);
+        a.close();
+        b.close();
+        sA.close();
+        sB.close();
+
+        /* Verify */
+        assertEquals(50_000, bridgeA.getForwardedEvents() + bridgeA.getDroppedEvents());
+        assertEquals(50_000, bridgeB.getForwardedEvents() + bridgeB.getDroppedEvents());
+        assertEquals(50_000 + bridgeB.getForwardedEvents(), sA.getReceived().size());
+        assertEquals(50_000 + bridgeA.getForwardedEvents(), sB.getReceived().size());
+    }
+
+    /**
+     * Test that closing one end of the connection disconnects the other one, which stops forwarding
+     * events, and that private events may not leave the host.
+     */
+    @Test
+    void testDisconnect()
+            throws IOException, InterruptedException, TimeoutException, ExecutionException {
+        /* Set up */
+        EventRouter a = createRouter(EventRouter.BUFFER_SIZE);
+        EventRouter b = createRouter(EventRouter.BUFFER_SIZE);
+        List<SocketBridge> bridges = bridge(a, b);
+        SocketBridge bridgeA = bridges.get(0);
+
+        /* Execute */
+        bridges.get(1).close();
+        await(() -> !bridgeA.isConnected());
+        TestEvent.publish("PING", "a", new byte[0], 0, a);
+        a.flush().get(1, TimeUnit.MINUTES);
+        bridgeA.close();
+
+        /* Verify */
+        assertEquals(0, bridgeA.getForwardedEvents());
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> SocketBridge.connect(a, new InetSocketAddress(0), Scope.SCOPE_PRIVATE));
+        a.close();
+        b.close();
+    }
+}
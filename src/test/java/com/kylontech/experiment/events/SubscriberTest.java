@@ -0,0 +1,375 @@
+package com.kylontech.experiment.events;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubscriberTest {
+
+    /**
+     * Subscriber recording received timestamps and whether events were ever processed concurrently.
+     */
+    static class OrderSubscriber extends Subscriber {
+        final List<Long> received = new ArrayList<>();
+        final AtomicInteger running = new AtomicInteger(0);
+        volatile boolean overlapped = false;
+
+        OrderSubscriber(@NotNull SubscriberRuntime runtime) {
+            super(runtime);
+        }
+
+        @Override
+        public @NotNull Scope scope() {
+            return Scope.SCOPE_PUBLIC;
+        }
+
+        @Override
+        protected void processEvent(@NotNull Event e) {
+            if (running.incrementAndGet() > 1) overlapped = true;
+            received.add(e.getTimestamp());
+            running.decrementAndGet();
+        }
+    }
+
+    /**
+     * Subscriber with several lanes recording received timestamps per partition key.
+     */
+    static class KeyedSubscriber extends Subscriber {
+        final Map<Long, List<Long>> received = new ConcurrentHashMap<>();
+
+        KeyedSubscriber(@NotNull SubscriberRuntime runtime, int lanes) {
+            super(runtime, lanes);
+        }
+
+        @Override
+        public @NotNull Scope scope() {
+            return Scope.SCOPE_PUBLIC;
+        }
+
+        @Override
+        protected void processEvent(@NotNull Event e) {
+            received.computeIfAbsent(e.getPartitionKey(), _ -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(e.getTimestamp());
+        }
+    }
+
+    /**
+     * Subscriber whose first event blocks its worker until the gate is opened.
+     */
+    static class GatedSubscriber extends Subscriber {
+        final List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        GatedSubscriber(@NotNull SubscriberOptions options) {
+            super(options);
+        }
+
+        @Override
+        public @NotNull Scope scope() {
+            return Scope.SCOPE_PUBLIC;
+        }
+
+        @Override
+        protected void processEvent(@NotNull Event e) {
+            started.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+            }
+            received.add(e.getTimestamp());
+        }
+
+        /**
+         * Send a first event and wait until it blocks the worker.
+         */
+        void block() throws InterruptedException {
+            onEvent(event(0));
+            assertTrue(started.await(1, TimeUnit.MINUTES));
+        }
+    }
+
+    static Event event(long timestamp) {
+        Event e = new Event();
+        e.setTimestamp(timestamp);
+        return e;
+    }
+
+    /**
+     * Test that events are processed one at a time and in order, even when drained by several
+     * workers.
+     */
+    @Test
+    void testEventsProcessedOneAtATimeInOrder() throws TimeoutException, InterruptedException {
+        try (SubscriberRuntime runtime = SubscriberRuntime.fixed(4)) {
+            OrderSubscriber s = new OrderSubscriber(runtime);
+            for (long i = 0; i < 10_000; i++) s.onEvent(event(i));
+            s.close();
+
+            assertFalse(s.overlapped);
+            assertEquals(LongStream.range(0, 10_000).boxed().toList(), s.received);
+        }
+    }
+
+    /**
+     * Test that events of a same partition key are processed in order when spread over lanes.
+     */
+    @Test
+    void testLanesKeepOrderPerKey() throws TimeoutException, InterruptedException {
+        try (SubscriberRuntime runtime = SubscriberRuntime.fixed(4)) {
+            KeyedSubscriber s = new KeyedSubscriber(runtime, 4);
+            for (long i = 0; i < 10_000; i++) {
+                Event e = event(i / 16);
+                e.setPartitionKey(i % 16);
+                s.onEvent(e);
+            }
+            s.close();
+
+            assertEquals(16, s.received.size());
+            s.received.values().forEach((r) -> assertEquals(LongStream.range(0, 625).boxed().toList(), r));
+        }
+    }
+
+    /**
+     * Test that partition keys are spread over all lanes and that lane counts are validated.
+     */
+    @Test
+    void testLaneOf() {
+        Set<Integer> lanes = new HashSet<>();
+        for (long key = 0; key < 64; key++) lanes.add(Subscriber.laneOf(key, 8));
+        lanes.add(Subscriber.laneOf(-1L, 8));
+        lanes.add(Subscriber.laneOf(Long.MIN_VALUE, 8));
+
+        assertEquals(IntStream.range(0, 8).boxed().collect(Collectors.toSet()), lanes);
+        assertThrows(IllegalArgumentException.class, () -> new KeyedSubscriber(SubscriberRuntime.shared(), 0));
+    }
+
+    /**
+     * Test the drop policies of a full mailbox.
+     */
+    @ParameterizedTest
+    @EnumSource(
+            value = SubscriberOptions.OverflowPolicy.class,
+            names = {"DROP_NEWEST", "DROP_OLDEST", "DISCONNECT"})
+    void testOverflowPolicyDrops(SubscriberOptions.OverflowPolicy policy)
+            throws TimeoutException, InterruptedException {
+        GatedSubscriber s = new GatedSubscriber(Subscriber.options().capacity(4, policy));
+        s.block();
+        for (long i = 1; i < 10; i++) s.onEvent(event(i));
+        assertEquals(4, s.getBacklog());
+        s.gate.countDown();
+        s.close();
+
+        List<Long> expected =
+                policy == SubscriberOptions.OverflowPolicy.DROP_OLDEST
+                        ? List.of(0L, 6L, 7L, 8L, 9L)
+                        : List.of(0L, 1L, 2L, 3L, 4L);
+        assertEquals(expected, s.received);
+        assertEquals(5, s.getDroppedEvents());
+        assertEquals(policy == SubscriberOptions.OverflowPolicy.DISCONNECT, s.isQuarantined());
+    }
+
+    /**
+     * Test that a full mailbox with the block policy makes the sender wait without dropping events.
+     */
+    @Test
+    void testOverflowPolicyBlocks() throws TimeoutException, InterruptedException, ExecutionException {
+        GatedSubscriber s =
+                new GatedSubscriber(Subscriber.options().capacity(4, SubscriberOptions.OverflowPolicy.BLOCK));
+        s.block();
+        CompletableFuture<Void> sender =
+                CompletableFuture.runAsync(() -> LongStream.range(1, 10).forEach((i) -> s.onEvent(event(i))));
+        Thread.sleep(100);
+        assertFalse(sender.isDone());
+        assertEquals(4, s.getBacklog());
+        s.gate.countDown();
+        sender.get(1, TimeUnit.MINUTES);
+        s.close();
+
+        assertEquals(LongStream.range(0, 10).boxed().toList(), s.received);
+        assertEquals(0, s.getDroppedEvents());
+    }
+
+    /**
+     * Test that a subscriber falling behind is quarantined, and receives events again once
+     * reinstated.
+     */
+    @Test
+    void testSlowConsumerQuarantinedOnDepth() throws TimeoutException, InterruptedException {
+        GatedSubscriber s = new GatedSubscriber(Subscriber.options().slowConsumer(2, 1, TimeUnit.MINUTES));
+        s.block();
+        for (long i = 1; i < 10; i++) s.onEvent(event(i));
+        assertTrue(s.isQuarantined());
+        s.gate.countDown();
+        while (s.getBacklog() > 0) Thread.sleep(1);
+        s.reinstate();
+        s.onEvent(event(10));
+        s.close();
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 10L), s.received);
+        assertEquals(6, s.getDroppedEvents());
+        assertEquals(1, s.getQuarantines());
+    }
+
+    /**
+     * Test that a conflating subscriber only processes the latest pending event of each key, in the
+     * order keys were first received, and that the room of its mailbox bounds the number of keys.
+     */
+    @Test
+    void testConflation() throws TimeoutException, InterruptedException {
+        GatedSubscriber s =
+                new GatedSubscriber(
+                        Subscriber.options()
+                                .conflate(true)
+                                .capacity(3, SubscriberOptions.OverflowPolicy.DROP_NEWEST));
+        s.block();
+        for (long i = 1; i <= 100; i++) {
+            Event e = event(i);
+            e.setPartitionKey(i % 4);
+            s.onEvent(e);
+        }
+        assertEquals(3, s.getBacklog());
+        s.gate.countDown();
+        s.close();
+
+        assertEquals(List.of(0L, 97L, 98L, 99L), s.received);
+        assertEquals(72, s.getConflatedEvents());
+        assertEquals(25, s.getDroppedEvents());
+    }
+
+    /**
+     * Test that a conflating subscriber keeps the latest event of each of many keys of several types.
+     */
+    @Test
+    void testConflationOfManyKeys() throws TimeoutException, InterruptedException {
+        GatedSubscriber s = new GatedSubscriber(Subscriber.options().conflate(true));
+        s.block();
+        for (long round = 0; round < 3; round++) {
+            for (long i = 1; i <= 500; i++) {
+                Event e = event(round * 1000 + i);
+                e.setType(i % 2 == 0 ? "EVEN" : "ODD");
+                e.setPartitionKey(i / 2);
+                s.onEvent(e);
+            }
+        }
+        assertEquals(500, s.getBacklog());
+        s.gate.countDown();
+        s.close();
+
+        List<Long> expected = new ArrayList<>(List.of(0L));
+        for (long i = 1; i <= 500; i++) expected.add(2000 + i);
+        assertEquals(expected, s.received);
+        assertEquals(1000, s.getConflatedEvents());
+    }
+
+    /**
+     * Test that a conflating subscriber of a router releases replaced events and reaches barriers.
+     */
+    @Test
+    void testConflationInRouter()
+            throws TimeoutException, InterruptedException, ExecutionException {
+        EventRouter router = new EventRouter(Scope.SCOPE_PRIVATE);
+        GatedSubscriber s = new GatedSubscriber(Subscriber.options().conflate(true));
+        router.registerEventType("QUOTE", Scope.SCOPE_PUBLIC, s);
+        router.subscribe("QUOTE", s);
+        s.block();
+        for (long i = 0; i < 1000; i++) {
+            Event e = event(i);
+            e.setType("QUOTE");
+            e.setPartitionKey(i % 8);
+            router.publish(e);
+        }
+        while (s.getConflatedEvents() + s.getBacklog() < 1000) Thread.sleep(1);
+        CompletableFuture<Void> flushed = router.flush();
+        s.gate.countDown();
+        flushed.get(1, TimeUnit.MINUTES);
+        router.close();
+        s.close();
+
+        assertEquals(List.of(0L, 992L, 993L, 994L, 995L, 996L, 997L, 998L, 999L), s.received);
+        assertEquals(992, s.getConflatedEvents());
+        assertEquals(0, s.getDroppedEvents());
+    }
+
+    /**
+     * Test that a subscriber taking too long to process an event is quarantined.
+     */
+    @Test
+    void testSlowConsumerQuarantinedOnLatency() throws TimeoutException, InterruptedException {
+        GatedSubscriber s =
+                new GatedSubscriber(
+                        Subscriber.options().slowConsumer(Integer.MAX_VALUE, 1, TimeUnit.MILLISECONDS));
+        s.block();
+        Thread.sleep(10);
+        s.gate.countDown();
+        s.close();
+
+        assertTrue(s.isQuarantined());
+        assertEquals(List.of(0L), s.received);
+    }
+
+    /**
+     * Test that subscribers on virtual threads process events in order.
+     */
+    @Test
+    void testVirtualThreadsRuntime() throws TimeoutException, InterruptedException {
+        try (SubscriberRuntime runtime = SubscriberRuntime.virtualThreads()) {
+            OrderSubscriber s = new OrderSubscriber(runtime);
+            for (long i = 0; i < 10_000; i++) s.onEvent(event(i));
+            s.close();
+
+            assertFalse(s.overlapped);
+            assertEquals(LongStream.range(0, 10_000).boxed().toList(), s.received);
+        }
+    }
+
+    /**
+     * Test that many subscribers share the few workers of a runtime.
+     */
+    @Test
+    void testManySubscribersShareWorkers() throws TimeoutException, InterruptedException {
+        int threadsBefore = Thread.activeCount();
+        try (SubscriberRuntime runtime = SubscriberRuntime.fixed(2)) {
+            var subs = IntStream.range(0, 100_000).mapToObj(_ -> new OrderSubscriber(runtime)).toList();
+            for (OrderSubscriber s : subs) s.onEvent(event(1));
+            assertTrue(Thread.activeCount() <= threadsBefore + 2);
+            for (OrderSubscriber s : subs) s.close();
+
+            subs.forEach((s) -> assertEquals(List.of(1L), s.received));
+        }
+    }
+
+    /**
+     * Test that events received after closing a subscriber are dropped.
+     */
+    @Test
+    void testEventsDroppedAfterClose() throws TimeoutException, InterruptedException {
+        OrderSubscriber s = new OrderSubscriber(SubscriberRuntime.shared());
+        s.onEvent(event(1));
+        s.close();
+        s.onEvent(event(2));
+
+        assertEquals(List.of(1L), s.received);
+    }
+}
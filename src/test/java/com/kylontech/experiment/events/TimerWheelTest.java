@@ -0,0 +1,95 @@
+package com.kylontech.experiment.events;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+
+    /**
+     * Timeout recording when it expired.
+     */
+    static class RecordingTimeout extends TimerWheel.Timeout {
+        final AtomicLong expired = new AtomicLong(0L);
+        final CountDownLatch latch;
+
+        RecordingTimeout(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        void expire() {
+            expired.set(System.nanoTime());
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Test that timeouts never expire before their delay, including delays longer than a turn of the
+     * wheel, and that the wheel keeps working after going idle.
+     */
+    @Test
+    void testTimeoutsExpireAfterTheirDelay() throws InterruptedException {
+        /* Set up */
+        TimerWheel wheel = new TimerWheel(1, TimeUnit.MILLISECONDS, 4, "TestTimer");
+        long[] delays = {0, 1, 3, 4, 5, 17, 40};
+
+        for (int round = 0; round < 2; round++) {
+            CountDownLatch latch = new CountDownLatch(delays.length);
+            RecordingTimeout[] timeouts = new RecordingTimeout[delays.length];
+            long[] scheduled = new long[delays.length];
+
+            /* Execute */
+            for (int i = 0; i < delays.length; i++) {
+                timeouts[i] = new RecordingTimeout(latch);
+                scheduled[i] = System.nanoTime();
+                wheel.schedule(timeouts[i], delays[i], TimeUnit.MILLISECONDS);
+            }
+            boolean expired = latch.await(1, TimeUnit.MINUTES);
+
+            /* Verify */
+            assertTrue(expired);
+            for (int i = 0; i < delays.length; i++) {
+                long elapsed = timeouts[i].expired.get() - scheduled[i];
+                assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(delays[i]), "delay " + delays[i]);
+            }
+        }
+    }
+
+    /**
+     * Test that cancelled timeouts do not expire, and that a timeout is only cancelled once and not
+     * after expiring.
+     */
+    @Test
+    void testCancelledTimeoutsDoNotExpire() throws InterruptedException {
+        /* Set up */
+        TimerWheel wheel = new TimerWheel(1, TimeUnit.MILLISECONDS, 4, "TestTimer");
+        CountDownLatch latch = new CountDownLatch(3);
+        RecordingTimeout[] timeouts = new RecordingTimeout[6];
+
+        /* Execute */
+        for (int i = 0; i < timeouts.length; i++) {
+            timeouts[i] = new RecordingTimeout(latch);
+            wheel.schedule(timeouts[i], 50L * i, TimeUnit.MILLISECONDS);
+        }
+        boolean[] cancelled = new boolean[timeouts.length];
+        for (int i = 1; i < timeouts.length; i += 2) cancelled[i] = timeouts[i].cancel();
+        boolean cancelledTwice = timeouts[1].cancel();
+        boolean expired = latch.await(1, TimeUnit.MINUTES);
+        Thread.sleep(50);
+        boolean cancelledAfterExpiry = timeouts[0].cancel();
+
+        /* Verify */
+        assertTrue(expired);
+        for (int i = 0; i < timeouts.length; i++) {
+            assertEquals(i % 2 == 1, cancelled[i]);
+            assertEquals(i % 2 == 1, timeouts[i].expired.get() == 0L, "timeout " + i);
+        }
+        assertFalse(cancelledTwice);
+        assertFalse(cancelledAfterExpiry);
+    }
+}
@@ -0,0 +1,73 @@
+package com.kylontech.experiment.events;
+
+import com.kylontech.experiment.events.testutil.TestSubscriber;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopicTrieTest {
+
+    private final TopicTrie trie = new TopicTrie();
+    private final TestSubscriber exact = TestSubscriber.createPublic();
+    private final TestSubscriber single = TestSubscriber.createPublic();
+    private final TestSubscriber multi = TestSubscriber.createPublic();
+
+    @NotNull
+    List<Subscriber> match(@NotNull String topic) {
+        List<Subscriber> out = new ArrayList<>();
+        trie.match(topic, out);
+        return out;
+    }
+
+    /**
+     * Test exact, single segment and trailing wildcard matching.
+     */
+    @Test
+    void testMatch() {
+        /* Set up */
+        trie.add("orders.eu.created", exact);
+        trie.add("orders.*.created", single);
+        trie.add("orders.>", multi);
+
+        /* Verify */
+        assertEquals(List.of(multi, exact, single), match("orders.eu.created"));
+        assertEquals(List.of(multi, single), match("orders.us.created"));
+        assertEquals(List.of(multi), match("orders.eu.created.v2"));
+        assertEquals(List.of(multi), match("orders.eu"));
+        assertEquals(List.of(), match("orders"));
+        assertEquals(List.of(), match("payments.eu.created"));
+    }
+
+    /**
+     * Test that removed subscriptions do not match anymore.
+     */
+    @Test
+    void testRemove() {
+        /* Set up */
+        trie.add("orders.*.created", single);
+        trie.add("orders.>", multi);
+
+        /* Execute */
+        assertTrue(trie.remove("orders.*.created", single));
+        assertFalse(trie.remove("orders.*.created", single));
+        assertTrue(trie.remove("orders.>", multi));
+
+        /* Verify */
+        assertEquals(List.of(), match("orders.eu.created"));
+        assertTrue(trie.isEmpty());
+    }
+
+    /**
+     * Test that invalid patterns are rejected.
+     */
+    @Test
+    void testExceptionOnInvalidPattern() {
+        assertThrows(IllegalArgumentException.class, () -> trie.add("orders..created", exact));
+        assertThrows(IllegalArgumentException.class, () -> trie.add("orders.>.created", exact));
+        assertThrows(IllegalArgumentException.class, () -> trie.add("", exact));
+    }
+}
@@ -69,6 +69,6 @@ public class TestSubscriber extends Subscriber {
 
     @Override
     protected void processEvent(@NotNull Event e) {
-        received.add(e);
+        received.add(e.copy());
     }
 }